@@ -0,0 +1,45 @@
+package spl.lae.bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, e.g.
+ *     java -jar benchmarks.jar PipelineBenchmark -p shape=chain -p size=512
+ * Results are written as JSON to jmh-results.json unless -rf / -rff say otherwise.
+ * -h, -l and -lp print help or the benchmark list and run nothing, as with JMH's own main.
+ */
+public class BenchmarkMain {
+
+    public static final String DEFAULT_RESULT_FILE = "jmh-results.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        if (cmd.shouldList()) {
+            new Runner(cmd).list();
+            return;
+        }
+        if (cmd.shouldListWithParams()) {
+            new Runner(cmd).listWithParams(cmd);
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        if (!cmd.getResultFormat().hasValue())
+            builder.resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue())
+            builder.result(DEFAULT_RESULT_FILE);
+        Options options = builder.parent(cmd).build();
+        new Runner(options).run();
+    }
+}
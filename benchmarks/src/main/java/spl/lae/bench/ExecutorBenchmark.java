@@ -0,0 +1,59 @@
+package spl.lae.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import scheduling.TaskExecutor;
+import scheduling.TiredExecutor;
+import scheduling.VirtualThreadExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch overhead of TaskExecutor.submitAll: a batch of near-empty tasks, so the time is what the
+ * executor spends handing tasks out and waiting for them, on platform workers or with virtual feeders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ExecutorBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    public int tasks;
+
+    @Param({"4"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean workStealing;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private TaskExecutor executor;
+    private List<Runnable> batch;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = virtualThreads ? new VirtualThreadExecutor(threads, workStealing) : new TiredExecutor(threads, workStealing);
+        batch = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            final int token = i;
+            batch.add(() -> Blackhole.consumeCPU(token & 15));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void submitAll() {
+        executor.submitAll(batch);
+    }
+}
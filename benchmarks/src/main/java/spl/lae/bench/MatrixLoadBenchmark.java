@@ -0,0 +1,62 @@
+package spl.lae.bench;
+
+import memory.SharedMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedMatrix layout conversions: loading a row-major array in either layout and reading it back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MatrixLoadBenchmark {
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    private double[][] source;
+    private SharedMatrix rowMajor;
+    private SharedMatrix columnMajor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        source = new double[size][];
+        for (int i = 0; i < size; i++)
+            source[i] = random.doubles(size).toArray();
+        rowMajor = new SharedMatrix();
+        rowMajor.loadRowMajor(source);
+        columnMajor = new SharedMatrix();
+        columnMajor.loadColumnMajor(source);
+    }
+
+    @Benchmark
+    public SharedMatrix loadRowMajor() {
+        SharedMatrix matrix = new SharedMatrix();
+        matrix.loadRowMajor(source);
+        return matrix;
+    }
+
+    @Benchmark
+    public SharedMatrix loadColumnMajor() {
+        SharedMatrix matrix = new SharedMatrix();
+        matrix.loadColumnMajor(source);
+        return matrix;
+    }
+
+    @Benchmark
+    public double[][] readRowMajor() {
+        return rowMajor.readRowMajor();
+    }
+
+    @Benchmark
+    public double[][] readRowMajorFromColumns() {
+        return columnMajor.readRowMajor();
+    }
+}
@@ -0,0 +1,79 @@
+package spl.lae.bench;
+
+import memory.BufferPool;
+import org.openjdk.jmh.annotations.*;
+import parser.ComputationNode;
+import parser.InputParser;
+import parser.OutputWriter;
+import scheduling.TiredExecutor;
+import spl.lae.LinearAlgebraEngine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end runs: InputParser, LinearAlgebraEngine.run and OutputWriter over a generated tree
+ * (see TreeGenerator for the shapes). The executor and pool are kept across invocations, the way the
+ * job server keeps them, so the time is that of the job and not of starting threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PipelineBenchmark {
+
+    @Param({"64", "256"})
+    public int size;
+
+    @Param({"8"})
+    public int leaves;
+
+    @Param({"balanced", "chain", "wide"})
+    public String shape;
+
+    @Param({"1.0", "0.05"})
+    public double density;
+
+    @Param({"4"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean affinity;
+
+    private Path input;
+    private Path output;
+    private TiredExecutor executor;
+    private BufferPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        input = Files.createTempFile("lae-bench-", ".json");
+        output = Files.createTempFile("lae-bench-out-", ".json");
+        new TreeGenerator(size, leaves, shape, density, 42).write(input);
+        executor = new TiredExecutor(threads, false, affinity);
+        pool = new BufferPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public double[][] pipeline() throws Exception {
+        ComputationNode root = new InputParser().parse(input.toString());
+        double[][] result = new LinearAlgebraEngine(executor, pool).run(root).getMatrix();
+        OutputWriter.write(result, output.toString());
+        return result;
+    }
+
+    @Benchmark
+    public ComputationNode parse() throws Exception {
+        return new InputParser().parse(input.toString());
+    }
+}
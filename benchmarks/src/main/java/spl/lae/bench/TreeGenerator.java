@@ -0,0 +1,109 @@
+package spl.lae.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes random computation trees in the input JSON format, every matrix is size x size so any shape is valid.
+ * Shapes:
+ * - balanced: a full binary tree of alternating "+" and "*" nodes with the given number of leaves
+ * - chain: a left-deep chain of "*" nodes, every level also transposes or negates its right operand
+ * - wide: a single "+" node with all leaves as operands
+ * density is the fraction of non-zero elements of every leaf, the generator is seeded so runs are repeatable.
+ */
+public class TreeGenerator {
+
+    /// ===== fields =====
+    private final int size;
+    private final int leaves;
+    private final String shape;
+    private final double density;
+    private final Random random;
+
+    /// ===== constructor =====
+    public TreeGenerator(int size, int leaves, String shape, double density, long seed) {
+        if (size < 1 || leaves < 1)
+            throw new IllegalArgumentException("size and leaves must be greater than 0");
+        if (density <= 0 || density > 1)
+            throw new IllegalArgumentException("density must be in (0, 1]");
+        if (!shape.equals("balanced") && !shape.equals("chain") && !shape.equals("wide"))
+            throw new IllegalArgumentException("unknown shape: " + shape);
+        this.size = size;
+        this.leaves = leaves;
+        this.shape = shape;
+        this.density = density;
+        this.random = new Random(seed);
+    }
+
+    /// ===== methods =====
+    /** write the tree to path
+     */
+    public void write(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            switch (shape) {
+                case "balanced": balanced(out, leaves, 0); break;
+                case "chain": chain(out, leaves); break;
+                default: wide(out); break;
+            }
+            out.newLine();
+        }
+    }
+
+    private void balanced(BufferedWriter out, int count, int depth) throws IOException {
+        if (count == 1) {
+            matrix(out);
+            return;
+        }
+        out.write("{\"operator\":\"" + ((depth % 2 == 0) ? "+" : "*") + "\",\"operands\":[");
+        balanced(out, count / 2, depth + 1);
+        out.write(',');
+        balanced(out, count - count / 2, depth + 1);
+        out.write("]}");
+    }
+
+    private void chain(BufferedWriter out, int count) throws IOException {
+        for (int i = 1; i < count; i++)
+            out.write("{\"operator\":\"*\",\"operands\":[");
+        matrix(out);
+        for (int i = 1; i < count; i++) {
+            out.write(",{\"operator\":\"" + ((i % 2 == 0) ? "T" : "-") + "\",\"operands\":[");
+            matrix(out);
+            out.write("]}]}");
+        }
+    }
+
+    private void wide(BufferedWriter out) throws IOException {
+        if (leaves == 1) {
+            matrix(out);
+            return;
+        }
+        out.write("{\"operator\":\"+\",\"operands\":[");
+        for (int i = 0; i < leaves; i++) {
+            if (i > 0)
+                out.write(',');
+            matrix(out);
+        }
+        out.write("]}");
+    }
+
+    private void matrix(BufferedWriter out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                out.write(',');
+            out.write('[');
+            for (int j = 0; j < size; j++) {
+                if (j > 0)
+                    out.write(',');
+                // small integers keep the results exact and the files short
+                out.write((random.nextDouble() < density) ? Integer.toString(random.nextInt(19) - 9) : "0");
+            }
+            out.write(']');
+        }
+        out.write(']');
+    }
+}
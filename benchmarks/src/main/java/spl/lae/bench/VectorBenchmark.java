@@ -0,0 +1,63 @@
+package spl.lae.bench;
+
+import memory.SharedMatrix;
+import memory.SharedVector;
+import memory.VectorOrientation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedVector kernels: add, dot and vecMatMul over vectors of the given length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int length;
+
+    private SharedVector row;
+    private SharedVector other;
+    private SharedVector column;
+    private SharedMatrix matrix;   // length x 256, vecMatMul stays within a sensible footprint
+    private double[] rowData;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        rowData = random.doubles(length).toArray();
+        row = new SharedVector(rowData.clone(), VectorOrientation.ROW_MAJOR);
+        other = new SharedVector(random.doubles(length).toArray(), VectorOrientation.ROW_MAJOR);
+        column = new SharedVector(random.doubles(length).toArray(), VectorOrientation.COLUMN_MAJOR);
+        double[][] m = new double[length][];
+        for (int i = 0; i < length; i++)
+            m[i] = random.doubles(256).toArray();
+        matrix = new SharedMatrix(m);
+    }
+
+    @Benchmark
+    public SharedVector add() {
+        row.add(other);
+        return row;
+    }
+
+    @Benchmark
+    public double dot() {
+        return row.dot(column);
+    }
+
+    @Benchmark
+    public void vecMatMul(Blackhole blackhole) {
+        // vecMatMul replaces the vector with the product, so it runs on a fresh vector every time
+        SharedVector vector = new SharedVector(rowData.clone(), VectorOrientation.ROW_MAJOR);
+        vector.vecMatMul(matrix);
+        blackhole.consume(vector);
+    }
+}
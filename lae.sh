@@ -0,0 +1,10 @@
+#!/bin/sh
+# Starts the shaded jar (mvn package) with the Vector API module, java -jar alone cannot add it from the manifest
+# and the engine would fall back to the scalar kernels.
+# usage: ./lae.sh numThreads input output [options]
+#        ./lae.sh --serve numThreads (--spool dir | --port port) [options]
+#        ./lae.sh --convert input.json output.bin
+# JAVA (default: $JAVA_HOME/bin/java, or java on the PATH) and JAVA_OPTS (e.g. -Xmx8g) are passed through.
+dir=$(dirname "$0")
+java=${JAVA:-${JAVA_HOME:+$JAVA_HOME/bin/}java}
+exec "$java" $JAVA_OPTS --add-modules jdk.incubator.vector -jar "$dir/target/lga-1.0.jar" "$@"
@@ -0,0 +1,128 @@
+package memory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles double[] buffers (matrix rows and stores) between computation steps.
+ * Buffers are bucketed by exact length, since rows are used with their length as the matrix width.
+ * Tiny buffers are not pooled (allocating them is cheaper than queueing them), and the pool never
+ * holds more than its capacity, extra released buffers are left to the garbage collector.
+ */
+public class BufferPool {
+
+    /// ===== constants =====
+    public static final int MIN_POOLED_LENGTH = 64;
+    public static final long DEFAULT_CAPACITY = 32L << 20; // doubles, 256MB
+
+    /// ===== fields =====
+    private final Map<Integer, ConcurrentLinkedDeque<double[]>> buckets = new ConcurrentHashMap<>();
+    private final long capacity;                            // max doubles held by the pool
+    private final AtomicLong pooled = new AtomicLong(0);    // doubles currently held
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong recycled = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /// ===== constructor =====
+    public BufferPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BufferPool(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must be >= 0");
+        this.capacity = capacity;
+    }
+
+    /// ===== methods =====
+    /** return a buffer of exactly length doubles, its contents are undefined
+     */
+    public double[] acquire(int length) {
+        if (length < MIN_POOLED_LENGTH)
+            return new double[length];
+        ConcurrentLinkedDeque<double[]> bucket = buckets.get(length);
+        double[] buffer = (bucket != null) ? bucket.pollLast() : null;
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return new double[length];
+        }
+        pooled.addAndGet(-length);
+        hits.incrementAndGet();
+        return buffer;
+    }
+
+    /** return a buffer of exactly length doubles, all zero
+     */
+    public double[] acquireZeroed(int length) {
+        if (length < MIN_POOLED_LENGTH)
+            return new double[length];
+        double[] buffer = acquire(length);
+        Arrays.fill(buffer, 0.0);
+        return buffer;
+    }
+
+    /** hand a buffer back, the caller must not use it afterwards
+     */
+    public void release(double[] buffer) {
+        if (buffer == null || buffer.length < MIN_POOLED_LENGTH)
+            return;
+        if (pooled.addAndGet(buffer.length) > capacity) {
+            pooled.addAndGet(-buffer.length);
+            dropped.incrementAndGet();
+            return;
+        }
+        buckets.computeIfAbsent(buffer.length, k -> new ConcurrentLinkedDeque<>()).offerLast(buffer);
+        recycled.incrementAndGet();
+    }
+
+    /** hand back every row of a matrix
+     */
+    public void release(double[][] matrix) {
+        if (matrix == null)
+            return;
+        for (double[] row : matrix)
+            release(row);
+    }
+
+    /** return number of acquisitions served from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** return number of acquisitions that had to allocate
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** return number of released buffers kept for reuse
+     */
+    public long getRecycled() {
+        return recycled.get();
+    }
+
+    /** return number of released buffers dropped because the pool was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /** return number of doubles currently held by the pool
+     */
+    public long getPooledDoubles() {
+        return pooled.get();
+    }
+
+    @Override
+    public String toString() {
+        long total = hits.get() + misses.get();
+        double hitRate = (total == 0) ? 0.0 : 100.0 * hits.get() / total;
+        return String.format("buffer pool: hits=%d, misses=%d (%.1f%% hit rate), recycled=%d, dropped=%d, pooled=%.1fMB",
+                hits.get(), misses.get(), hitRate, recycled.get(), dropped.get(), pooled.get() * 8.0 / (1 << 20));
+    }
+}
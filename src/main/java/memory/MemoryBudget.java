@@ -0,0 +1,130 @@
+package memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap bytes an engine may keep in matrices during a run, for out-of-core execution.
+ * Resident matrices are charged when they are created (or, for inputs, when the run starts) and refunded
+ * once released, a matrix whose charge would exceed the limit is spilled to a TiledFileMatrix instead.
+ * Operand copies and the tiles in flight are short-lived and not charged, so the heap needs some headroom
+ * above the limit.
+ */
+public class MemoryBudget {
+
+    /// ===== constants =====
+    public static final int DEFAULT_TILE = 256; // 512KB tiles
+
+    /// ===== fields =====
+    private final long limit;
+    private final Path directory;
+    private final int tile;
+    private final AtomicLong used = new AtomicLong(0);
+    private final AtomicLong peak = new AtomicLong(0);
+    private final AtomicLong spills = new AtomicLong(0);
+    private final AtomicLong spilledBytes = new AtomicLong(0);
+
+    /// ===== constructor =====
+    public MemoryBudget(long limit) {
+        this(limit, Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_TILE);
+    }
+
+    /** spilled matrices are files in directory made of tile × tile tiles
+     */
+    public MemoryBudget(long limit, Path directory, int tile) {
+        if (limit < 0)
+            throw new IllegalArgumentException("limit must be >= 0");
+        if (directory == null || tile < 1)
+            throw new IllegalArgumentException("directory cannot be null and tile must be greater than 0");
+        this.limit = limit;
+        this.directory = directory;
+        this.tile = tile;
+    }
+
+    /// ===== methods =====
+    /** parse a size such as 512M or 2g (K, M and G are powers of 1024), plain numbers are bytes
+     */
+    public static long parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        long unit = 1;
+        if (s.endsWith("K") || s.endsWith("M") || s.endsWith("G")) {
+            unit = s.endsWith("K") ? 1L << 10 : s.endsWith("M") ? 1L << 20 : 1L << 30;
+            s = s.substring(0, s.length() - 1);
+        }
+        return Long.parseLong(s) * unit;
+    }
+
+    /** charge bytes if they fit, return false (and charge nothing) otherwise
+     */
+    public boolean tryReserve(long bytes) {
+        while (true) {
+            long current = used.get();
+            if (current + bytes > limit)
+                return false;
+            if (used.compareAndSet(current, current + bytes)) {
+                peak.accumulateAndGet(current + bytes, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /** refund bytes charged before
+     */
+    public void release(long bytes) {
+        used.addAndGet(-bytes);
+    }
+
+    /** return a new zero file-backed matrix
+     */
+    public TiledFileMatrix allocate(int rows, int cols) {
+        try {
+            TiledFileMatrix matrix = new TiledFileMatrix(rows, cols, tile, directory);
+            spills.incrementAndGet();
+            spilledBytes.addAndGet(matrix.fileBytes());
+            return matrix;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create spill file in " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** return a file-backed copy of matrix
+     */
+    public TiledFileMatrix spill(double[][] matrix) {
+        try {
+            TiledFileMatrix spilled = TiledFileMatrix.fromDense(matrix, tile, directory);
+            spills.incrementAndGet();
+            spilledBytes.addAndGet(spilled.fileBytes());
+            return spilled;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create spill file in " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    /** return the largest charge held at once
+     */
+    public long getPeak() {
+        return peak.get();
+    }
+
+    public int getTileSize() {
+        return tile;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("memory budget: %.1fMB, used=%.1fMB, peak=%.1fMB, spilled=%d (%.1fMB)",
+                limit / (double) (1 << 20), used.get() / (double) (1 << 20), peak.get() / (double) (1 << 20),
+                spills.get(), spilledBytes.get() / (double) (1 << 20));
+    }
+}
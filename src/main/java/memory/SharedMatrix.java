@@ -1,16 +1,45 @@
 package memory;
 
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 public class SharedMatrix {
 
-    private volatile SharedVector[] vectors = {}; // underlying vectors
+    private static final int TRANSPOSE_BLOCK = 32; // block edge for the cache-friendly column-major load
+    static final long MAX_STORE = Integer.MAX_VALUE - 8; // largest array the JVM allocates, larger matrices get an array per vector
+
+    private volatile SharedVector[] vectors = {}; // underlying vectors, views into store
+    private double[] store = new double[0];       // contiguous backing array, vector i starts at i * stride (empty above storeLimit)
+    private int stride = 0;                       // length of every stored vector
+    private VectorOrientation layout = VectorOrientation.ROW_MAJOR; // whether store holds rows or columns
+    private ReadWriteLock[] locks = new ReadWriteLock[0]; // vector i is guarded by locks[i] alone, kept across loads
+    private volatile boolean frozen = false;      // read-only phase, vectors are read without locks
+    private final BufferPool pool;                // where stores and read-back rows come from, null for plain allocation
+    private final long storeLimit;                // most elements held in one contiguous store
 
     public SharedMatrix() {
+        this((BufferPool) null);
+    }
+
+    /** empty matrix allocating (and releasing) its buffers through pool
+     */
+    public SharedMatrix(BufferPool pool) {
+        this(pool, MAX_STORE);
+    }
+
+    /** empty matrix whose loads fall back to an array per vector above storeLimit elements
+     */
+    SharedMatrix(BufferPool pool, long storeLimit) {
         // TODO: initialize empty matrix
+        this.pool = pool;
+        this.storeLimit = storeLimit;
         this.vectors = new SharedVector[0];
     }
 
     public SharedMatrix(double[][] matrix) {
         // TODO: construct matrix as row-major SharedVectors
+        this();
         loadRowMajor(matrix);
     }
 
@@ -18,69 +47,323 @@ public class SharedMatrix {
         // TODO: replace internal data with new row-major matrix
 
         // Handles null pointers gracefully by defaulting to  initializing it as an empty matrix
-        if (matrix == null) {
-            this.vectors = new SharedVector[0];
+        if (matrix == null || matrix.length == 0) {
+            setStore(new double[0], 0, 0, VectorOrientation.ROW_MAJOR);
             return;
         }
 
-        // Creating ROW_MAJOR matrix
+        // Creating ROW_MAJOR matrix, one bulk copy per row
         int len = matrix.length;
-        SharedVector[] tmpMatrix = new SharedVector[len];
+        int width = matrix[0].length;
+        for (double[] row : matrix) {
+            if (row.length != width)
+                throw new IllegalArgumentException("rows length do not match");
+        }
+        if ((long) len * width > storeLimit) {
+            double[][] rows = new double[len][];
+            for (int i = 0; i < len; i++) {
+                rows[i] = allocate(width);
+                System.arraycopy(matrix[i], 0, rows[i], 0, width);
+            }
+            setSeparate(rows, width, VectorOrientation.ROW_MAJOR);
+            return;
+        }
 
+        double[] tmpStore = allocate(len * width);
         for (int i = 0; i < len; i++) {
-            tmpMatrix[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
+            System.arraycopy(matrix[i], 0, tmpStore, i * width, width);
         }
 
-        this.vectors = tmpMatrix;
+        setStore(tmpStore, len, width, VectorOrientation.ROW_MAJOR);
     }
 
     public void loadColumnMajor(double[][] matrix) {
         // TODO: replace internal data with new column-major matrix
 
         // Handles null pointers gracefully by defaulting to  initializing it as an empty matrix
-        if (matrix == null) {
-            this.vectors = new SharedVector[0];
+        if (matrix == null || matrix.length == 0) {
+            setStore(new double[0], 0, 0, VectorOrientation.COLUMN_MAJOR);
             return;
         }
 
-        // Creating COLUMN_MAJOR matrix
+        // Creating COLUMN_MAJOR matrix, transposed block by block so both sides stay in cache
         int mlen = matrix[0].length;
         int vlen = matrix.length;
-        SharedVector[] tmpMatrix = new SharedVector[mlen];
-
-        for (int i = 0; i < mlen; i++) {
-            double[] tmpVector = new double[vlen];
-            for (int j = 0; j < vlen; j++) {
-                tmpVector[j] = matrix[j][i];
+        for (double[] row : matrix) {
+            if (row.length != mlen)
+                throw new IllegalArgumentException("rows length do not match");
+        }
+        if ((long) mlen * vlen > storeLimit) {
+            double[][] columns = new double[mlen][];
+            for (int i = 0; i < mlen; i++) {
+                columns[i] = allocate(vlen);
+            }
+            for (int j0 = 0; j0 < vlen; j0 += TRANSPOSE_BLOCK) {
+                int j1 = Math.min(j0 + TRANSPOSE_BLOCK, vlen);
+                for (int i0 = 0; i0 < mlen; i0 += TRANSPOSE_BLOCK) {
+                    int i1 = Math.min(i0 + TRANSPOSE_BLOCK, mlen);
+                    for (int j = j0; j < j1; j++) {
+                        double[] row = matrix[j];
+                        for (int i = i0; i < i1; i++) {
+                            columns[i][j] = row[i];
+                        }
+                    }
+                }
             }
+            setSeparate(columns, vlen, VectorOrientation.COLUMN_MAJOR);
+            return;
+        }
 
-            tmpMatrix[i] = new SharedVector(tmpVector, VectorOrientation.COLUMN_MAJOR);
+        double[] tmpStore = allocate(mlen * vlen);
+        for (int j0 = 0; j0 < vlen; j0 += TRANSPOSE_BLOCK) {
+            int j1 = Math.min(j0 + TRANSPOSE_BLOCK, vlen);
+            for (int i0 = 0; i0 < mlen; i0 += TRANSPOSE_BLOCK) {
+                int i1 = Math.min(i0 + TRANSPOSE_BLOCK, mlen);
+                for (int j = j0; j < j1; j++) {
+                    double[] row = matrix[j];
+                    for (int i = i0; i < i1; i++) {
+                        tmpStore[i * vlen + j] = row[i];
+                    }
+                }
+            }
         }
-        this.vectors = tmpMatrix;
+
+        setStore(tmpStore, mlen, vlen, VectorOrientation.COLUMN_MAJOR);
     }
 
     public double[][] readRowMajor() {
         // TODO: return matrix contents as a row-major double[][]
 
         // Handling cast of an empty matrix
-        if (this.vectors.length == 0) {
+        SharedVector[] vecs = this.vectors;
+        if (vecs.length == 0) {
             double[][] empty_array = {};
             return empty_array;
         }
 
-        // Returning ROW_MAJOR matrix is a doubles array
-        int m = this.vectors.length;
-        int n = this.vectors[0].length();
-        double[][] ret = new double[m][n];
-        for (int i = 0; i < m; i++){
-            for (int j = 0; j < n; j++) {
-                ret[i][j] = this.vectors[i].get(j);
+        if (vecs[0].getOrientation() == VectorOrientation.COLUMN_MAJOR) {
+            return gatherColumns(vecs);
+        }
+
+        // Returning ROW_MAJOR matrix is a doubles array, one bulk copy per vector
+        double[][] ret = new double[vecs.length][];
+        copyRows(vecs, 0, vecs.length, ret);
+        return ret;
+    }
+
+    /** copy ROW_MAJOR vectors [from, to) into rows [from, to) of into, in buffers allocated by the calling thread
+     * a worker that reads back the rows it just computed is the first to touch them (see TiredExecutor(int, boolean, boolean))
+     */
+    public void readRows(int from, int to, double[][] into) {
+        SharedVector[] vecs = this.vectors;
+        if (from < 0 || to > vecs.length || from > to || into == null || into.length < to)
+            throw new IndexOutOfBoundsException("Rows [" + from + ", " + to + ") out of bounds");
+        if (from == to)
+            return;
+        if (vecs[from].getOrientation() != VectorOrientation.ROW_MAJOR)
+            throw new IllegalStateException("matrix is not row major");
+        copyRows(vecs, from, to, into);
+    }
+
+    /** one bulk copy per vector, every vector of [from, to) must have the length of the first
+     */
+    private void copyRows(SharedVector[] vecs, int from, int to, double[][] into) {
+        int n = vecs[from].length();
+        boolean locked = !this.frozen;
+        for (int i = from; i < to; i++){
+            SharedVector v = vecs[i];
+            if (locked)
+                v.readLock();
+            try {
+                // vectors detached by vecMatMul hold their own array and may have a new length
+                if (v.length() != n)
+                    throw new IllegalStateException("vectors length do not match");
+                into[i] = allocate(n);
+                System.arraycopy(v.data(), v.offset(), into[i], 0, n);
+            }
+            finally {
+                if (locked)
+                    v.readUnlock();
             }
         }
+    }
 
+    /** materialize column vectors as rows, this is where a lazy transpose is finally paid for
+     */
+    private double[][] gatherColumns(SharedVector[] vecs) {
+        int n = vecs.length;
+        int m = vecs[0].length();
+        double[][] ret = new double[m][];
+        for (int r = 0; r < m; r++) {
+            ret[r] = allocate(n); // every element is written below
+        }
+        boolean locked = !this.frozen;
+        if (locked)
+            acquireAllVectorReadLocks(vecs);
+        try {
+            for (SharedVector v : vecs) {
+                if (v.length() != m)
+                    throw new IllegalStateException("vectors length do not match");
+            }
+            for (int c0 = 0; c0 < n; c0 += TRANSPOSE_BLOCK) {
+                int c1 = Math.min(c0 + TRANSPOSE_BLOCK, n);
+                for (int r0 = 0; r0 < m; r0 += TRANSPOSE_BLOCK) {
+                    int r1 = Math.min(r0 + TRANSPOSE_BLOCK, m);
+                    for (int c = c0; c < c1; c++) {
+                        double[] col = vecs[c].data();
+                        int off = vecs[c].offset();
+                        for (int r = r0; r < r1; r++) {
+                            ret[r][c] = col[off + r];
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            if (locked)
+                releaseAllVectorReadLocks(vecs);
+        }
         return ret;
     }
 
+    /** transpose the matrix in place by swapping the meaning of the store,
+     * rows become columns and vice versa, no element is moved.
+     */
+    public void transpose() {
+        SharedVector[] vecs = this.vectors;
+        acquireAllVectorWriteLocks(vecs);
+        try {
+            if (this.frozen)
+                throw new IllegalStateException("matrix is frozen");
+            for (SharedVector v : vecs) {
+                v.transpose();
+            }
+            this.layout = (this.layout == VectorOrientation.ROW_MAJOR) ? VectorOrientation.COLUMN_MAJOR : VectorOrientation.ROW_MAJOR;
+        }
+        finally {
+            releaseAllVectorWriteLocks(vecs);
+        }
+    }
+
+    /** replace the backing store and rebuild the vector views over it
+     * the old store is left untouched (readers may still hold its vectors), so this also ends a frozen phase
+     */
+    private void setStore(double[] newStore, int count, int width, VectorOrientation newLayout) {
+        SharedVector[] tmpMatrix = new SharedVector[count];
+        ReadWriteLock[] vecLocks = locksFor(count);
+        for (int i = 0; i < count; i++) {
+            tmpMatrix[i] = new SharedVector(newStore, i * width, width, newLayout, vecLocks[i]);
+        }
+        this.store = newStore;
+        this.stride = width;
+        this.layout = newLayout;
+        this.vectors = tmpMatrix;
+        this.frozen = false;
+    }
+
+    /** as setStore, for a matrix too large for one store: vector i is arrays[i], every one of length width
+     * release() hands the arrays back one by one, like vectors detached from a store
+     */
+    private void setSeparate(double[][] arrays, int width, VectorOrientation newLayout) {
+        SharedVector[] tmpMatrix = new SharedVector[arrays.length];
+        ReadWriteLock[] vecLocks = locksFor(arrays.length);
+        for (int i = 0; i < arrays.length; i++) {
+            tmpMatrix[i] = new SharedVector(arrays[i], 0, width, newLayout, vecLocks[i]);
+        }
+        this.store = new double[0];
+        this.stride = width;
+        this.layout = newLayout;
+        this.vectors = tmpMatrix;
+        this.frozen = false;
+    }
+
+    /** return at least count locks, one per vector, creating only the ones no earlier load needed
+     */
+    private ReadWriteLock[] locksFor(int count) {
+        ReadWriteLock[] current = this.locks;
+        if (current.length >= count)
+            return current;
+        ReadWriteLock[] grown = Arrays.copyOf(current, count);
+        for (int i = current.length; i < count; i++) {
+            grown[i] = new ReentrantReadWriteLock();
+        }
+        this.locks = grown;
+        return grown;
+    }
+
+    /** start a read-only phase: until thaw, every vector rejects writes and reads skip locking
+     * call before handing the matrix to tasks that only read it, not while tasks use it
+     */
+    public void freeze() {
+        SharedVector[] vecs = this.vectors;
+        for (SharedVector v : vecs) {
+            v.setFrozen(true);
+        }
+        this.frozen = true;
+    }
+
+    /** end the read-only phase, reads take the locks again
+     */
+    public void thaw() {
+        SharedVector[] vecs = this.vectors;
+        this.frozen = false;
+        for (SharedVector v : vecs) {
+            v.setFrozen(false);
+        }
+    }
+
+    /** return true while the matrix is in its read-only phase
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    /** hand the store, and the arrays of vectors detached from it, back to the pool and become empty
+     * only once nothing reads this matrix or its vectors anymore
+     */
+    public void release() {
+        SharedVector[] vecs = this.vectors;
+        double[] oldStore = this.store;
+        setStore(new double[0], 0, 0, VectorOrientation.ROW_MAJOR);
+        if (pool == null)
+            return;
+        for (SharedVector v : vecs) {
+            if (!v.isViewOf(oldStore))
+                pool.release(v.data());
+        }
+        pool.release(oldStore);
+    }
+
+    /** return the pool buffers are taken from, or null
+     */
+    public BufferPool getPool() {
+        return this.pool;
+    }
+
+    /** return a buffer of length doubles with undefined contents, from the pool if there is one
+     */
+    double[] allocate(int length) {
+        return (pool != null) ? pool.acquire(length) : new double[length];
+    }
+
+    /** return a zeroed buffer of length doubles, from the pool if there is one
+     */
+    double[] allocateZeroed(int length) {
+        return (pool != null) ? pool.acquireZeroed(length) : new double[length];
+    }
+
+    /** return length of every stored vector (distance between consecutive vectors in the store)
+     */
+    public int getStride() {
+        return this.stride;
+    }
+
+    /** return whether the store was loaded row by row or column by column
+     */
+    public VectorOrientation getLayout() {
+        return this.layout;
+    }
+
     public SharedVector get(int index) {
         // TODO: return vector at index
         return this.vectors[index];
@@ -100,6 +383,22 @@ public class SharedMatrix {
         return this.vectors[0].getOrientation();
     }
 
+    /** acquire read locks for vectors [from, to), used by kernels that lock a whole tile at once
+     */
+    void acquireReadLocks(int from, int to) {
+        for (int i = from; i < to; i++) {
+            this.vectors[i].readLock();
+        }
+    }
+
+    /** release read locks for vectors [from, to)
+     */
+    void releaseReadLocks(int from, int to) {
+        for (int i = from; i < to; i++) {
+            this.vectors[i].readUnlock();
+        }
+    }
+
     private void acquireAllVectorReadLocks(SharedVector[] vecs) {
         // TODO: acquire read lock for each vector
         for (SharedVector v : vecs) {
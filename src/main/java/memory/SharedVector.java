@@ -5,9 +5,12 @@ import java.util.concurrent.locks.ReadWriteLock;
 public class SharedVector {
 
     /// ===== fields =====
-    private double[] vector;
+    private double[] vector; // backing array, either owned or a SharedMatrix store
+    private int offset;      // index of element 0 inside the backing array
+    private int length;
     private VectorOrientation orientation;
-    private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+    private final ReadWriteLock lock;
+    private volatile boolean frozen = false; // read-only phase, set by SharedMatrix.freeze
 
 
     /// ===== constructor =====
@@ -15,18 +18,40 @@ public class SharedVector {
         if (vector == null || orientation == null)
             throw new IllegalArgumentException("vector and orientation cannot be null");
         this.vector = vector;
+        this.offset = 0;
+        this.length = vector.length;
         this.orientation = orientation;
+        this.lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+    }
+
+    /** view over [offset, offset + length) of a shared backing store, guarded by the store's lock
+     */
+    SharedVector(double[] store, int offset, int length, VectorOrientation orientation, ReadWriteLock lock) {
+        if (store == null || orientation == null || lock == null)
+            throw new IllegalArgumentException("store, orientation and lock cannot be null");
+        if (offset < 0 || length < 0 || offset + length > store.length)
+            throw new IndexOutOfBoundsException("View [" + offset + ", " + (offset + length) + ") out of bounds for length " + store.length);
+        this.vector = store;
+        this.offset = offset;
+        this.length = length;
+        this.orientation = orientation;
+        this.lock = lock;
     }
 
     /// ===== methods =====
-    /** return element at index (read-locked)
+    /** return element at index (read-locked, lock-free while frozen)
      */
     public double get(int index) {
+        if (frozen) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("Index: " + index + ", out of bounds for length " + length);
+            return vector[offset + index];
+        }
         readLock();
         try {
-            if (index < 0 || index >= vector.length)
-                throw new IndexOutOfBoundsException("Index: " + index + ", out of bounds for length " + vector.length);
-            return vector[index];
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("Index: " + index + ", out of bounds for length " + length);
+            return vector[offset + index];
         }
         finally {
             readUnlock();
@@ -37,9 +62,11 @@ public class SharedVector {
     /** return vector length
      */
     public int length() {
+        if (frozen)
+            return length;
         readLock();
         try {
-            return vector.length;
+            return length;
         }
         finally {
             readUnlock();
@@ -49,6 +76,8 @@ public class SharedVector {
     /** return vector orientation
      */
     public VectorOrientation getOrientation() {
+        if (frozen)
+            return orientation;
         readLock();
         try {
             return orientation;
@@ -58,6 +87,50 @@ public class SharedVector {
         }
     }
 
+    /** return the backing array, callers must hold at least the read lock
+     */
+    double[] data() {
+        return vector;
+    }
+
+    /** return index of element 0 inside data()
+     */
+    int offset() {
+        return offset;
+    }
+
+    /** return true if this vector still views the given store
+     */
+    boolean isViewOf(double[] store) {
+        return vector == store;
+    }
+
+    /** return true while the vector is read-only and read without locks
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /** enter or leave the read-only phase, taking the write lock so no locked reader or writer is in progress
+     * the volatile write publishes every earlier write to lock-free readers
+     */
+    void setFrozen(boolean frozen) {
+        writeLock();
+        try {
+            this.frozen = frozen;
+        }
+        finally {
+            writeUnlock();
+        }
+    }
+
+    /** reject in-place writes during the read-only phase, caller holds the write lock
+     */
+    private void checkWritable() {
+        if (frozen)
+            throw new IllegalStateException("vector is frozen");
+    }
+
     /** acquire write lock
      */
     public void writeLock() {
@@ -87,6 +160,7 @@ public class SharedVector {
     public void transpose() {
         writeLock();
         try {
+            checkWritable();
             if (orientation == VectorOrientation.ROW_MAJOR) {
                 orientation = VectorOrientation.COLUMN_MAJOR;
             } else {
@@ -100,15 +174,54 @@ public class SharedVector {
     /** add two vectors
      */
     public void add(SharedVector other) {
+        combine(other, false, 0, -1);
+    }
+
+    /** add elements [from, to) of other into this vector, lets one row be split across tasks
+     */
+    public void add(SharedVector other, int from, int to) {
+        combine(other, false, from, to);
+    }
+
+    /** subtract other from this vector
+     */
+    public void subtract(SharedVector other) {
+        combine(other, true, 0, -1);
+    }
+
+    /** subtract elements [from, to) of other from this vector
+     */
+    public void subtract(SharedVector other, int from, int to) {
+        combine(other, true, from, to);
+    }
+
+    /** this += other, or this -= other when subtract is set, over [from, to) (to = -1 means the whole vector)
+     */
+    private void combine(SharedVector other, boolean subtract, int from, int to) {
         if (other == null)
             throw new IllegalArgumentException("other cannot be null");
 
-        // case this = other
+        // case this = other, x - x is NaN rather than 0 for NaN and Inf elements
         if (other == this) {
             writeLock();
             try {
-                for (int i = 0; i < vector.length; i++)
-                    vector[i] += vector[i];
+                checkWritable();
+                int end = checkRange(from, to);
+                for (int i = offset + from; i < offset + end; i++)
+                    vector[i] = subtract ? vector[i] - vector[i] : vector[i] + vector[i];
+            }
+            finally {
+                writeUnlock();
+            }
+            return;
+        }
+
+        // views of the same store may share a lock, the write lock alone covers both,
+        // and a frozen operand cannot change, so it needs no lock at all
+        if (this.lock == other.lock || other.frozen) {
+            writeLock();
+            try {
+                combineUnlocked(other, subtract, from, to);
             }
             finally {
                 writeUnlock();
@@ -116,9 +229,9 @@ public class SharedVector {
             return;
         }
 
-        // resource ordering
-        int thisIHC = System.identityHashCode(this);
-        int otherIHC = System.identityHashCode(other);
+        // resource ordering, by lock since views share them
+        int thisIHC = System.identityHashCode(this.lock);
+        int otherIHC = System.identityHashCode(other.lock);
         boolean firstIsThis = thisIHC < otherIHC;
 
         // locking by order
@@ -133,12 +246,7 @@ public class SharedVector {
 
         // adding
         try {
-            if (this.vector.length != other.vector.length)
-                throw new IllegalArgumentException("vectors length do not match");
-            if (this.orientation != other.orientation)
-                throw new IllegalArgumentException("orientations do not match");
-            for (int i = 0; i < vector.length; i++)
-                this.vector[i] += other.vector[i];
+            combineUnlocked(other, subtract, from, to);
         }
         finally {
             // unlocking by order
@@ -153,19 +261,50 @@ public class SharedVector {
         }
     }
 
+    /** element-wise this += other (or -=), caller holds the locks
+     */
+    private void combineUnlocked(SharedVector other, boolean subtract, int from, int to) {
+        checkWritable();
+        if (this.length != other.length)
+            throw new IllegalArgumentException("vectors length do not match");
+        if (this.orientation != other.orientation)
+            throw new IllegalArgumentException("orientations do not match");
+        int end = checkRange(from, to);
+        if (subtract)
+            VectorKernels.subtract(this.vector, this.offset + from, other.vector, other.offset + from, end - from);
+        else
+            VectorKernels.add(this.vector, this.offset + from, other.vector, other.offset + from, end - from);
+    }
+
     /** negate vector
      */
     public void negate() {
+        negate(0, -1);
+    }
+
+    /** negate elements [from, to) of this vector (to = -1 means up to the end)
+     */
+    public void negate(int from, int to) {
         writeLock();
         try {
-            for (int i = 0; i < vector.length; i++)
-                vector[i] *= -1;
+            checkWritable();
+            int end = checkRange(from, to);
+            VectorKernels.negate(vector, offset + from, end - from);
         }
         finally {
             writeUnlock();
         }
     }
 
+    /** validate [from, to) against the length and return the resolved end, caller holds a lock
+     */
+    private int checkRange(int from, int to) {
+        int end = (to < 0) ? length : to;
+        if (from < 0 || from > end || end > length)
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + end + ") out of bounds for length " + length);
+        return end;
+    }
+
     /** compute dot product (row · column)
      */
     public double dot(SharedVector other) {
@@ -174,21 +313,37 @@ public class SharedVector {
 
         // case this = other
         if (this == other) {
-            readLock();
+            boolean locked = !frozen;
+            if (locked)
+                readLock();
+            try {
+                return VectorKernels.dot(vector, offset, vector, offset, length);
+            }
+            finally {
+                if (locked)
+                    readUnlock();
+            }
+        }
+
+        // frozen vectors are read without locks, only the others are locked
+        boolean thisFrozen = this.frozen;
+        boolean otherFrozen = other.frozen;
+        if (thisFrozen || otherFrozen) {
+            SharedVector locked = thisFrozen ? (otherFrozen ? null : other) : this;
+            if (locked != null)
+                locked.readLock();
             try {
-                double result = 0.0;
-                for (int i = 0; i < vector.length; i++)
-                    result += vector[i] * vector[i];
-                return result;
+                return dotUnlocked(other);
             }
             finally {
-                readUnlock();
+                if (locked != null)
+                    locked.readUnlock();
             }
         }
 
-        // resource ordering
-        int thisIHC = System.identityHashCode(this);
-        int otherIHC = System.identityHashCode(other);
+        // resource ordering, by lock since views share them
+        int thisIHC = System.identityHashCode(this.lock);
+        int otherIHC = System.identityHashCode(other.lock);
         boolean firstIsThis = thisIHC < otherIHC;
 
         // locking by order
@@ -203,14 +358,7 @@ public class SharedVector {
 
         // multiplying
         try {
-            if (this.vector.length != other.vector.length)
-                throw new IllegalArgumentException("vectors length do not match");
-            if (this.orientation == other.orientation)
-                throw new IllegalArgumentException("orientations are the same");
-            double result = 0.0;
-            for (int i = 0; i < vector.length; i++)
-                result += vector[i] * other.vector[i];
-            return result;
+            return dotUnlocked(other);
         }
         finally {
             // unlocking by order
@@ -225,6 +373,16 @@ public class SharedVector {
         }
     }
 
+    /** this · other, caller holds the locks (or the vectors are frozen)
+     */
+    private double dotUnlocked(SharedVector other) {
+        if (this.length != other.length)
+            throw new IllegalArgumentException("vectors length do not match");
+        if (this.orientation == other.orientation)
+            throw new IllegalArgumentException("orientations are the same");
+        return VectorKernels.dot(vector, offset, other.vector, other.offset, length);
+    }
+
     /** compute row-vector × matrix
      */
     public void vecMatMul(SharedMatrix matrix) {
@@ -233,6 +391,7 @@ public class SharedVector {
 
         writeLock();
         try {
+            checkWritable();
             if (orientation != VectorOrientation.ROW_MAJOR)
                 throw new IllegalArgumentException("vector is not a row major");
 
@@ -249,30 +408,47 @@ public class SharedVector {
                 matRows = matrix.get(0).length();
             }
 
-            if (vector.length != matRows)
+            if (length != matRows)
                 throw new IllegalArgumentException("vector length does not match matrix");
 
-            double[] result = new double[matCols];
+            double[] result = matrix.allocateZeroed(matCols);
 
 
+            // every operand vector is read-locked once (not per element), frozen ones not at all
+            boolean locked = !matrix.isFrozen();
             if (matOri == VectorOrientation.ROW_MAJOR) {
-                for (int i = 0; i < matCols; i++) {
-                    for (int j = 0; j < matRows; j++) {
-                        SharedVector row = matrix.get(j);
-                        result[i] += vector[j] * row.get(i);
+                for (int j = 0; j < matRows; j++) {
+                    SharedVector row = matrix.get(j);
+                    if (locked)
+                        row.readLock();
+                    try {
+                        VectorKernels.axpy(vector[offset + j], row.vector, row.offset, result, 0, matCols);
+                    }
+                    finally {
+                        if (locked)
+                            row.readUnlock();
                     }
                 }
             }
             else {
                 for (int i = 0; i < matCols; i++) {
                     SharedVector col = matrix.get(i);
-                    for (int j = 0; j < matRows; j++) {
-                        result[i] += vector[j] * col.get(j);
+                    if (locked)
+                        col.readLock();
+                    try {
+                        result[i] = VectorKernels.dot(vector, offset, col.vector, col.offset, matRows);
+                    }
+                    finally {
+                        if (locked)
+                            col.readUnlock();
                     }
                 }
             }
 
+            // the result has a different length, so the vector detaches from its store
             this.vector = result;
+            this.offset = 0;
+            this.length = result.length;
         }
         finally {
             writeUnlock();
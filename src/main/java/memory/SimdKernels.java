@@ -0,0 +1,123 @@
+package memory;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the VectorKernels loops, on the widest double lanes the CPU offers (8 with AVX-512).
+ * Only loaded when the jdk.incubator.vector module is present, VectorKernels checks that first.
+ * Every loop runs over whole vectors up to SPECIES.loopBound(len) and finishes the tail with scalars.
+ */
+final class SimdKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private SimdKernels() {}
+
+    /** return number of double lanes in one vector
+     */
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    static void add(double[] dst, int dOff, double[] src, int sOff, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, dst, dOff + i);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, src, sOff + i);
+            a.add(b).intoArray(dst, dOff + i);
+        }
+        for (; i < len; i++)
+            dst[dOff + i] += src[sOff + i];
+    }
+
+    static void subtract(double[] dst, int dOff, double[] src, int sOff, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, dst, dOff + i);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, src, sOff + i);
+            a.sub(b).intoArray(dst, dOff + i);
+        }
+        for (; i < len; i++)
+            dst[dOff + i] -= src[sOff + i];
+    }
+
+    static void negate(double[] a, int off, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, off + i).neg().intoArray(a, off + i);
+        }
+        for (; i < len; i++)
+            a[off + i] *= -1;
+    }
+
+    static double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOff + i);
+            acc = x.fma(y, acc);
+        }
+        double result = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++)
+            result += a[aOff + i] * b[bOff + i];
+        return result;
+    }
+
+    static void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOff + i);
+            DoubleVector yv = DoubleVector.fromArray(SPECIES, y, yOff + i);
+            xv.fma(a, yv).intoArray(y, yOff + i);
+        }
+        for (; i < len; i++)
+            y[yOff + i] += alpha * x[xOff + i];
+    }
+
+    static void dot2x2(double[] a0, int ao0, double[] a1, int ao1, double[] b0, int bo0, double[] b1, int bo1,
+                       int len, double[] sums) {
+        int k = 0;
+        int bound = SPECIES.loopBound(len);
+        DoubleVector s00 = DoubleVector.zero(SPECIES);
+        DoubleVector s01 = DoubleVector.zero(SPECIES);
+        DoubleVector s10 = DoubleVector.zero(SPECIES);
+        DoubleVector s11 = DoubleVector.zero(SPECIES);
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector x0 = DoubleVector.fromArray(SPECIES, a0, ao0 + k);
+            DoubleVector x1 = DoubleVector.fromArray(SPECIES, a1, ao1 + k);
+            DoubleVector y0 = DoubleVector.fromArray(SPECIES, b0, bo0 + k);
+            DoubleVector y1 = DoubleVector.fromArray(SPECIES, b1, bo1 + k);
+            s00 = x0.fma(y0, s00);
+            s01 = x0.fma(y1, s01);
+            s10 = x1.fma(y0, s10);
+            s11 = x1.fma(y1, s11);
+        }
+        double r00 = s00.reduceLanes(VectorOperators.ADD);
+        double r01 = s01.reduceLanes(VectorOperators.ADD);
+        double r10 = s10.reduceLanes(VectorOperators.ADD);
+        double r11 = s11.reduceLanes(VectorOperators.ADD);
+        for (; k < len; k++) {
+            double x0 = a0[ao0 + k];
+            double x1 = a1[ao1 + k];
+            double y0 = b0[bo0 + k];
+            double y1 = b1[bo1 + k];
+            r00 += x0 * y0;
+            r01 += x0 * y1;
+            r10 += x1 * y0;
+            r11 += x1 * y1;
+        }
+        sums[0] = r00;
+        sums[1] = r01;
+        sums[2] = r10;
+        sums[3] = r11;
+    }
+}
@@ -0,0 +1,299 @@
+package memory;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed sparse row (CSR) matrix: the non-zeros of row i are
+ * values[rowPtr[i] .. rowPtr[i + 1]) at columns colIdx[rowPtr[i] .. rowPtr[i + 1]), by increasing column.
+ * The CSR form of a matrix is also the compressed sparse column (CSC) form of its transpose,
+ * so a lazily transposed sparse operand is a CSC matrix and transpose() converts between the two.
+ * Matrices are stored sparse when at most DENSITY_THRESHOLD of their elements are non-zero,
+ * above that the dense kernels are cheaper and results are kept dense.
+ * The sparse kernels skip zeros, which IEEE arithmetic only allows when every value they meet is finite
+ * (0 × Inf and 0 × NaN are NaN), so a matrix holding Inf or NaN is never stored sparse, and a product with a
+ * sparse operand only takes the sparse kernels if its dense operand is finite too (see isFinite).
+ * Signed zeros are kept, so a value prints the same whichever way it is stored: every element other than +0.0
+ * is stored (-0.0 included), and the elements left out of a negated matrix read as -0.0 (see isNegativeZero).
+ * Products and element-wise sums never turn the zeros they skip into -0.0, in the dense kernels neither, as
+ * their sums start from +0.0.
+ */
+public class SparseMatrix {
+
+    /// ===== constants =====
+    public static final double DENSITY_THRESHOLD = 0.1;
+    public static final long MIN_ELEMENTS = 1024; // smaller matrices always stay dense
+
+    /** receives the non-zeros of a matrix, see forEachNonZero
+     */
+    public interface NonZeroVisitor {
+        void visit(int row, int col, double value);
+    }
+
+    /// ===== fields =====
+    private final int rows;
+    private final int cols;
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final double[] values;
+    private final boolean negativeZero; // elements left out read as -0.0 instead of 0.0
+
+    /// ===== constructor =====
+    private SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values, boolean negativeZero) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+        this.negativeZero = negativeZero;
+    }
+
+    /// ===== methods =====
+    /** return true if a dense matrix is worth storing sparse: sparse enough, and every value finite
+     */
+    public static boolean isWorthStoring(double[][] matrix) {
+        if (matrix == null || matrix.length == 0)
+            return false;
+        long size = (long) matrix.length * matrix[0].length;
+        if (size < MIN_ELEMENTS)
+            return false;
+        long nnz = 0;
+        for (double[] row : matrix) {
+            for (double v : row) {
+                if (isStored(v)) {
+                    if (!Double.isFinite(v))
+                        return false;
+                    nnz++;
+                }
+            }
+        }
+        return nnz <= DENSITY_THRESHOLD * size;
+    }
+
+    /** return true if no element of a dense matrix is Inf or NaN
+     */
+    public static boolean isFinite(double[][] matrix) {
+        for (double[] row : matrix) {
+            for (double v : row) {
+                if (!Double.isFinite(v))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /** return number of elements of a dense matrix a sparse one stores, every one but +0.0
+     */
+    public static long countNonZeros(double[][] matrix) {
+        long nnz = 0;
+        for (double[] row : matrix) {
+            for (double v : row) {
+                if (isStored(v))
+                    nnz++;
+            }
+        }
+        return nnz;
+    }
+
+    /** return true unless v is +0.0, -0.0 is stored so that its sign survives
+     */
+    private static boolean isStored(double v) {
+        return Double.doubleToRawLongBits(v) != 0L;
+    }
+
+    /** compress a dense (rectangular) matrix, its values must be finite (see isWorthStoring)
+     */
+    public static SparseMatrix fromDense(double[][] matrix) {
+        if (matrix == null || matrix.length == 0)
+            throw new IllegalArgumentException("matrix cannot be null or empty");
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        long nnz = countNonZeros(matrix);
+        if (nnz > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many non-zeros for a sparse matrix");
+
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[(int) nnz];
+        double[] values = new double[(int) nnz];
+        int k = 0;
+        for (int i = 0; i < rows; i++) {
+            double[] row = matrix[i];
+            if (row.length != cols)
+                throw new IllegalArgumentException("rows length do not match");
+            for (int j = 0; j < cols; j++) {
+                if (isStored(row[j])) {
+                    if (!Double.isFinite(row[j]))
+                        throw new IllegalArgumentException("a sparse matrix cannot hold Inf or NaN");
+                    colIdx[k] = j;
+                    values[k] = row[j];
+                    k++;
+                }
+            }
+            rowPtr[i + 1] = k;
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values, false);
+    }
+
+    /** return true if the elements left out read as -0.0 (the matrix was negated an odd number of times)
+     */
+    public boolean isNegativeZero() {
+        return negativeZero;
+    }
+
+    /** return number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /** return number of columns
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /** return number of stored non-zeros
+     */
+    public int nnz() {
+        return values.length;
+    }
+
+    /** return fraction of non-zero elements
+     */
+    public double density() {
+        long size = (long) rows * cols;
+        return (size == 0) ? 0.0 : (double) values.length / size;
+    }
+
+    /** return the dense row-major form, signed zeros included
+     */
+    public double[][] toDense() {
+        double[][] dense = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            double[] row = dense[i];
+            if (negativeZero)
+                Arrays.fill(row, -0.0);
+            // assigned, not added: 0.0 + -0.0 would drop the sign
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++)
+                row[colIdx[k]] = values[k];
+        }
+        return dense;
+    }
+
+    /** return the transpose in CSR form (equivalently, this matrix in CSC form), a counting sort over the columns
+     */
+    public SparseMatrix transpose() {
+        int nnz = values.length;
+        int[] tRowPtr = new int[cols + 1];
+        int[] tColIdx = new int[nnz];
+        double[] tValues = new double[nnz];
+
+        for (int k = 0; k < nnz; k++)
+            tRowPtr[colIdx[k] + 1]++;
+        for (int j = 0; j < cols; j++)
+            tRowPtr[j + 1] += tRowPtr[j];
+
+        // rows are visited in order, so every transposed row gets its columns in increasing order
+        int[] next = Arrays.copyOf(tRowPtr, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                int dst = next[colIdx[k]]++;
+                tColIdx[dst] = i;
+                tValues[dst] = values[k];
+            }
+        }
+        return new SparseMatrix(cols, rows, tRowPtr, tColIdx, tValues, negativeZero);
+    }
+
+    /** return -this, sharing the structure, the elements left out flip to -0.0 (or back to 0.0)
+     */
+    public SparseMatrix negate() {
+        double[] negated = new double[values.length];
+        for (int k = 0; k < values.length; k++)
+            negated[k] = -values[k];
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, negated, !negativeZero);
+    }
+
+    /** out[j] += scale * this[i][j] for every stored element of row i (sparse + dense)
+     * the elements left out would add ±0.0, which changes no sum starting from +0.0
+     */
+    public void scatterRow(int i, double scale, double[] out) {
+        for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++)
+            out[colIdx[k]] += scale * values[k];
+    }
+
+    /** out[j] += scale * this[i][j] for every j of row i, the elements left out included, scale is not 0
+     * an element left out adds ±0.0, which only changes an out[j] of -0.0, so rows are walked in full only then
+     */
+    public void addRow(int i, double scale, double[] out) {
+        // scale × 0.0 is -0.0 (adding it changes nothing) when the signs of scale and of the zero differ
+        if ((scale < 0) != negativeZero) {
+            scatterRow(i, scale, out);
+            return;
+        }
+        int k = rowPtr[i];
+        int end = rowPtr[i + 1];
+        for (int j = 0; j < cols; j++) {
+            if (k < end && colIdx[k] == j)
+                out[j] += scale * values[k++];
+            else if (out[j] == 0.0)
+                out[j] = 0.0; // -0.0 + 0.0
+        }
+    }
+
+    /** out rows [from, to) += this rows × dense, dense is row-major with this.cols rows (sparse × dense)
+     * every non-zero (i, k) adds a multiple of dense row k to output row i
+     */
+    public void multiplyDense(double[][] dense, int from, int to, double[][] out) {
+        for (int i = from; i < to; i++) {
+            double[] o = out[i];
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                double[] b = dense[colIdx[k]];
+                VectorKernels.axpy(values[k], b, 0, o, 0, b.length);
+            }
+        }
+    }
+
+    /** out rows [from, to) += this rows × other (sparse × sparse), accumulated into dense output rows
+     */
+    public void multiplySparse(SparseMatrix other, int from, int to, double[][] out) {
+        for (int i = from; i < to; i++) {
+            double[] o = out[i];
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++)
+                other.scatterRow(colIdx[k], values[k], o);
+        }
+    }
+
+    /** out rows [from, to) += dense rows × sparse (dense × sparse)
+     * every element (i, k) of the dense row adds a multiple of sparse row k, zeros are skipped
+     */
+    public static void denseMultiply(double[][] dense, SparseMatrix sparse, int from, int to, double[][] out) {
+        for (int i = from; i < to; i++) {
+            double[] a = dense[i];
+            double[] o = out[i];
+            for (int k = 0; k < a.length; k++) {
+                if (a[k] != 0.0)
+                    sparse.scatterRow(k, a[k], o);
+            }
+        }
+    }
+
+    /** visit every stored element in row-major order, the others read as 0.0 (-0.0 if isNegativeZero())
+     */
+    public void forEachNonZero(NonZeroVisitor visitor) {
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++)
+                visitor.visit(i, colIdx[k], values[k]);
+        }
+    }
+
+    /** return average number of non-zeros per row
+     */
+    public double averageRowNonZeros() {
+        return (rows == 0) ? 0.0 : (double) values.length / rows;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dx%d sparse, %d non-zeros (%.2f%%)", rows, cols, values.length, 100.0 * density());
+    }
+}
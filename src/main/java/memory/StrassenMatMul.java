@@ -0,0 +1,370 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strassen multiplication of a rows × depth matrix by a depth × cols matrix, unrolled to a fixed number of levels.
+ * Both operands are padded to a square of side leafSize × 2^levels, reads past their edges are zero and nothing is copied.
+ * Every one of the 7^levels leaf products multiplies two leafSize × leafSize sums of operand blocks with the same
+ * tiled 2×2 register-blocked kernel as TiledMatMul, and every output block is a signed sum of leaf products.
+ * The work is split in three phases, the tasks of a phase are independent of each other:
+ * formRight builds the right-hand sum of a leaf, multiplyLeaf computes a chunk of rows of a leaf product
+ * (forming its left-hand rows on the fly) and combineBlock adds the leaf products into a chunk of an output block.
+ */
+public final class StrassenMatMul {
+
+    /// ===== constants =====
+    public static final int DEFAULT_THRESHOLD = 512; // operands larger than this are split, leaves up to this size use the classic kernel
+    public static final int MAX_LEVELS = 3;          // 343 leaves, the temporaries then take about 5.4 times the output
+    public static final double MAX_ASPECT = 2.0;     // longest / shortest dimension, past that the padding costs more than Strassen saves
+
+    // one level: M[p] = (sum of A[q] * A_COEF[p][q]) × (sum of B[q] * B_COEF[p][q]), C[q] = sum of M[p] * C_COEF[p][q],
+    // quadrants q are 11, 12, 21, 22
+    private static final int[][] A_COEF = {
+            {1, 0, 0, 1}, {0, 0, 1, 1}, {1, 0, 0, 0}, {0, 0, 0, 1}, {1, 1, 0, 0}, {-1, 0, 1, 0}, {0, 1, 0, -1}};
+    private static final int[][] B_COEF = {
+            {1, 0, 0, 1}, {1, 0, 0, 0}, {0, 1, 0, -1}, {-1, 0, 1, 0}, {0, 0, 0, 1}, {1, 1, 0, 0}, {0, 0, 1, 1}};
+    private static final int[][] C_COEF = {
+            {1, 0, 0, 1}, {0, 0, 1, -1}, {0, 1, 0, 1}, {1, 0, 1, 0}, {-1, 1, 0, 0}, {0, 0, 0, 1}, {1, 0, 0, 0}};
+
+    /// ===== fields =====
+    private final double[][] left;       // stored left operand, its transpose if leftTransposed
+    private final boolean leftTransposed;
+    private final double[][] right;      // stored right operand, its transpose if rightTransposed
+    private final boolean rightTransposed;
+    private final int rows;
+    private final int depth;
+    private final int cols;
+    private final int levels;
+    private final int leafSize;
+    private final int side;              // blocks per side of the padded square, 2^levels
+    private final BufferPool pool;       // may be null
+
+    private final int[][] leftBlocks;    // per leaf, the blocks summed into its left-hand operand
+    private final int[][] leftSigns;
+    private final int[][] rightBlocks;   // per leaf, the blocks summed into its right-hand operand
+    private final int[][] rightSigns;
+    private final int[][] outputLeaves;  // per output block, the leaves summed into it
+    private final int[][] outputSigns;
+
+    private final double[][][] rightSums; // per leaf, built by formRight, stored by columns
+    private final double[][][] products;  // per leaf, allocated by formRight and filled by multiplyLeaf
+    private final double[][] result;
+
+    /// ===== constructor =====
+    /** multiply the values of two stored matrices, a transposed flag means the stored matrix is the transpose of the value
+     */
+    public StrassenMatMul(double[][] left, boolean leftTransposed, double[][] right, boolean rightTransposed,
+                          int threshold, BufferPool pool) {
+        if (left == null || right == null || left.length == 0 || right.length == 0)
+            throw new IllegalArgumentException("operands cannot be null or empty");
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold must be greater than 0");
+
+        this.left = left;
+        this.leftTransposed = leftTransposed;
+        this.right = right;
+        this.rightTransposed = rightTransposed;
+        this.rows = leftTransposed ? left[0].length : left.length;
+        this.depth = leftTransposed ? left.length : left[0].length;
+        int rightRows = rightTransposed ? right[0].length : right.length;
+        this.cols = rightTransposed ? right.length : right[0].length;
+        if (depth != rightRows)
+            throw new IllegalArgumentException("operand dimensions do not match");
+        this.pool = pool;
+
+        // the fewest levels that bring the leaves down to the threshold
+        int n = Math.max(rows, Math.max(depth, cols));
+        int l = 1;
+        while (l < MAX_LEVELS && ceilDiv(n, 1 << l) > threshold)
+            l++;
+        this.levels = l;
+        this.side = 1 << l;
+        this.leafSize = ceilDiv(n, side);
+
+        int leaves = leafCount();
+        int blocks = side * side;
+        leftBlocks = new int[leaves][];
+        leftSigns = new int[leaves][];
+        rightBlocks = new int[leaves][];
+        rightSigns = new int[leaves][];
+        List<List<int[]>> outputTerms = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++)
+            outputTerms.add(new ArrayList<>());
+
+        // the coefficient of a block in a leaf is the product of the one-level coefficients along its quadrant path
+        List<int[]> leftTerms = new ArrayList<>();
+        List<int[]> rightTerms = new ArrayList<>();
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            leftTerms.clear();
+            rightTerms.clear();
+            for (int path = 0; path < blocks; path++) {
+                int a = 1, b = 1, c = 1;
+                int p = leaf, q = path;
+                for (int level = 0; level < levels; level++) {
+                    a *= A_COEF[p % 7][q % 4];
+                    b *= B_COEF[p % 7][q % 4];
+                    c *= C_COEF[p % 7][q % 4];
+                    p /= 7;
+                    q /= 4;
+                }
+                int block = blockOf(path);
+                if (a != 0)
+                    leftTerms.add(new int[] {block, a});
+                if (b != 0)
+                    rightTerms.add(new int[] {block, b});
+                if (c != 0)
+                    outputTerms.get(block).add(new int[] {leaf, c});
+            }
+            leftBlocks[leaf] = column(leftTerms, 0);
+            leftSigns[leaf] = column(leftTerms, 1);
+            rightBlocks[leaf] = column(rightTerms, 0);
+            rightSigns[leaf] = column(rightTerms, 1);
+        }
+        outputLeaves = new int[blocks][];
+        outputSigns = new int[blocks][];
+        for (int b = 0; b < blocks; b++) {
+            outputLeaves[b] = column(outputTerms.get(b), 0);
+            outputSigns[b] = column(outputTerms.get(b), 1);
+        }
+
+        this.rightSums = new double[leaves][][];
+        this.products = new double[leaves][][];
+        this.result = new double[rows][];
+        for (int i = 0; i < rows; i++)
+            result[i] = allocateZeroed(cols); // output blocks accumulate into the result
+    }
+
+    /// ===== methods =====
+    /** return true if a rows × depth by depth × cols product should be split recursively
+     * threshold 0 turns the recursive multiply off
+     */
+    public static boolean worthRecursing(int rows, int depth, int cols, int threshold) {
+        if (threshold <= 0)
+            return false;
+        int min = Math.min(rows, Math.min(depth, cols));
+        int max = Math.max(rows, Math.max(depth, cols));
+        return min > threshold && max <= MAX_ASPECT * min;
+    }
+
+    /** return number of output rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /** return number of output columns
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /** return number of recursion levels
+     */
+    public int levels() {
+        return levels;
+    }
+
+    /** return side of a leaf product
+     */
+    public int leafSize() {
+        return leafSize;
+    }
+
+    /** return number of leaf products, 7^levels
+     */
+    public int leafCount() {
+        int count = 1;
+        for (int l = 0; l < levels; l++)
+            count *= 7;
+        return count;
+    }
+
+    /** return number of output blocks, 4^levels
+     */
+    public int blockCount() {
+        return side * side;
+    }
+
+    /** return average number of leaf products summed into an output block
+     */
+    public double averageBlockTerms() {
+        int terms = 0;
+        for (int[] leaves : outputLeaves)
+            terms += leaves.length;
+        return (double) terms / outputLeaves.length;
+    }
+
+    /** return the output matrix, only complete once every block has been combined
+     */
+    public double[][] getResult() {
+        return result;
+    }
+
+    /** phase 1: build the right-hand operand of a leaf (as its columns, so inner products walk both sides contiguously)
+     * and allocate its product
+     */
+    public void formRight(int leaf) {
+        double[][] sum = new double[leafSize][];
+        double[][] product = new double[leafSize][];
+        for (int i = 0; i < leafSize; i++) {
+            sum[i] = allocateZeroed(leafSize);
+            product[i] = allocateZeroed(leafSize);
+        }
+        for (int t = 0; t < rightBlocks[leaf].length; t++)
+            addBlock(sum, 0, leafSize, right, !rightTransposed, cols, depth, transposeBlock(rightBlocks[leaf][t]), rightSigns[leaf][t]);
+        rightSums[leaf] = sum;
+        products[leaf] = product;
+    }
+
+    /** phase 2: compute rows [from, to) of a leaf product, every formRight must have completed
+     */
+    public void multiplyLeaf(int leaf, int from, int to) {
+        if (from < 0 || to > leafSize || from >= to)
+            throw new IndexOutOfBoundsException("Rows [" + from + ", " + to + ") out of bounds");
+
+        // rows of the left-hand operand are only needed by this chunk
+        double[][] sums = new double[to - from][];
+        for (int i = 0; i < sums.length; i++)
+            sums[i] = allocateZeroed(leafSize);
+        for (int t = 0; t < leftBlocks[leaf].length; t++)
+            addBlock(sums, from, to, left, leftTransposed, rows, depth, leftBlocks[leaf][t], leftSigns[leaf][t]);
+
+        double[][] columns = rightSums[leaf];
+        double[][] product = products[leaf];
+        double[] dots = new double[4];
+        for (int k0 = 0; k0 < leafSize; k0 += TiledMatMul.TILE_DEPTH) {
+            int span = Math.min(k0 + TiledMatMul.TILE_DEPTH, leafSize) - k0;
+            for (int j0 = 0; j0 < leafSize; j0 += TiledMatMul.TILE_COLS) {
+                int j1 = Math.min(j0 + TiledMatMul.TILE_COLS, leafSize);
+                int i = from;
+                for (; i + 1 < to; i += 2) {
+                    double[] a0 = sums[i - from];
+                    double[] a1 = sums[i + 1 - from];
+                    double[] out0 = product[i];
+                    double[] out1 = product[i + 1];
+                    int j = j0;
+                    for (; j + 1 < j1; j += 2) {
+                        VectorKernels.dot2x2(a0, k0, a1, k0, columns[j], k0, columns[j + 1], k0, span, dots);
+                        out0[j] += dots[0];
+                        out0[j + 1] += dots[1];
+                        out1[j] += dots[2];
+                        out1[j + 1] += dots[3];
+                    }
+                    // odd column left over
+                    if (j < j1) {
+                        out0[j] += VectorKernels.dot(a0, k0, columns[j], k0, span);
+                        out1[j] += VectorKernels.dot(a1, k0, columns[j], k0, span);
+                    }
+                }
+                // odd row left over
+                if (i < to) {
+                    double[] a0 = sums[i - from];
+                    for (int j = j0; j < j1; j++)
+                        product[i][j] += VectorKernels.dot(a0, k0, columns[j], k0, span);
+                }
+            }
+        }
+        release(sums);
+    }
+
+    /** phase 3: add the leaf products into rows [from, to) of an output block, every multiplyLeaf must have completed
+     */
+    public void combineBlock(int block, int from, int to) {
+        if (from < 0 || to > leafSize || from >= to)
+            throw new IndexOutOfBoundsException("Rows [" + from + ", " + to + ") out of bounds");
+
+        int rowBase = (block / side) * leafSize;
+        int colBase = (block % side) * leafSize;
+        int width = Math.min(leafSize, cols - colBase);
+        if (width <= 0)
+            return; // block is all padding
+        for (int i = from; i < to && rowBase + i < rows; i++) {
+            double[] out = result[rowBase + i];
+            for (int t = 0; t < outputLeaves[block].length; t++) {
+                double[] m = products[outputLeaves[block][t]][i];
+                if (outputSigns[block][t] > 0)
+                    VectorKernels.add(out, colBase, m, 0, width);
+                else
+                    VectorKernels.subtract(out, colBase, m, 0, width);
+            }
+        }
+    }
+
+    /** hand every temporary back to the pool, the result is kept
+     */
+    public void release() {
+        for (int leaf = 0; leaf < rightSums.length; leaf++) {
+            release(rightSums[leaf]);
+            release(products[leaf]);
+            rightSums[leaf] = null;
+            products[leaf] = null;
+        }
+    }
+
+    /** target rows [from, to) += sign × block of a stored operand, target row i is row from + i of the block
+     */
+    private void addBlock(double[][] target, int from, int to, double[][] stored, boolean transposed,
+                          int valueRows, int valueCols, int block, int sign) {
+        int rowBase = (block / side) * leafSize;
+        int colBase = (block % side) * leafSize;
+        int width = Math.min(leafSize, valueCols - colBase);
+        if (width <= 0)
+            return;
+        for (int i = from; i < to && rowBase + i < valueRows; i++) {
+            double[] out = target[i - from];
+            int row = rowBase + i;
+            if (!transposed) {
+                VectorKernels.axpy(sign, stored[row], colBase, out, 0, width);
+            }
+            else {
+                // the value's row is a column of the stored matrix
+                for (int j = 0; j < width; j++)
+                    out[j] += sign * stored[colBase + j][row];
+            }
+        }
+    }
+
+    /** return the block at the mirrored grid position, the same block of the transposed matrix
+     */
+    private int transposeBlock(int block) {
+        return (block % side) * side + block / side;
+    }
+
+    /** map a quadrant path (base 4 digits, top level first in the lowest digit) to a block index on the side × side grid
+     */
+    private int blockOf(int path) {
+        int blockRow = 0, blockCol = 0;
+        for (int level = 0; level < levels; level++) {
+            int q = path % 4;
+            int shift = levels - 1 - level;
+            blockRow |= (q / 2) << shift;
+            blockCol |= (q % 2) << shift;
+            path /= 4;
+        }
+        return blockRow * side + blockCol;
+    }
+
+    /** return column index of a list of pairs
+     */
+    private static int[] column(List<int[]> pairs, int index) {
+        int[] values = new int[pairs.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = pairs.get(i)[index];
+        return values;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    private double[] allocateZeroed(int length) {
+        return (pool != null) ? pool.acquireZeroed(length) : new double[length];
+    }
+
+    private void release(double[][] matrix) {
+        if (pool != null)
+            pool.release(matrix);
+    }
+}
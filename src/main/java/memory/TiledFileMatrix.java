@@ -0,0 +1,226 @@
+package memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * A rows × cols matrix kept in a file instead of the heap, for matrices that do not fit the memory budget
+ * (see MemoryBudget).
+ * The file holds square tiles of tile × tile doubles in row-major tile order, each tile contiguous and
+ * row-major inside, edge tiles padded with zeros, so a tile is one mapped region.
+ * Tiles are mapped on demand and copied into or out of heap buffers of tile × tile doubles, only the tiles
+ * being worked on are resident. Different tiles may be read and written concurrently.
+ * The file is deleted by release(), and with the JVM if release() is never called.
+ */
+public class TiledFileMatrix {
+
+    /// ===== fields =====
+    private final int rows;
+    private final int cols;
+    private final int tile;
+    private final int tileRows; // number of tiles down
+    private final int tileCols; // number of tiles across
+    private final Path path;
+    private final FileChannel channel;
+    private volatile boolean released = false;
+
+    /// ===== constructor =====
+    /** create a zero matrix in a new file under directory
+     */
+    public TiledFileMatrix(int rows, int cols, int tile, Path directory) throws IOException {
+        if (rows < 0 || cols < 0 || tile < 1)
+            throw new IllegalArgumentException("rows, cols must be >= 0 and tile > 0");
+        this.rows = rows;
+        this.cols = cols;
+        this.tile = tile;
+        this.tileRows = (rows + tile - 1) / tile;
+        this.tileCols = (cols + tile - 1) / tile;
+        this.path = Files.createTempFile(directory, "lae-", ".tiles");
+        path.toFile().deleteOnExit();
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // the file gets its final size up front, concurrent mappings must never have to grow it
+        long size = (long) tileRows * tileCols * tileBytes();
+        if (size > 0)
+            channel.write(ByteBuffer.allocate(1), size - 1);
+    }
+
+    /// ===== methods =====
+    /** return a file-backed copy of matrix
+     */
+    public static TiledFileMatrix fromDense(double[][] matrix, int tile, Path directory) throws IOException {
+        int rows = matrix.length;
+        int cols = (rows > 0) ? matrix[0].length : 0;
+        TiledFileMatrix result = new TiledFileMatrix(rows, cols, tile, directory);
+        double[] buffer = new double[tile * tile];
+        for (int ti = 0; ti < result.tileRows; ti++) {
+            for (int tj = 0; tj < result.tileCols; tj++) {
+                int h = Math.min(tile, rows - ti * tile);
+                int w = Math.min(tile, cols - tj * tile);
+                Arrays.fill(buffer, 0.0);
+                for (int i = 0; i < h; i++)
+                    System.arraycopy(matrix[ti * tile + i], tj * tile, buffer, i * tile, w);
+                result.writeTile(ti, tj, buffer);
+            }
+        }
+        return result;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    /** return the side of a tile
+     */
+    public int tileSize() {
+        return tile;
+    }
+
+    /** return number of tiles down
+     */
+    public int tileRows() {
+        return tileRows;
+    }
+
+    /** return number of tiles across
+     */
+    public int tileCols() {
+        return tileCols;
+    }
+
+    /** return size of the file
+     */
+    public long fileBytes() {
+        return (long) tileRows * tileCols * tileBytes();
+    }
+
+    /** copy tile (ti, tj) into buffer, row-major with a row length of tileSize(), padding included
+     */
+    public void readTile(int ti, int tj, double[] buffer) {
+        map(ti, tj, FileChannel.MapMode.READ_ONLY).asDoubleBuffer().get(buffer, 0, tile * tile);
+    }
+
+    /** write buffer (row-major with a row length of tileSize()) as tile (ti, tj), its padding must be zero
+     */
+    public void writeTile(int ti, int tj, double[] buffer) {
+        DoubleBuffer doubles = map(ti, tj, FileChannel.MapMode.READ_WRITE).asDoubleBuffer();
+        doubles.put(buffer, 0, tile * tile);
+    }
+
+    /** return rows [band × tileSize(), ...) of the value, the stored matrix if transposed is false or its
+     * transpose otherwise, one tile row (or tile column) of the file
+     */
+    public double[][] readBand(int band, boolean transposed) {
+        int valueRows = transposed ? cols : rows;
+        int valueCols = transposed ? rows : cols;
+        int height = Math.min(tile, valueRows - band * tile);
+        if (band < 0 || height <= 0)
+            throw new IndexOutOfBoundsException("Band " + band + " out of bounds");
+
+        double[][] result = new double[height][valueCols];
+        double[] buffer = new double[tile * tile];
+        int across = transposed ? tileRows : tileCols;
+        for (int t = 0; t < across; t++) {
+            int width = Math.min(tile, valueCols - t * tile);
+            if (!transposed) {
+                readTile(band, t, buffer);
+                for (int i = 0; i < height; i++)
+                    System.arraycopy(buffer, i * tile, result[i], t * tile, width);
+            }
+            else {
+                // value row i is stored column i of the tile
+                readTile(t, band, buffer);
+                for (int i = 0; i < height; i++) {
+                    double[] row = result[i];
+                    for (int j = 0; j < width; j++)
+                        row[t * tile + j] = buffer[j * tile + i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /** return the rows of the value in order, to be called with increasing indices from one thread
+     * only one band is resident at a time
+     */
+    public IntFunction<double[]> rowReader(boolean transposed) {
+        return new IntFunction<>() {
+            private int band = -1;
+            private double[][] rowsOfBand = null;
+
+            @Override
+            public double[] apply(int row) {
+                if (row / tile != band) {
+                    band = row / tile;
+                    rowsOfBand = readBand(band, transposed);
+                }
+                return rowsOfBand[row % tile];
+            }
+        };
+    }
+
+    /** return the whole matrix on the heap
+     */
+    public double[][] toDense() {
+        double[][] result = new double[rows][];
+        for (int band = 0; band < tileRows; band++) {
+            double[][] rowsOfBand = readBand(band, false);
+            System.arraycopy(rowsOfBand, 0, result, band * tile, rowsOfBand.length);
+        }
+        return result;
+    }
+
+    /** close and delete the file, the matrix must not be used afterwards
+     */
+    public synchronized void release() {
+        if (released)
+            return;
+        released = true;
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // the file is deleted on exit anyway
+        }
+    }
+
+    /** return true once release() was called
+     */
+    public boolean isReleased() {
+        return released;
+    }
+
+    private long tileBytes() {
+        return 8L * tile * tile;
+    }
+
+    private MappedByteBuffer map(int ti, int tj, FileChannel.MapMode mode) {
+        if (ti < 0 || ti >= tileRows || tj < 0 || tj >= tileCols)
+            throw new IndexOutOfBoundsException("Tile (" + ti + ", " + tj + ") out of bounds");
+        try {
+            MappedByteBuffer mapped = channel.map(mode, ((long) ti * tileCols + tj) * tileBytes(), tileBytes());
+            mapped.order(ByteOrder.nativeOrder());
+            return mapped;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map tile of " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dx%d in %dx%d tiles of %d (%s)", rows, cols, tileRows, tileCols, tile, path);
+    }
+}
@@ -0,0 +1,192 @@
+package memory;
+
+/**
+ * Cache-blocked matrix multiplication over SharedMatrix operands.
+ * The left operand is read as ROW_MAJOR vectors and the right operand as COLUMN_MAJOR vectors,
+ * so both sides of every inner product are walked contiguously.
+ * The output is split into blocks of tiles, and every block is computed by a single call to multiplyBlock.
+ * With firstTouch set, the rows of the result are allocated by the first block that writes them instead of up
+ * front, so they are first touched by the worker that computes them.
+ */
+public class TiledMatMul {
+
+    /// ===== constants =====
+    public static final int TILE_ROWS = 64;    // output rows per tile
+    public static final int TILE_COLS = 64;    // output columns per tile
+    public static final int TILE_DEPTH = 256;  // inner dimension per pass, 2 rows + 2 columns of it stay in L1
+    public static final int BLOCK_TILES = 4;   // column tiles owned by one block
+    public static final int MIN_DIMENSION = 32; // below this the per-row vecMatMul tasks are cheaper
+
+    /// ===== fields =====
+    private final SharedMatrix left;
+    private final SharedMatrix right;
+    private final int rows;
+    private final int cols;
+    private final int depth;
+    private final double[][] result;
+    private final boolean firstTouch;
+
+    /// ===== constructor =====
+    public TiledMatMul(SharedMatrix left, SharedMatrix right) {
+        this(left, right, false);
+    }
+
+    public TiledMatMul(SharedMatrix left, SharedMatrix right, boolean firstTouch) {
+        if (left == null || right == null || left.length() == 0 || right.length() == 0)
+            throw new IllegalArgumentException("operands cannot be null or empty");
+        if (left.getOrientation() != VectorOrientation.ROW_MAJOR)
+            throw new IllegalArgumentException("left operand is not row major");
+        if (right.getOrientation() != VectorOrientation.COLUMN_MAJOR)
+            throw new IllegalArgumentException("right operand is not column major");
+        if (left.get(0).length() != right.get(0).length())
+            throw new IllegalArgumentException("operand dimensions do not match");
+
+        this.left = left;
+        this.right = right;
+        this.rows = left.length();
+        this.cols = right.length();
+        this.depth = left.get(0).length();
+        this.result = new double[rows][];
+        this.firstTouch = firstTouch;
+        if (!firstTouch) {
+            for (int i = 0; i < rows; i++)
+                result[i] = left.allocateZeroed(cols); // tiles accumulate into the result
+        }
+    }
+
+    /// ===== methods =====
+    /** return true if the tiled kernel should be preferred over per-row multiplication
+     */
+    public static boolean worthTiling(int rows, int depth, int cols) {
+        return rows >= MIN_DIMENSION && depth >= MIN_DIMENSION && cols >= MIN_DIMENSION;
+    }
+
+    /** return number of output rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /** return number of output columns
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /** return height of a block in rows
+     */
+    public int blockRows() {
+        return TILE_ROWS;
+    }
+
+    /** return width of a block in columns
+     */
+    public int blockCols() {
+        return TILE_COLS * BLOCK_TILES;
+    }
+
+    /** return the output matrix, only complete once every block has been computed
+     */
+    public double[][] getResult() {
+        return result;
+    }
+
+    /** compute output block [rowStart, rowEnd) × [colStart, colEnd)
+     * the operand vectors of the block are read-locked once for the whole block, unless they are frozen.
+     */
+    public void multiplyBlock(int rowStart, int rowEnd, int colStart, int colEnd) {
+        if (rowStart < 0 || rowEnd > rows || rowStart >= rowEnd || colStart < 0 || colEnd > cols || colStart >= colEnd)
+            throw new IndexOutOfBoundsException("Block [" + rowStart + ", " + rowEnd + ") x [" + colStart + ", " + colEnd + ") out of bounds");
+        if (firstTouch)
+            touchRows(rowStart, rowEnd);
+
+        // frozen operands are read without locks, the others are locked left rows first, then right columns
+        boolean lockLeft = !left.isFrozen();
+        boolean lockRight = !right.isFrozen();
+        if (lockLeft)
+            left.acquireReadLocks(rowStart, rowEnd);
+        try {
+            if (lockRight)
+                right.acquireReadLocks(colStart, colEnd);
+            try {
+                for (int k0 = 0; k0 < depth; k0 += TILE_DEPTH) {
+                    int k1 = Math.min(k0 + TILE_DEPTH, depth);
+                    for (int c0 = colStart; c0 < colEnd; c0 += TILE_COLS) {
+                        int c1 = Math.min(c0 + TILE_COLS, colEnd);
+                        multiplyTile(rowStart, rowEnd, c0, c1, k0, k1);
+                    }
+                }
+            }
+            finally {
+                if (lockRight)
+                    right.releaseReadLocks(colStart, colEnd);
+            }
+        }
+        finally {
+            if (lockLeft)
+                left.releaseReadLocks(rowStart, rowEnd);
+        }
+    }
+
+    /** allocate the result rows [from, to) not allocated yet, the other blocks of the same rows may run concurrently
+     */
+    private synchronized void touchRows(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (result[i] == null)
+                result[i] = left.allocateZeroed(cols);
+        }
+    }
+
+    /** accumulate the [k0, k1) slice of one output tile using a 2×2 register block
+     */
+    private void multiplyTile(int r0, int r1, int c0, int c1, int k0, int k1) {
+        int span = k1 - k0;
+        double[] sums = new double[4];
+        int i = r0;
+        for (; i + 1 < r1; i += 2) {
+            SharedVector va0 = left.get(i);
+            SharedVector va1 = left.get(i + 1);
+            double[] a0 = va0.data();
+            double[] a1 = va1.data();
+            int ao0 = va0.offset();
+            int ao1 = va1.offset();
+            double[] out0 = result[i];
+            double[] out1 = result[i + 1];
+            int j = c0;
+            for (; j + 1 < c1; j += 2) {
+                SharedVector vb0 = right.get(j);
+                SharedVector vb1 = right.get(j + 1);
+                double[] b0 = vb0.data();
+                double[] b1 = vb1.data();
+                int bo0 = vb0.offset();
+                int bo1 = vb1.offset();
+                VectorKernels.dot2x2(a0, ao0 + k0, a1, ao1 + k0, b0, bo0 + k0, b1, bo1 + k0, span, sums);
+                out0[j] += sums[0];
+                out0[j + 1] += sums[1];
+                out1[j] += sums[2];
+                out1[j + 1] += sums[3];
+            }
+            // odd column left over
+            if (j < c1) {
+                SharedVector vb0 = right.get(j);
+                double[] b0 = vb0.data();
+                int bo0 = vb0.offset();
+                out0[j] += VectorKernels.dot(a0, ao0 + k0, b0, bo0 + k0, span);
+                out1[j] += VectorKernels.dot(a1, ao1 + k0, b0, bo0 + k0, span);
+            }
+        }
+        // odd row left over
+        if (i < r1) {
+            SharedVector va0 = left.get(i);
+            double[] a0 = va0.data();
+            int ao0 = va0.offset();
+            double[] out0 = result[i];
+            for (int j = c0; j < c1; j++) {
+                SharedVector vb0 = right.get(j);
+                double[] b0 = vb0.data();
+                int bo0 = vb0.offset();
+                out0[j] += VectorKernels.dot(a0, ao0 + k0, b0, bo0 + k0, span);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package memory;
+
+/**
+ * Inner loops of the vector and matrix operations, on raw arrays with offsets.
+ * When the jdk.incubator.vector module is present (the JVM runs with --add-modules jdk.incubator.vector)
+ * the loops run on SIMD lanes through SimdKernels, otherwise the scalar loops here are used.
+ * java -jar cannot load the module from the jar's manifest, so the jar is started through lae.sh, which adds it.
+ * SIMD can be turned off with -Dlae.simd=false or setSimdEnabled(false), describe() tells which kernels run.
+ * Reductions (dot products) are summed in a different order on SIMD lanes, so results may differ
+ * from the scalar path in the last bits.
+ */
+public final class VectorKernels {
+
+    /// ===== constants =====
+    public static final boolean SIMD_AVAILABLE = detectSimd();
+
+    /// ===== fields =====
+    private static volatile boolean simd = SIMD_AVAILABLE && !"false".equalsIgnoreCase(System.getProperty("lae.simd"));
+
+    private VectorKernels() {}
+
+    /// ===== methods =====
+    /** return true if the incubator vector module is loaded
+     */
+    private static boolean detectSimd() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    /** return true if the SIMD kernels are in use
+     */
+    public static boolean isSimdEnabled() {
+        return simd;
+    }
+
+    /** return which kernels are in use, and why the scalar ones are if they are
+     */
+    public static String describe() {
+        if (simd)
+            return "SIMD kernels, " + SimdKernels.lanes() + " double lanes";
+        if (SIMD_AVAILABLE)
+            return "scalar kernels, SIMD turned off";
+        return "scalar kernels, run with --add-modules jdk.incubator.vector (or through lae.sh) for SIMD";
+    }
+
+    /** switch between the SIMD and the scalar kernels, SIMD is only enabled if available
+     */
+    public static void setSimdEnabled(boolean enabled) {
+        simd = enabled && SIMD_AVAILABLE;
+    }
+
+    /** dst[dOff + i] += src[sOff + i] for i in [0, len)
+     */
+    public static void add(double[] dst, int dOff, double[] src, int sOff, int len) {
+        if (simd) {
+            SimdKernels.add(dst, dOff, src, sOff, len);
+            return;
+        }
+        for (int i = 0; i < len; i++)
+            dst[dOff + i] += src[sOff + i];
+    }
+
+    /** dst[dOff + i] -= src[sOff + i] for i in [0, len)
+     */
+    public static void subtract(double[] dst, int dOff, double[] src, int sOff, int len) {
+        if (simd) {
+            SimdKernels.subtract(dst, dOff, src, sOff, len);
+            return;
+        }
+        for (int i = 0; i < len; i++)
+            dst[dOff + i] -= src[sOff + i];
+    }
+
+    /** a[off + i] = -a[off + i] for i in [0, len)
+     */
+    public static void negate(double[] a, int off, int len) {
+        if (simd) {
+            SimdKernels.negate(a, off, len);
+            return;
+        }
+        for (int i = off; i < off + len; i++)
+            a[i] *= -1;
+    }
+
+    /** return sum of a[aOff + i] * b[bOff + i] for i in [0, len)
+     */
+    public static double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        if (simd)
+            return SimdKernels.dot(a, aOff, b, bOff, len);
+        double result = 0.0;
+        for (int i = 0; i < len; i++)
+            result += a[aOff + i] * b[bOff + i];
+        return result;
+    }
+
+    /** y[yOff + i] += alpha * x[xOff + i] for i in [0, len)
+     */
+    public static void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int len) {
+        if (simd) {
+            SimdKernels.axpy(alpha, x, xOff, y, yOff, len);
+            return;
+        }
+        for (int i = 0; i < len; i++)
+            y[yOff + i] += alpha * x[xOff + i];
+    }
+
+    /** the four dot products of rows a0, a1 with columns b0, b1 over len elements,
+     * sums = {a0·b0, a0·b1, a1·b0, a1·b1}, every operand element is loaded once
+     */
+    public static void dot2x2(double[] a0, int ao0, double[] a1, int ao1, double[] b0, int bo0, double[] b1, int bo1,
+                              int len, double[] sums) {
+        if (simd) {
+            SimdKernels.dot2x2(a0, ao0, a1, ao1, b0, bo0, b1, bo1, len, sums);
+            return;
+        }
+        double s00 = 0.0, s01 = 0.0, s10 = 0.0, s11 = 0.0;
+        for (int k = 0; k < len; k++) {
+            double x0 = a0[ao0 + k];
+            double x1 = a1[ao1 + k];
+            double y0 = b0[bo0 + k];
+            double y1 = b1[bo1 + k];
+            s00 += x0 * y0;
+            s01 += x0 * y1;
+            s10 += x1 * y0;
+            s11 += x1 * y1;
+        }
+        sums[0] = s00;
+        sums[1] = s01;
+        sums[2] = s10;
+        sums[3] = s11;
+    }
+}
@@ -0,0 +1,83 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of the binary container used instead of JSON for large inputs and results.
+ * Everything is little-endian. A file is a 12-byte header (magic, version, kind) followed by records:
+ * - matrix:   int MATRIX_TAG, int rows, int cols, padding to 8 bytes, rows × cols doubles in row-major order
+ * - operator: int OPERATOR_TAG, int operator character ('+', '*', '-', 'T'), int operand count, operand records
+ * - error:    int ERROR_TAG, int byte length, UTF-8 bytes
+ * A TREE file holds one node record (the expression), a RESULT file one matrix record, an ERROR file one error record.
+ * Matrix data always starts on an 8-byte boundary, so it can be mapped and read as a DoubleBuffer.
+ */
+public final class BinaryFormat {
+
+    public static final String EXTENSION = ".bin";
+
+    static final int MAGIC = 0x4245414C; // "LAEB" read as little-endian bytes
+    static final int VERSION = 1;
+
+    static final int KIND_TREE = 0;
+    static final int KIND_RESULT = 1;
+    static final int KIND_ERROR = 2;
+
+    static final int MATRIX_TAG = 0;
+    static final int OPERATOR_TAG = 1;
+    static final int ERROR_TAG = 2;
+
+    static final int HEADER_BYTES = 12;
+    static final long MAX_MAPPED_BYTES = 1L << 30; // a single mapping is limited to 2GB, map large matrices in pieces
+
+    private BinaryFormat() {}
+
+    /**
+     * Returns true if the path should be read or written in the binary format.
+     */
+    public static boolean isBinary(String path) {
+        return path != null && path.endsWith(EXTENSION);
+    }
+
+    /**
+     * Returns position rounded up to the next multiple of 8.
+     */
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Maps the doubles of a matrix starting at dataPosition, at most MAX_MAPPED_BYTES (whole rows) at a time,
+     * and copies them into the rows (fromFile) or writes the rows into them (otherwise).
+     * Written pages are not forced to the device: like the JSON writer, the file is complete for any reader once the
+     * channel is closed, and an fsync per mapping would make writing a large result disk-bound.
+     */
+    static void transferRows(FileChannel channel, long dataPosition, double[][] matrix, int cols, boolean fromFile)
+            throws IOException {
+        FileChannel.MapMode mode = fromFile ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        long rowBytes = 8L * cols;
+        int rowsPerMap = (rowBytes == 0) ? matrix.length : (int) Math.max(1, MAX_MAPPED_BYTES / rowBytes);
+
+        long position = dataPosition;
+        for (int first = 0; first < matrix.length; first += rowsPerMap) {
+            int last = Math.min(first + rowsPerMap, matrix.length);
+            long bytes = rowBytes * (last - first);
+            if (bytes == 0) {
+                break;
+            }
+            MappedByteBuffer mapped = channel.map(mode, position, bytes);
+            DoubleBuffer doubles = mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            for (int i = first; i < last; i++) {
+                if (fromFile) {
+                    doubles.get(matrix[i]);
+                } else {
+                    doubles.put(matrix[i]);
+                }
+            }
+            position += bytes;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads an expression tree stored in the binary format (see BinaryFormat).
+ * Record headers are read with positional reads, matrix data is memory mapped and copied
+ * into the rows with bulk DoubleBuffer transfers instead of being decoded number by number.
+ */
+public class BinaryInputParser {
+
+    private FileChannel channel;
+    private long size;
+    private long position;
+    private final ByteBuffer word = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+    public BinaryInputParser() {}
+
+    public ComputationNode parse(String inputPath) throws ParseException {
+        Path path = Paths.get(inputPath);
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.channel = fileChannel;
+            this.size = fileChannel.size();
+            this.position = 0;
+
+            if (readInt() != BinaryFormat.MAGIC) {
+                throw new ParseException("Invalid binary input: bad magic number", 0);
+            }
+            int version = readInt();
+            if (version != BinaryFormat.VERSION) {
+                throw new ParseException("Invalid binary input: unsupported version " + version, 4);
+            }
+            if (readInt() != BinaryFormat.KIND_TREE) {
+                throw new ParseException("Invalid binary input: file does not hold an expression tree", 8);
+            }
+            return parseNode();
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input binary file: " + e.getMessage(), 0);
+        } finally {
+            this.channel = null;
+        }
+    }
+
+    private ComputationNode parseNode() throws IOException, ParseException {
+        long start = position;
+        int tag = readInt();
+        if (tag == BinaryFormat.OPERATOR_TAG) {
+            String operatorStr = String.valueOf((char) readInt());
+            int count = readInt();
+            if (count < 0) {
+                throw new ParseException("Invalid binary input: negative operand count", offset(start));
+            }
+            List<ComputationNode> operands = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                operands.add(parseNode());
+            }
+            return new ComputationNode(operatorStr, operands);
+        }
+        else if (tag == BinaryFormat.MATRIX_TAG) {
+            return ComputationNode.ofMatrix(parseMatrix(start));
+        }
+        else { throw new ParseException("Invalid node structure: unknown record tag " + tag, offset(start)); }
+    }
+
+    private double[][] parseMatrix(long start) throws IOException, ParseException {
+        int rows = readInt();
+        int cols = readInt();
+        if (rows == 0) {
+            throw new ParseException("Empty array cannot be parsed as DataNode.", offset(start));
+        }
+        if (rows < 0 || cols < 0) {
+            throw new ParseException("Invalid binary input: negative matrix size", offset(start));
+        }
+        long dataPosition = BinaryFormat.align(position);
+        long end = dataPosition + 8L * rows * cols;
+        if (end > size) {
+            throw new ParseException("Invalid binary input: truncated matrix data", offset(start));
+        }
+
+        double[][] matrix = new double[rows][cols];
+        BinaryFormat.transferRows(channel, dataPosition, matrix, cols, true);
+        position = end;
+        return matrix;
+    }
+
+    private int readInt() throws IOException, ParseException {
+        if (position + 4 > size) {
+            throw new ParseException("Invalid binary input: truncated file", offset(position));
+        }
+        word.clear();
+        while (word.hasRemaining()) {
+            if (channel.read(word, position + word.position()) < 0) {
+                throw new ParseException("Invalid binary input: truncated file", offset(position));
+            }
+        }
+        position += 4;
+        return word.getInt(0);
+    }
+
+    private static int offset(long filePosition) {
+        return (int) Math.min(filePosition, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,134 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+/**
+ * Writes results, errors and expression trees in the binary format (see BinaryFormat).
+ * Record headers go through the channel, matrix data is written through memory mapped regions.
+ */
+public class BinaryOutputWriter {
+
+    private static final int ROWS_PER_CHUNK = 256;
+
+    public BinaryOutputWriter() {}
+
+    public static void write(double[][] matrix, String filePath) throws IOException {
+        try (FileChannel channel = open(filePath)) {
+            long position = writeHeader(channel, BinaryFormat.KIND_RESULT);
+            writeMatrix(channel, position, matrix);
+        }
+    }
+
+    /**
+     * Writes a result that is not on the heap as a whole, its rows are taken from rowAt in increasing order
+     * and written ROWS_PER_CHUNK at a time.
+     */
+    public static void write(int rows, int cols, IntFunction<double[]> rowAt, String filePath) throws IOException {
+        try (FileChannel channel = open(filePath)) {
+            long position = writeHeader(channel, BinaryFormat.KIND_RESULT);
+            long dataPosition = BinaryFormat.align(writeInts(channel, position, BinaryFormat.MATRIX_TAG, rows, cols));
+            for (int first = 0; first < rows; first += ROWS_PER_CHUNK) {
+                double[][] chunk = new double[Math.min(ROWS_PER_CHUNK, rows - first)][];
+                for (int i = 0; i < chunk.length; i++) {
+                    chunk[i] = rowAt.apply(first + i);
+                }
+                BinaryFormat.transferRows(channel, dataPosition + 8L * first * cols, chunk, cols, false);
+            }
+        }
+    }
+
+    public static void write(String error, String filePath) throws IOException {
+        byte[] bytes = String.valueOf(error).getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = open(filePath)) {
+            long position = writeHeader(channel, BinaryFormat.KIND_ERROR);
+            position = writeInts(channel, position, BinaryFormat.ERROR_TAG, bytes.length);
+            writeFully(channel, position, ByteBuffer.wrap(bytes));
+        }
+    }
+
+    /**
+     * Writes an expression tree, e.g. to convert a JSON input into a binary one.
+     */
+    public static void writeTree(ComputationNode root, String filePath) throws IOException {
+        if (root == null) {
+            throw new IllegalArgumentException("root must not be null");
+        }
+        try (FileChannel channel = open(filePath)) {
+            long position = writeHeader(channel, BinaryFormat.KIND_TREE);
+            writeNode(channel, position, root);
+        }
+    }
+
+    private static long writeNode(FileChannel channel, long position, ComputationNode node) throws IOException {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return writeMatrix(channel, position, node.getMatrix());
+        }
+        position = writeInts(channel, position, BinaryFormat.OPERATOR_TAG, operatorChar(node.getNodeType()),
+                node.getChildren().size());
+        for (ComputationNode child : node.getChildren()) {
+            position = writeNode(channel, position, child);
+        }
+        return position;
+    }
+
+    private static long writeMatrix(FileChannel channel, long position, double[][] matrix) throws IOException {
+        int rows = matrix.length;
+        int cols = (rows > 0) ? matrix[0].length : 0;
+        for (double[] row : matrix) {
+            if (row.length != cols) {
+                throw new IllegalArgumentException("Inconsistent row sizes in matrix.");
+            }
+        }
+        long dataPosition = BinaryFormat.align(writeInts(channel, position, BinaryFormat.MATRIX_TAG, rows, cols));
+        BinaryFormat.transferRows(channel, dataPosition, matrix, cols, false);
+        return dataPosition + 8L * rows * cols;
+    }
+
+    private static int operatorChar(ComputationNodeType type) {
+        switch (type) {
+            case ADD:
+                return '+';
+            case MULTIPLY:
+                return '*';
+            case NEGATE:
+                return '-';
+            case TRANSPOSE:
+                return 'T';
+            default:
+                throw new IllegalArgumentException("Operator has no binary encoding: " + type);
+        }
+    }
+
+    private static FileChannel open(String filePath) throws IOException {
+        // mapping a region for writing needs a channel open for reading as well
+        return FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static long writeHeader(FileChannel channel, int kind) throws IOException {
+        return writeInts(channel, 0, BinaryFormat.MAGIC, BinaryFormat.VERSION, kind);
+    }
+
+    private static long writeInts(FileChannel channel, long position, int... values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        buffer.flip();
+        return writeFully(channel, position, buffer);
+    }
+
+    private static long writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+}
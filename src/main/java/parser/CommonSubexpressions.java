@@ -0,0 +1,125 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges equal subtrees of a computation tree, turning it into a DAG in which every distinct
+ * subexpression appears once.
+ * Subtrees are compared by their SubtreeKey, computed bottom-up from the content of the matrices,
+ * two subtrees are only merged once their operators and matrix elements are found equal, not on the hash alone.
+ * Every node referenced more than once afterwards is marked shared (see ComputationNode.isShared()),
+ * it is evaluated once and its result is read by all of its parents.
+ * The keys stay available through keyOf() after elimination, e.g. to look results up in a cache.
+ */
+public class CommonSubexpressions {
+
+    private final Map<ComputationNode, SubtreeKey> keys = new IdentityHashMap<>(); // every visited node, merged ones included
+    private final Map<SubtreeKey, ComputationNode> canonical = new HashMap<>();    // the node kept for every key
+    private int merged = 0; // number of subtrees replaced by an equal one
+
+    public CommonSubexpressions() {}
+
+    /**
+     * Merges equal subtrees under root in place and marks the nodes that end up shared.
+     */
+    public void eliminate(ComputationNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("root must not be null");
+        }
+        canonicalize(root);
+        markShared(root, new IdentityHashMap<>());
+    }
+
+    /**
+     * Returns the key of a node seen by eliminate(), or null.
+     */
+    public SubtreeKey keyOf(ComputationNode node) {
+        return keys.get(node);
+    }
+
+    /**
+     * Drops the references every key keeps to the input matrices, once no key needs to be compared anymore.
+     * Keys handed to a result cache must keep theirs.
+     */
+    public void releaseContents() {
+        for (SubtreeKey key : keys.values()) {
+            key.releaseContents();
+        }
+    }
+
+    /**
+     * Returns the number of subtrees that were replaced by an equal one.
+     */
+    public int getMergedCount() {
+        return merged;
+    }
+
+    /**
+     * Returns the number of distinct subexpressions.
+     */
+    public int getUniqueCount() {
+        return canonical.size();
+    }
+
+    /**
+     * Returns the node to use in place of node, after canonicalizing its children.
+     */
+    private ComputationNode canonicalize(ComputationNode node) {
+        SubtreeKey known = keys.get(node);
+        if (known != null) {
+            return canonical.get(known);
+        }
+
+        SubtreeKey key;
+        List<ComputationNode> children = node.getChildren();
+        if (children == null) {
+            key = node.isSparse()
+                    ? SubtreeKey.ofSparse(node.getSparse(), node.isTransposed())
+                    : SubtreeKey.ofMatrix(node.getStoredMatrix(), node.isTransposed());
+        }
+        else {
+            List<ComputationNode> unique = new ArrayList<>(children.size());
+            SubtreeKey[] operands = new SubtreeKey[children.size()];
+            boolean changed = false;
+            for (int i = 0; i < children.size(); i++) {
+                ComputationNode child = canonicalize(children.get(i));
+                changed |= (child != children.get(i));
+                unique.add(child);
+                operands[i] = keys.get(child);
+            }
+            if (changed) {
+                node.setChildren(unique);
+            }
+            key = SubtreeKey.ofOperator(node.getNodeType(), operands);
+        }
+
+        keys.put(node, key);
+        ComputationNode existing = canonical.putIfAbsent(key, node);
+        if (existing != null) {
+            merged++;
+            return existing;
+        }
+        return node;
+    }
+
+    /**
+     * Marks every node under node that is referenced more than once.
+     */
+    private void markShared(ComputationNode node, Map<ComputationNode, Boolean> seen) {
+        if (node.getChildren() == null) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            if (seen.put(child, Boolean.TRUE) != null) {
+                child.markShared();
+            }
+            else {
+                markShared(child, seen);
+            }
+        }
+    }
+}
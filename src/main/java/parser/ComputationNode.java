@@ -1,5 +1,8 @@
 package parser;
 
+import memory.SparseMatrix;
+import memory.TiledFileMatrix;
+
 import java.util.List;
 
 public class ComputationNode {
@@ -7,6 +10,11 @@ public class ComputationNode {
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
     private double[][] matrix = null; // only used for MATRIX nodes
+    private SparseMatrix sparse = null; // only used for MATRIX nodes stored sparse, matrix is then null until densified
+    private TiledFileMatrix spilled = null; // only used for MATRIX nodes stored in a file, matrix is then null until loaded
+    private boolean transposed = false; // only used for MATRIX nodes, true if matrix holds the transpose of the value
+    private MatrixChainOrder chainOrder = null; // only set on n-ary MULTIPLY nodes, kept for diagnostics
+    private boolean shared = false; // true if more than one parent references this node, see CommonSubexpressions
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
         this.nodeType = mapOperator(operatorStr);
@@ -38,6 +46,21 @@ public class ComputationNode {
         this.matrix = matrix;
     }
 
+    public ComputationNode(SparseMatrix sparse) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.sparse = sparse;
+    }
+
+    /**
+     * Creates a matrix node, stored sparse if few enough of its elements are non-zero (and all of them finite).
+     */
+    public static ComputationNode ofMatrix(double[][] matrix) {
+        if (SparseMatrix.isWorthStoring(matrix)) {
+            return new ComputationNode(SparseMatrix.fromDense(matrix));
+        }
+        return new ComputationNode(matrix);
+    }
+
     public ComputationNodeType getNodeType() {
         return nodeType;
     }
@@ -46,6 +69,25 @@ public class ComputationNode {
         return children;
     }
 
+    /**
+     * Replaces the children of this node, used when equal subtrees are merged.
+     */
+    void setChildren(List<ComputationNode> children) {
+        this.children = children;
+    }
+
+    /**
+     * Returns true if this node is an operand of more than one parent (or twice of the same parent).
+     * A shared node is evaluated once and its result is read by every parent.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    void markShared() {
+        this.shared = true;
+    }
+
     /**
      * Recursively finds the first resolvable node in the tree.
      * A resolvable node is defined as a node that is not of type MATRIX,
@@ -70,17 +112,37 @@ public class ComputationNode {
      * Restructures the tree to ensure that operations with more than two operands
      * are nested in a left-associative manner.
      * For example, A + B + C becomes (A + B) + C.
-     * Effectively, this converts n-ary operations (n > 2) into binary operations.
+     * MULTIPLY chains are instead nested in the cheapest order, see MatrixChainOrder.
+     * Effectively, this converts n-ary operations (n > 2) into binary operations, in the whole subtree.
      */
     public void associativeNesting() {
         if (children != null && children.size() > 2) {
-            ComputationNode lastChild = children.remove(children.size() - 1);
-            ComputationNode newNode = new ComputationNode(nodeType, children);
-            children = List.of(newNode, lastChild);
-            newNode.associativeNesting();
+            MatrixChainOrder order = (nodeType == ComputationNodeType.MULTIPLY) ? MatrixChainOrder.compute(children) : null;
+            if (order != null) {
+                chainOrder = order;
+                children = order.nest(children);
+            }
+            else {
+                ComputationNode lastChild = children.remove(children.size() - 1);
+                ComputationNode newNode = new ComputationNode(nodeType, children);
+                children = List.of(newNode, lastChild);
+            }
+        }
+        if (children != null) {
+            for (ComputationNode child : children) {
+                child.associativeNesting();
+            }
         }
     }
 
+    /**
+     * Returns the order chosen for this node's multiply chain by associativeNesting(),
+     * or null if this node was not an n-ary MULTIPLY.
+     */
+    public MatrixChainOrder getChainOrder() {
+        return chainOrder;
+    }
+
     /**
      * Resolves this node by setting its type to MATRIX and storing the computed matrix.
      */
@@ -88,14 +150,218 @@ public class ComputationNode {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
         this.matrix = matrix;
+        this.sparse = null;
+        this.spilled = null;
+        this.transposed = false;
     }
 
-    public double[][] getMatrix() {
+    /**
+     * Resolves this node to a sparse matrix, or to its transpose when transposed is set.
+     */
+    public void resolveSparse(SparseMatrix sparse, boolean transposed) {
+        resolve(null);
+        this.sparse = sparse;
+        this.transposed = transposed;
+    }
+
+    /**
+     * Resolves this node to a file-backed matrix, or to its transpose when transposed is set.
+     */
+    public void resolveSpilled(TiledFileMatrix spilled, boolean transposed) {
+        resolve(null);
+        this.spilled = spilled;
+        this.transposed = transposed;
+    }
+
+    /**
+     * Drops the value of a resolved node no parent reads anymore, so that its matrix can be reclaimed
+     * before the rest of the tree is resolved. The node must not be read afterwards.
+     */
+    public void discard() {
+        this.matrix = null;
+        this.sparse = null;
+        this.spilled = null;
+    }
+
+    /**
+     * Returns true if this node holds a file-backed matrix that was not loaded.
+     */
+    public boolean isSpilled() {
+        return matrix == null && spilled != null;
+    }
+
+    /**
+     * Returns the file-backed matrix as stored (the transpose of the value when isTransposed() is true), or null.
+     */
+    public TiledFileMatrix getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Returns true if this node holds a sparse matrix that was not densified.
+     */
+    public boolean isSparse() {
+        return matrix == null && sparse != null;
+    }
+
+    /**
+     * Returns the sparse matrix as stored (the transpose of the value when isTransposed() is true), or null.
+     */
+    public SparseMatrix getSparse() {
+        return sparse;
+    }
+
+    /**
+     * Resolves this node to the transpose of the given matrix without copying it.
+     * The matrix is stored as is and only flagged, see isTransposed().
+     */
+    public void resolveTransposed(double[][] matrix) {
+        resolve(matrix);
+        this.transposed = true;
+    }
+
+    /**
+     * Returns true if the stored matrix is the transpose of this node's value.
+     */
+    public boolean isTransposed() {
+        return transposed;
+    }
+
+    /**
+     * Returns the matrix as stored, which is the transpose of the value when isTransposed() is true.
+     */
+    public double[][] getStoredMatrix() {
+        if (matrix == null && sparse != null) {
+            // consumers that are not sparse-aware get the dense form, computed once
+            matrix = sparse.toDense();
+        }
+        if (matrix == null && spilled != null) {
+            // consumers that work on the heap get the whole matrix, loaded once
+            matrix = spilled.toDense();
+        }
         if (matrix == null) {
             throw new IllegalStateException("This node does not contain a matrix.");
         }
         return matrix;
     }
 
+    /**
+     * Returns true if the shape of this node's value can be inferred, i.e. getRows() and getCols() do not throw.
+     * A malformed operator (one without operands) is left for the engine to reject with its own message.
+     */
+    public boolean hasShape() {
+        return hasShapeAlong(true) && hasShapeAlong(false);
+    }
+
+    /**
+     * Walks the children getRows() (rows) or getCols() (!rows) would read, returns false at an operator without operands.
+     */
+    private boolean hasShapeAlong(boolean rows) {
+        ComputationNode node = this;
+        while (node.nodeType != ComputationNodeType.MATRIX) {
+            if (node.children == null || node.children.isEmpty()) {
+                return false;
+            }
+            if (node.nodeType == ComputationNodeType.TRANSPOSE) {
+                rows = !rows;
+            }
+            node = (!rows && node.nodeType == ComputationNodeType.MULTIPLY)
+                    ? node.children.get(node.children.size() - 1) : node.children.get(0);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of rows of this node's value.
+     * For operation nodes it is inferred from the children without computing anything.
+     * Throws IllegalArgumentException if an operator on the way has no operands.
+     */
+    public int getRows() {
+        checkHasOperands();
+        switch (nodeType) {
+            case MATRIX:
+                if (isSparse()) {
+                    return transposed ? sparse.cols() : sparse.rows();
+                }
+                if (isSpilled()) {
+                    return transposed ? spilled.cols() : spilled.rows();
+                }
+                double[][] stored = getStoredMatrix();
+                return transposed ? stored[0].length : stored.length;
+            case TRANSPOSE:
+                return children.get(0).getCols();
+            default:
+                return children.get(0).getRows();
+        }
+    }
+
+    /**
+     * Returns the number of columns of this node's value.
+     * For operation nodes it is inferred from the children without computing anything.
+     * Throws IllegalArgumentException if an operator on the way has no operands.
+     */
+    public int getCols() {
+        checkHasOperands();
+        switch (nodeType) {
+            case MATRIX:
+                if (isSparse()) {
+                    return transposed ? sparse.rows() : sparse.cols();
+                }
+                if (isSpilled()) {
+                    return transposed ? spilled.rows() : spilled.cols();
+                }
+                double[][] stored = getStoredMatrix();
+                return transposed ? stored.length : stored[0].length;
+            case TRANSPOSE:
+                return children.get(0).getRows();
+            case MULTIPLY:
+                return children.get(children.size() - 1).getCols();
+            default:
+                return children.get(0).getCols();
+        }
+    }
+
+    /**
+     * Rejects an operator without operands the way the engine does, its shape cannot be inferred.
+     */
+    private void checkHasOperands() {
+        if (nodeType != ComputationNodeType.MATRIX && (children == null || children.isEmpty())) {
+            throw new IllegalArgumentException("Illegal node: node must contain at least one child");
+        }
+    }
+
+    /**
+     * Replaces the contents of this node with the contents of other.
+     * Used by tree rewrites so that references to this node (including the root) stay valid.
+     */
+    void become(ComputationNode other) {
+        this.nodeType = other.nodeType;
+        this.children = other.children;
+        this.matrix = other.matrix;
+        this.sparse = other.sparse;
+        this.spilled = other.spilled;
+        this.transposed = other.transposed;
+        this.chainOrder = other.chainOrder;
+    }
+
+    /**
+     * Returns this node's value in row-major form.
+     * A lazily transposed matrix is materialized here once and kept.
+     */
+    public double[][] getMatrix() {
+        double[][] stored = getStoredMatrix();
+        if (transposed) {
+            double[][] value = new double[stored[0].length][stored.length];
+            for (int i = 0; i < stored.length; i++) {
+                for (int j = 0; j < stored[i].length; j++) {
+                    value[j][i] = stored[i][j];
+                }
+            }
+            this.matrix = value;
+            this.transposed = false;
+        }
+        return matrix;
+    }
+
 
-}
\ No newline at end of file
+}
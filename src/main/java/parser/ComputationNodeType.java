@@ -3,11 +3,13 @@ package parser;
 /**
  * Computation nodes hold either an operation to be applied, or a matrix (2D array).
  * Matrices are always leaf nodes, while operation nodes have children.
+ * SUBTRACT has no input operator, it is only produced by the ExpressionOptimizer.
  */
 public enum ComputationNodeType {
     ADD,
+    SUBTRACT,
     MULTIPLY,
     NEGATE,
     TRANSPOSE,
     MATRIX,
-}
\ No newline at end of file
+}
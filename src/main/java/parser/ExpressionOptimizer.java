@@ -0,0 +1,197 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies algebraic rewrites to a computation tree before it is evaluated.
+ * The tree is expected to be binary already (see ComputationNode.associativeNesting).
+ * Every rewrite keeps the value of the tree and removes or cheapens work:
+ * - (A^T)^T becomes A, and -(-A) becomes A
+ * - -(A * B) negates the smaller of A and B instead of the product
+ * - (A * B)^T becomes B^T * A^T when A or B is a transpose itself, so the transposes fold away
+ * - -A + B becomes B - A, A + -B becomes A - B, -A + -B becomes -(A + B) and A - -B becomes A + B
+ * Nodes are rewritten in place, so references to the root stay valid.
+ */
+public class ExpressionOptimizer {
+
+    private int rewrites = 0; // number of rewrites applied so far
+
+    public ExpressionOptimizer() {}
+
+    /**
+     * Rewrites the tree rooted at root in place.
+     */
+    public void optimize(ComputationNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("root must not be null");
+        }
+        rewrite(root);
+    }
+
+    /**
+     * Returns the number of rewrites applied by this optimizer.
+     */
+    public int getRewriteCount() {
+        return rewrites;
+    }
+
+    /**
+     * Rewrites node and its subtree.
+     * Rules are applied top-down first so that a parent can claim a pattern (e.g. -A + B)
+     * before the child is rewritten on its own, then again once the children have settled.
+     */
+    private void rewrite(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        while (applyRule(node)) {
+            rewrites++;
+        }
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            rewrite(child);
+        }
+        while (applyRule(node)) {
+            rewrites++;
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                return;
+            }
+            for (ComputationNode child : node.getChildren()) {
+                rewrite(child);
+            }
+        }
+    }
+
+    /**
+     * Applies the first matching rule at node, returns false if none matched.
+     */
+    private boolean applyRule(ComputationNode node) {
+        List<ComputationNode> children = node.getChildren();
+        switch (node.getNodeType()) {
+            case TRANSPOSE:
+                if (children.size() != 1) {
+                    return false;
+                }
+                return rewriteTranspose(node, children.get(0));
+            case NEGATE:
+                if (children.size() != 1) {
+                    return false;
+                }
+                return rewriteNegate(node, children.get(0));
+            case ADD:
+                if (children.size() != 2) {
+                    return false;
+                }
+                return rewriteAdd(node, children.get(0), children.get(1));
+            case SUBTRACT:
+                if (children.size() != 2) {
+                    return false;
+                }
+                // A - -B = A + B
+                if (isNegation(children.get(1))) {
+                    node.become(binary(ComputationNodeType.ADD, children.get(0), operand(children.get(1))));
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean rewriteTranspose(ComputationNode node, ComputationNode child) {
+        // (A^T)^T = A
+        if (child.getNodeType() == ComputationNodeType.TRANSPOSE && child.getChildren().size() == 1) {
+            node.become(operand(child));
+            return true;
+        }
+        // (A * B)^T = B^T * A^T, only worth it when one of the new transposes cancels out
+        if (child.getNodeType() == ComputationNodeType.MULTIPLY && child.getChildren().size() == 2) {
+            ComputationNode a = child.getChildren().get(0);
+            ComputationNode b = child.getChildren().get(1);
+            if (a.getNodeType() == ComputationNodeType.TRANSPOSE || b.getNodeType() == ComputationNodeType.TRANSPOSE) {
+                node.become(binary(ComputationNodeType.MULTIPLY, unary(ComputationNodeType.TRANSPOSE, b),
+                        unary(ComputationNodeType.TRANSPOSE, a)));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean rewriteNegate(ComputationNode node, ComputationNode child) {
+        // -(-A) = A
+        if (isNegation(child)) {
+            node.become(operand(child));
+            return true;
+        }
+        // -(A * B) = (-A) * B = A * (-B), negate whichever of A, B and A * B is smallest
+        if (child.getNodeType() == ComputationNodeType.MULTIPLY && child.getChildren().size() == 2) {
+            ComputationNode a = child.getChildren().get(0);
+            ComputationNode b = child.getChildren().get(1);
+            // a malformed operand is left as is, for the engine to reject
+            if (!a.hasShape() || !b.hasShape()) {
+                return false;
+            }
+            long aSize = size(a);
+            long bSize = size(b);
+            long productSize = (long) a.getRows() * b.getCols();
+            if (aSize <= bSize && aSize < productSize) {
+                node.become(binary(ComputationNodeType.MULTIPLY, unary(ComputationNodeType.NEGATE, a), b));
+                return true;
+            }
+            if (bSize < aSize && bSize < productSize) {
+                node.become(binary(ComputationNodeType.MULTIPLY, a, unary(ComputationNodeType.NEGATE, b)));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean rewriteAdd(ComputationNode node, ComputationNode a, ComputationNode b) {
+        boolean aNegated = isNegation(a);
+        boolean bNegated = isNegation(b);
+        // -A + -B = -(A + B)
+        if (aNegated && bNegated) {
+            node.become(unary(ComputationNodeType.NEGATE, binary(ComputationNodeType.ADD, operand(a), operand(b))));
+            return true;
+        }
+        // -A + B = B - A
+        if (aNegated) {
+            node.become(binary(ComputationNodeType.SUBTRACT, b, operand(a)));
+            return true;
+        }
+        // A + -B = A - B
+        if (bNegated) {
+            node.become(binary(ComputationNodeType.SUBTRACT, a, operand(b)));
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isNegation(ComputationNode node) {
+        return node.getNodeType() == ComputationNodeType.NEGATE && node.getChildren().size() == 1;
+    }
+
+    private static ComputationNode operand(ComputationNode unaryNode) {
+        return unaryNode.getChildren().get(0);
+    }
+
+    private static long size(ComputationNode node) {
+        return (long) node.getRows() * node.getCols();
+    }
+
+    private static ComputationNode unary(ComputationNodeType type, ComputationNode child) {
+        List<ComputationNode> children = new ArrayList<>(1);
+        children.add(child);
+        return new ComputationNode(type, children);
+    }
+
+    private static ComputationNode binary(ComputationNodeType type, ComputationNode left, ComputationNode right) {
+        List<ComputationNode> children = new ArrayList<>(2);
+        children.add(left);
+        children.add(right);
+        return new ComputationNode(type, children);
+    }
+}
@@ -1,5 +1,8 @@
 package parser;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -14,8 +17,20 @@ public class InputParser {
     private final ObjectMapper mapper = new ObjectMapper();
 
     public ComputationNode parse(String inputPath) throws ParseException {
+        File inputFile = new File(inputPath);
+        try {
+            return parseStreaming(inputFile);
+        } catch (ParseException | JsonProcessingException e) {
+            // anything the token stream does not accept goes through the tree reader,
+            // which reports the same errors (with the offending node) as it always did
+            return parseTree(inputFile);
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input JSON file: " + e.getMessage(), 0);
+        }
+    }
+
+    private ComputationNode parseTree(File inputFile) throws ParseException {
         try {
-            File inputFile = new File(inputPath);
             JsonNode rootJsonNode = mapper.readTree(inputFile);
             ComputationNode root = parseJsonNode(rootJsonNode);
             return root;
@@ -24,6 +39,114 @@ public class InputParser {
         }
     }
 
+    /**
+     * Parses the file from Jackson's token stream, matrices are read straight into double[] rows
+     * without building a JsonNode per element.
+     */
+    private ComputationNode parseStreaming(File inputFile) throws IOException, ParseException {
+        try (JsonParser parser = mapper.getFactory().createParser(inputFile)) {
+            if (parser.nextToken() == null) {
+                throw new ParseException("Invalid node structure: empty input", 0);
+            }
+            return parseNode(parser);
+        }
+    }
+
+    /**
+     * Parses the node starting at the current token and leaves the parser on its last token.
+     */
+    private ComputationNode parseNode(JsonParser parser) throws IOException, ParseException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            String operatorStr = null;
+            List<ComputationNode> operands = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("operator") && value.isScalarValue()) {
+                    operatorStr = parser.getValueAsString();
+                }
+                else if (field.equals("operands") && value == JsonToken.START_ARRAY) {
+                    operands = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        operands.add(parseNode(parser));
+                    }
+                }
+                else if (field.equals("operator") || field.equals("operands")) {
+                    throw new ParseException("Invalid node structure: unexpected " + value + " for " + field, 0);
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+            if (operatorStr == null || operands == null) {
+                throw new ParseException("Invalid node structure: missing operator or operands", 0);
+            }
+            return new ComputationNode(operatorStr, operands);
+        }
+        else if (token == JsonToken.START_ARRAY) {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.END_ARRAY) {
+                throw new ParseException("Empty array cannot be parsed as DataNode.", 0);
+            }
+            if (first.isNumeric()) {
+                throw new ParseException("Vectors (1D arrays) are not supported as standalone nodes.", 0);
+            }
+            if (first != JsonToken.START_ARRAY) {
+                throw new ParseException("Invalid matrix row: " + first, 0);
+            }
+            return ComputationNode.ofMatrix(parseMatrix(parser));
+        }
+        else {
+            throw new ParseException("Invalid node structure: " + token, 0);
+        }
+    }
+
+    /**
+     * Reads the rows of a matrix, the parser is on the first row's START_ARRAY.
+     * The first row sets the width and every following row is filled in place.
+     */
+    private double[][] parseMatrix(JsonParser parser) throws IOException, ParseException {
+        List<double[]> rows = new ArrayList<>();
+
+        double[] buffer = new double[16];
+        int width = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (width == buffer.length) {
+                buffer = Arrays.copyOf(buffer, width * 2);
+            }
+            buffer[width++] = readElement(parser, token);
+        }
+        rows.add(Arrays.copyOf(buffer, width));
+
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new ParseException("Invalid matrix row: " + token, 0);
+            }
+            double[] row = new double[width];
+            int j = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (j == width) {
+                    throw new ParseException("Inconsistent row sizes in matrix.", 0);
+                }
+                row[j++] = readElement(parser, token);
+            }
+            if (j != width) {
+                throw new ParseException("Inconsistent row sizes in matrix.", 0);
+            }
+            rows.add(row);
+        }
+        return rows.toArray(new double[0][]);
+    }
+
+    private double readElement(JsonParser parser, JsonToken token) throws IOException, ParseException {
+        if (!token.isNumeric()) {
+            throw new ParseException("Invalid matrix element: " + token, 0);
+        }
+        return parser.getDoubleValue();
+    }
+
     private ComputationNode parseJsonNode(JsonNode jsonNode) throws ParseException {
         if (jsonNode.has("operator") && jsonNode.has("operands")) {
             String operatorStr = jsonNode.get("operator").asText();
@@ -59,10 +182,10 @@ public class InputParser {
                         matrix[i][j] = rowJsonNode.get(j).asDouble();
                     }
                 }
-                return new ComputationNode(matrix);
+                return ComputationNode.ofMatrix(matrix);
             }
         }
         else { throw new ParseException("Invalid node structure: " + jsonNode.toString(), 0); }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optimal parenthesization of an n-ary MULTIPLY, using the classic matrix-chain dynamic program.
+ * The cost of multiplying a (p × q) matrix by a (q × r) matrix is estimated as 2·p·q·r flops.
+ * Operands are referred to as A0 .. A(n-1) in the order they appear in the input.
+ */
+public class MatrixChainOrder {
+
+    private final int n;          // number of operands
+    private final int[] dims;     // operand i is dims[i] × dims[i + 1]
+    private final int[][] split;  // split[i][j] = last operand of the left factor of A(i..j)
+    private final long flops;     // estimated flops of the chosen order
+    private final long leftNestedFlops; // estimated flops of ((A0 * A1) * A2) * ...
+
+    private MatrixChainOrder(int[] dims) {
+        this.n = dims.length - 1;
+        this.dims = dims;
+        this.split = new int[n][n];
+
+        long[][] cost = new long[n][n];
+        for (int len = 2; len <= n; len++) {
+            for (int i = 0; i + len - 1 < n; i++) {
+                int j = i + len - 1;
+                cost[i][j] = Long.MAX_VALUE;
+                for (int k = i; k < j; k++) {
+                    long c = cost[i][k] + cost[k + 1][j] + 2L * dims[i] * dims[k + 1] * dims[j + 1];
+                    if (c < cost[i][j]) {
+                        cost[i][j] = c;
+                        split[i][j] = k;
+                    }
+                }
+            }
+        }
+        this.flops = cost[0][n - 1];
+
+        long left = 0;
+        for (int k = 1; k < n; k++) {
+            left += 2L * dims[0] * dims[k] * dims[k + 1];
+        }
+        this.leftNestedFlops = left;
+    }
+
+    /**
+     * Computes the best order for the given operands.
+     * Returns null if the operand dimensions do not chain or cannot be inferred (a malformed operand),
+     * the chain is then nested left to right and the engine reports the problem later.
+     */
+    public static MatrixChainOrder compute(List<ComputationNode> operands) {
+        if (operands == null || operands.size() < 2) {
+            throw new IllegalArgumentException("A chain needs at least two operands");
+        }
+        for (ComputationNode operand : operands) {
+            if (!operand.hasShape()) {
+                return null;
+            }
+        }
+        int[] dims = new int[operands.size() + 1];
+        dims[0] = operands.get(0).getRows();
+        for (int i = 0; i < operands.size(); i++) {
+            if (operands.get(i).getRows() != dims[i]) {
+                return null;
+            }
+            dims[i + 1] = operands.get(i).getCols();
+        }
+        return new MatrixChainOrder(dims);
+    }
+
+    /**
+     * Returns the estimated flop count of the chosen order.
+     */
+    public long getEstimatedFlops() {
+        return flops;
+    }
+
+    /**
+     * Returns the estimated flop count of the default left-associative order, for comparison.
+     */
+    public long getLeftNestedFlops() {
+        return leftNestedFlops;
+    }
+
+    /**
+     * Returns the chosen order, e.g. "(A0 * (A1 * A2))".
+     */
+    public String getOrder() {
+        return order(0, n - 1);
+    }
+
+    private String order(int i, int j) {
+        if (i == j) {
+            return "A" + i;
+        }
+        return "(" + order(i, split[i][j]) + " * " + order(split[i][j] + 1, j) + ")";
+    }
+
+    /**
+     * Returns the two children of the chain's root in the chosen order,
+     * every inner product of the chain becomes a new binary MULTIPLY node.
+     */
+    List<ComputationNode> nest(List<ComputationNode> operands) {
+        int k = split[0][n - 1];
+        List<ComputationNode> children = new ArrayList<>(2);
+        children.add(build(operands, 0, k));
+        children.add(build(operands, k + 1, n - 1));
+        return children;
+    }
+
+    private ComputationNode build(List<ComputationNode> operands, int i, int j) {
+        if (i == j) {
+            return operands.get(i);
+        }
+        List<ComputationNode> children = new ArrayList<>(2);
+        children.add(build(operands, i, split[i][j]));
+        children.add(build(operands, split[i][j] + 1, j));
+        return new ComputationNode(ComputationNodeType.MULTIPLY, children);
+    }
+
+    @Override
+    public String toString() {
+        return getOrder() + ", ~" + flops + " flops (left-nested ~" + leftNestedFlops + ")";
+    }
+}
@@ -22,8 +22,17 @@ public class OutputWriter {
     public OutputWriter() {}
 
     public static void write(double[][] matrix, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ResultMatrix(matrix));
+        write(matrix, filePath, false, false);
+    }
+
+    // streams the rows through a JsonGenerator instead of serializing a ResultMatrix in one go
+    public static void write(double[][] matrix, String filePath, boolean compact, boolean fastDoubles) throws IOException {
+        ResultStream stream = new ResultStream(filePath, compact, fastDoubles);
+        try {
+            stream.finish(matrix);
+        } finally {
+            stream.close();
+        }
     }
 
     public static void write(String error, String filePath) throws IOException {
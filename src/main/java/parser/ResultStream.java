@@ -0,0 +1,164 @@
+package parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Writes a {"result": [...]} document row by row while the rows are still being produced.
+ * Rows may arrive in any order and from any thread (see RowSink), a writer thread emits them
+ * through a JsonGenerator as soon as every row before them has arrived.
+ * The default layout is the same pretty printed document OutputWriter has always written,
+ * compact drops the whitespace and fastDoubles switches Jackson to its Schubfach double writer.
+ */
+public class ResultStream implements RowSink, AutoCloseable {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final JsonGenerator generator;
+    private final Thread writer;
+    private final Map<Integer, double[]> pending = new HashMap<>(); // rows that arrived and are not written yet
+    private int next = 0;      // index of the next row to write
+    private int total = -1;    // number of rows, known once finish is called
+    private IntFunction<double[]> source = null; // rows not offered are taken from here in order, set by finish
+    private boolean aborted = false;
+    private IOException failure = null;
+
+    public ResultStream(String filePath, boolean compact, boolean fastDoubles) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES);
+        this.generator = factory.createGenerator(out);
+        if (!compact) {
+            generator.setPrettyPrinter(new DefaultPrettyPrinter());
+        }
+        if (fastDoubles) {
+            generator.enable(StreamWriteFeature.USE_FAST_DOUBLE_WRITER.mappedFeature());
+        }
+        generator.writeStartObject();
+        generator.writeFieldName("result");
+        generator.writeStartArray();
+
+        this.writer = new Thread(this::drain, "result-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public synchronized void rowReady(int index, double[] row) {
+        if (index < next || pending.containsKey(index)) {
+            throw new IllegalArgumentException("Row " + index + " was already written");
+        }
+        pending.put(index, row);
+        if (index == next) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Hands over the rows of matrix that were not offered yet, waits until every row is written and closes the document.
+     */
+    public void finish(double[][] matrix) throws IOException {
+        finish(matrix.length, i -> matrix[i]);
+    }
+
+    /**
+     * Like finish(matrix), for a result that is not on the heap as a whole: the rows that were not offered
+     * are taken from rowAt by the writer thread, in increasing order, as the document is written.
+     */
+    public void finish(int rows, IntFunction<double[]> rowAt) throws IOException {
+        synchronized (this) {
+            source = rowAt;
+            total = rows;
+            notifyAll();
+        }
+        join();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * Stops writing, the file is left incomplete and is expected to be overwritten (e.g. by an error document).
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (writer.isAlive() && total < 0) {
+                aborted = true;
+                notifyAll();
+            }
+        }
+        join();
+        try {
+            generator.close();
+        } catch (IOException ignored) {
+            // the document is abandoned anyway
+        }
+    }
+
+    private void join() {
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing the result");
+        }
+    }
+
+    /**
+     * Writer thread: write rows in order as they become available, until total rows are written.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                double[] row;
+                IntFunction<double[]> from;
+                int index;
+                synchronized (this) {
+                    while (!aborted && !pending.containsKey(next) && total < 0) {
+                        wait();
+                    }
+                    if (aborted || (total >= 0 && next >= total)) {
+                        return;
+                    }
+                    index = next;
+                    row = pending.remove(next);
+                    from = source;
+                }
+                if (row == null) {
+                    // the source may read from disk, not while holding the lock
+                    row = from.apply(index);
+                }
+                generator.writeArray(row, 0, row.length);
+                synchronized (this) {
+                    next++;
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package parser;
+
+/**
+ * Receives rows of a result as soon as they are final, possibly out of order and from several threads.
+ */
+public interface RowSink {
+
+    /**
+     * Called once per row with its final values, row must not be modified afterwards.
+     */
+    void rowReady(int index, double[] row);
+}
@@ -0,0 +1,285 @@
+package parser;
+
+import memory.SparseMatrix;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 128-bit structural hash of a subtree: equal keys mean equal values.
+ * A matrix is hashed from its shape and the bits of its non-zero elements, the same way whether it is
+ * stored dense or sparse, and an operator from its type and the keys of its operands (in order, except for
+ * ADD whose operands commute).
+ * The hash alone is not trusted, it is not cryptographic and inputs may come from other jobs: keys with equal
+ * hashes are only equal if their operators match and their leaf matrices hold the same shape and elements,
+ * so a key keeps a reference to the matrices it was computed from (see releaseContents()).
+ * Hashes differ for almost every pair of different subtrees, so the element-wise comparison is only paid on a match.
+ */
+public final class SubtreeKey {
+
+    private static final long SEED_HI = 0x9E3779B97F4A7C15L;
+    private static final long SEED_LO = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_HI = 0xBF58476D1CE4E5B9L;
+    private static final long PRIME_LO = 0x94D049BB133111EBL;
+
+    private final long hi;
+    private final long lo;
+    private final ComputationNodeType type; // MATRIX for a leaf
+    private final SubtreeKey[] operands;    // keys of the operands in hashing order, null for a leaf
+    private final int rows;                 // shape of a leaf as stored
+    private final int cols;
+    private final boolean transposed;
+    private volatile Object contents;       // double[][] or SparseMatrix of a leaf, null once released
+
+    private SubtreeKey(long hi, long lo, ComputationNodeType type, SubtreeKey[] operands,
+                       int rows, int cols, boolean transposed, Object contents) {
+        this.hi = hi;
+        this.lo = lo;
+        this.type = type;
+        this.operands = operands;
+        this.rows = rows;
+        this.cols = cols;
+        this.transposed = transposed;
+        this.contents = contents;
+    }
+
+    /**
+     * Returns the key of a dense matrix, stored transposed if transposed is set.
+     */
+    public static SubtreeKey ofMatrix(double[][] matrix, boolean transposed) {
+        int rows = matrix.length;
+        int cols = (rows > 0) ? matrix[0].length : 0;
+        Builder builder = new Builder(rows, cols, transposed, matrix);
+        builder.addAll(matrix);
+        return builder.build();
+    }
+
+    /**
+     * Returns the key of a sparse matrix, stored transposed if transposed is set.
+     */
+    public static SubtreeKey ofSparse(SparseMatrix sparse, boolean transposed) {
+        Builder builder = new Builder(sparse.rows(), sparse.cols(), transposed, sparse);
+        // the elements left out of a negated matrix are -0.0, hashed like every other element but +0.0
+        if (sparse.isNegativeZero()) {
+            builder.addAll(sparse.toDense());
+        }
+        else {
+            sparse.forEachNonZero((i, j, value) -> builder.add(i, j, Double.doubleToRawLongBits(value)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the key of an operator applied to operands with the given keys.
+     */
+    public static SubtreeKey ofOperator(ComputationNodeType type, SubtreeKey[] operands) {
+        SubtreeKey[] ordered = operands.clone();
+        if (type == ComputationNodeType.ADD) {
+            // A + B and B + A have the same value
+            Arrays.sort(ordered, (a, b) -> (a.hi != b.hi) ? Long.compare(a.hi, b.hi) : Long.compare(a.lo, b.lo));
+        }
+        long hi = mix(SEED_HI, 1L + type.ordinal(), PRIME_HI);
+        long lo = mix(SEED_LO, 1L + type.ordinal(), PRIME_LO);
+        for (SubtreeKey operand : ordered) {
+            hi = mix(mix(hi, operand.hi, PRIME_HI), operand.lo, PRIME_HI);
+            lo = mix(mix(lo, operand.lo, PRIME_LO), operand.hi, PRIME_LO);
+        }
+        return new SubtreeKey(finish(hi), finish(lo), type, ordered, 0, 0, false, null);
+    }
+
+    /**
+     * Returns a key with the structure and contents of this one but the hash of other, lets tests force a collision.
+     */
+    SubtreeKey withHashOf(SubtreeKey other) {
+        return new SubtreeKey(other.hi, other.lo, type, operands, rows, cols, transposed, contents);
+    }
+
+    /**
+     * Drops the references to the leaf matrices under this key, e.g. so that inputs spilled to disk can be
+     * collected. A key without contents is only equal to itself.
+     */
+    public void releaseContents() {
+        Deque<SubtreeKey> pending = new ArrayDeque<>();
+        Map<SubtreeKey, Boolean> seen = new IdentityHashMap<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            SubtreeKey key = pending.pop();
+            if (seen.put(key, Boolean.TRUE) != null) {
+                continue;
+            }
+            key.contents = null;
+            if (key.operands != null) {
+                for (SubtreeKey operand : key.operands) {
+                    pending.push(operand);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the heap footprint, in doubles, of the distinct leaf matrices this key keeps.
+     */
+    public long contentSize() {
+        long size = 0;
+        Deque<SubtreeKey> pending = new ArrayDeque<>();
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            SubtreeKey key = pending.pop();
+            if (seen.put(key, Boolean.TRUE) != null) {
+                continue;
+            }
+            if (key.operands != null) {
+                for (SubtreeKey operand : key.operands) {
+                    pending.push(operand);
+                }
+                continue;
+            }
+            Object leaf = key.contents;
+            if (leaf == null || seen.put(leaf, Boolean.TRUE) != null) {
+                continue;
+            }
+            // a non-zero of a sparse matrix takes a value and half a double of column index
+            size += (leaf instanceof SparseMatrix)
+                    ? ((SparseMatrix) leaf).nnz() * 3L / 2 + key.rows
+                    : (long) key.rows * key.cols;
+        }
+        return size;
+    }
+
+    private static long mix(long h, long x, long prime) {
+        return Long.rotateLeft(h ^ (x * prime), 29) * prime;
+    }
+
+    // murmur3 finalizer
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof SubtreeKey)) {
+            return false;
+        }
+        // a hash match is confirmed pair by pair, each pair of a DAG compared once
+        Map<SubtreeKey, SubtreeKey> matched = new IdentityHashMap<>();
+        Deque<SubtreeKey[]> pending = new ArrayDeque<>();
+        pending.push(new SubtreeKey[] {this, (SubtreeKey) other});
+        while (!pending.isEmpty()) {
+            SubtreeKey[] pair = pending.pop();
+            SubtreeKey a = pair[0];
+            SubtreeKey b = pair[1];
+            if (a == b || matched.get(a) == b) {
+                continue;
+            }
+            if (a.hi != b.hi || a.lo != b.lo || a.type != b.type) {
+                return false;
+            }
+            if (a.operands == null) {
+                if (!a.sameLeaf(b)) {
+                    return false;
+                }
+            }
+            else {
+                if (b.operands == null || a.operands.length != b.operands.length) {
+                    return false;
+                }
+                for (int i = 0; i < a.operands.length; i++) {
+                    pending.push(new SubtreeKey[] {a.operands[i], b.operands[i]});
+                }
+            }
+            matched.put(a, b);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if this leaf and key hold the same shape and elements, bit for bit.
+     */
+    private boolean sameLeaf(SubtreeKey key) {
+        Object mine = contents;
+        Object theirs = key.contents;
+        if (mine == null || theirs == null || rows != key.rows || cols != key.cols || transposed != key.transposed) {
+            return false;
+        }
+        if (mine == theirs) {
+            return true;
+        }
+        double[][] a = (mine instanceof SparseMatrix) ? ((SparseMatrix) mine).toDense() : (double[][]) mine;
+        double[][] b = (theirs instanceof SparseMatrix) ? ((SparseMatrix) theirs).toDense() : (double[][]) theirs;
+        for (int i = 0; i < rows; i++) {
+            // compares doubleToLongBits, so -0.0 differs from 0.0 as it does in the hash
+            if (!Arrays.equals(a[i], b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hi ^ lo);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", hi, lo);
+    }
+
+    /**
+     * Accumulates the non-zeros of a matrix in row-major order.
+     */
+    private static final class Builder {
+        private final int rows;
+        private final long cols;
+        private final boolean transposed;
+        private final Object contents;
+        private long hi;
+        private long lo;
+
+        Builder(int rows, int cols, boolean transposed, Object contents) {
+            this.rows = rows;
+            this.cols = cols;
+            this.transposed = transposed;
+            this.contents = contents;
+            long shape = ((long) rows << 32) | (cols & 0xFFFFFFFFL);
+            hi = mix(mix(SEED_HI, shape, PRIME_HI), transposed ? 1L : 0L, PRIME_HI);
+            lo = mix(mix(SEED_LO, ~shape, PRIME_LO), transposed ? 1L : 0L, PRIME_LO);
+        }
+
+        void add(int i, int j, long bits) {
+            long position = i * cols + j;
+            hi = mix(mix(hi, position, PRIME_HI), bits, PRIME_HI);
+            lo = mix(mix(lo, bits, PRIME_LO), position, PRIME_LO);
+        }
+
+        void addAll(double[][] matrix) {
+            for (int i = 0; i < matrix.length; i++) {
+                double[] row = matrix[i];
+                for (int j = 0; j < row.length; j++) {
+                    // -0.0 is hashed too, so it is not merged with 0.0
+                    long bits = Double.doubleToRawLongBits(row[j]);
+                    if (bits != 0L) {
+                        add(i, j, bits);
+                    }
+                }
+            }
+        }
+
+        SubtreeKey build() {
+            return new SubtreeKey(finish(hi), finish(lo), ComputationNodeType.MATRIX, null,
+                    rows, (int) cols, transposed, contents);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package scheduling;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with power-of-two buckets: bucket 0 counts 0ns and bucket i
+ * counts [2^(i-1), 2^i) ns, so percentiles are reported as the upper bound of their bucket (within 2x).
+ * Recording is lock-free, workers record into their own histogram while others take snapshots.
+ */
+public class LatencyHistogram {
+
+    /// ===== constants =====
+    public static final int BUCKETS = 64;
+
+    /// ===== fields =====
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /// ===== constructor =====
+    public LatencyHistogram() {}
+
+    /// ===== methods =====
+    /** record one latency, negative values (clock skew between cores) count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /** return a copy of the current counts, taken bucket by bucket while recording goes on
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram copy = new LatencyHistogram();
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            copy.counts.set(i, c);
+            total += c;
+        }
+        copy.count.set(total);
+        copy.sum.set(sum.get());
+        copy.max.set(max.get());
+        return copy;
+    }
+
+    /** return number of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** return the largest recorded latency
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /** return the mean latency, 0 if nothing was recorded
+     */
+    public long getMeanNanos() {
+        long n = count.get();
+        return (n == 0) ? 0 : sum.get() / n;
+    }
+
+    public long getP50Nanos() {
+        return percentile(0.50);
+    }
+
+    public long getP90Nanos() {
+        return percentile(0.90);
+    }
+
+    public long getP99Nanos() {
+        return percentile(0.99);
+    }
+
+    /** return the upper bound of the bucket holding the p-th latency (0 < p <= 1), capped by the max
+     */
+    public long percentile(double p) {
+        if (p <= 0 || p > 1)
+            throw new IllegalArgumentException("p must be in (0, 1]");
+        long n = count.get();
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** return the counts per bucket, up to the last non-empty one
+     */
+    public long[] getBuckets() {
+        long[] result = new long[BUCKETS];
+        int last = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = counts.get(i);
+            if (result[i] != 0)
+                last = i;
+        }
+        return Arrays.copyOf(result, last + 1);
+    }
+
+    /** return the largest value counted by bucket i
+     */
+    private static long upperBound(int bucket) {
+        return (bucket == 0) ? 0 : (bucket >= 63) ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, max=%.1fus", getCount(),
+                getMeanNanos() / 1e3, getP50Nanos() / 1e3, getP99Nanos() / 1e3, getMaxNanos() / 1e3);
+    }
+}
@@ -0,0 +1,53 @@
+package scheduling;
+
+import java.util.List;
+
+/**
+ * Where the engine runs its compute tasks.
+ * TiredExecutor runs them on a fixed set of platform workers, VirtualThreadExecutor coordinates on
+ * virtual threads and still runs the tasks themselves on a bounded set of platform workers.
+ */
+public interface TaskExecutor {
+
+    /**
+     * Run task on a worker, possibly waiting for a worker to take it.
+     */
+    void submit(Runnable task);
+
+    /**
+     * Submit tasks without waiting for them to finish.
+     */
+    void submitBatch(List<Runnable> tasks);
+
+    /**
+     * Submit tasks and wait until all of them finish.
+     * The first exception (or error) thrown by a task is rethrown here once the whole batch is done.
+     */
+    void submitAll(Iterable<Runnable> tasks);
+
+    /**
+     * Let the submitted tasks finish, then stop the workers.
+     */
+    void shutdown() throws InterruptedException;
+
+    /**
+     * Return true if the tasks of a batch are dealt to workers by their position in the batch, so that the
+     * i-th of W contiguous parts of consecutive batches runs on the same worker.
+     */
+    boolean hasAffinity();
+
+    /**
+     * Return the number of workers compute tasks run on.
+     */
+    int getWorkerCount();
+
+    /**
+     * Return a snapshot of every worker's counters, in worker order.
+     */
+    List<WorkerMetrics> getWorkerMetrics();
+
+    /**
+     * Return one line per worker describing its fatigue and time used.
+     */
+    String getWorkerReport();
+}
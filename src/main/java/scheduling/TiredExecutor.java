@@ -4,32 +4,278 @@ import java.util.concurrent.PriorityBlockingQueue;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class TiredExecutor {
+public class TiredExecutor implements TaskExecutor {
 
     private final TiredThread[] workers;
     private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
     private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final WorkStealingPool stealingPool; // null unless running in work-stealing (or affinity) mode
+    private final boolean affinity;
 
     public TiredExecutor(int numThreads) {
-        // TODO
-        workers = null; // placeholder
+        this(numThreads, false);
     }
 
+    /**
+     * With workStealing set, tasks are pushed in batches to per-worker deques instead of
+     * being handed one by one to an idle worker, see WorkStealingPool.
+     */
+    public TiredExecutor(int numThreads, boolean workStealing) {
+        this(numThreads, workStealing, false);
+    }
+
+    /**
+     * With affinity set, tasks go to per-worker deques dealt by position in the batch rather than by fatigue,
+     * so that the same part of consecutive batches runs on the same worker, see WorkStealingPool.
+     * Affinity implies the work-stealing deques, workStealing is then ignored.
+     */
+    public TiredExecutor(int numThreads, boolean workStealing, boolean affinity) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("numThreads must be greater than 0");
+        this.affinity = affinity;
+        stealingPool = (workStealing || affinity) ? new WorkStealingPool(affinity) : null;
+        workers = new TiredThread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            // fatigue factors are drawn from [0.5, 1.5)
+            workers[i] = new TiredThread(i, 0.5 + Math.random(), stealingPool, (stealingPool == null) ? this::requeue : null);
+        }
+        if (stealingPool != null)
+            stealingPool.setWorkers(workers);
+        for (TiredThread worker : workers) {
+            if (stealingPool == null)
+                idleMinHeap.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Return true if this executor runs in work-stealing mode.
+     */
+    public boolean isWorkStealing() {
+        return stealingPool != null;
+    }
+
+    /**
+     * Return true if batches are dealt to workers by position, see TiredExecutor(int, boolean, boolean).
+     */
+    @Override
+    public boolean hasAffinity() {
+        return affinity;
+    }
+
+    /**
+     * Return the number of worker threads.
+     */
+    @Override
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Hand task to the least tired idle worker, waiting for one to become idle if needed.
+     * Must not be called from a worker thread: a worker waiting for an idle worker can deadlock the pool.
+     * In work-stealing mode the task is queued on the least tired worker and this never waits.
+     */
+    @Override
     public void submit(Runnable task) {
-        // TODO
+        if (task == null)
+            throw new IllegalArgumentException("task cannot be null");
+
+        if (stealingPool != null) {
+            stealingPool.push(List.of(tracked(task)));
+            return;
+        }
+
+        // waiting for an idle worker counts as queue wait
+        long queuedAt = System.nanoTime();
+        TiredThread worker;
+        try {
+            worker = idleMinHeap.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an idle worker");
+        }
+
+        // the worker goes back in the heap through requeue(), once the task's time is added to its fatigue
+        inFlight.incrementAndGet();
+        Runnable wrapped = () -> {
+            worker.recordQueueWait(System.nanoTime() - queuedAt);
+            task.run();
+        };
+
+        try {
+            worker.newTask(wrapped);
+        } catch (IllegalStateException e) {
+            inFlight.decrementAndGet();
+            idleMinHeap.put(worker);
+            throw e;
+        }
     }
 
+    /**
+     * Handoff mode: worker finished a task and its fatigue is up to date, put it back in the heap.
+     */
+    private void requeue(TiredThread worker) {
+        idleMinHeap.put(worker);
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Submit tasks without waiting for them to finish.
+     * Work-stealing mode pushes them as one batch, handoff mode submits them one by one.
+     */
+    @Override
+    public void submitBatch(List<Runnable> tasks) {
+        if (tasks == null)
+            throw new IllegalArgumentException("tasks cannot be null");
+        if (stealingPool != null) {
+            List<Runnable> trackedBatch = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                trackedBatch.add(tracked(task));
+            }
+            stealingPool.push(trackedBatch);
+        }
+        else {
+            for (Runnable task : tasks) {
+                submit(task);
+            }
+        }
+    }
+
+    /**
+     * Submit tasks one by one and wait until all of them finish.
+     * The first exception (or error) thrown by a task is rethrown here once the whole batch is done.
+     */
+    @Override
     public void submitAll(Iterable<Runnable> tasks) {
-        // TODO: submit tasks one by one and wait until all finish
+        if (tasks == null)
+            throw new IllegalArgumentException("tasks cannot be null");
+
+        // completion is tracked per batch, other submitters may be using the pool at the same time
+        AtomicInteger remaining = new AtomicInteger(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>(null);
+        Object done = new Object();
+        Runnable countDown = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                synchronized (done) {
+                    done.notifyAll();
+                }
+            }
+        };
+
+        List<Runnable> batch = new ArrayList<>();
+        for (Runnable task : tasks) {
+            remaining.incrementAndGet();
+            batch.add(() -> {
+                try {
+                    task.run();
+                }
+                catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                finally {
+                    countDown.run();
+                }
+            });
+        }
+
+        submitBatch(batch);
+        countDown.run();
+
+        synchronized (done) {
+            while (remaining.get() > 0) {
+                try {
+                    done.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for tasks");
+                }
+            }
+        }
+
+        if (failure.get() != null)
+            rethrow(failure.get());
+    }
+
+    /**
+     * Rethrow the failure of a task to its submitter as it is, errors included.
+     */
+    static void rethrow(Throwable t) {
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        throw new IllegalStateException(t.getMessage(), t);
     }
 
+    /**
+     * Count task as in flight until it completes, used by work-stealing mode.
+     */
+    private Runnable tracked(Runnable task) {
+        inFlight.incrementAndGet();
+        long queuedAt = System.nanoTime();
+        return () -> {
+            // any worker may run it, stolen or not
+            ((TiredThread) Thread.currentThread()).recordQueueWait(System.nanoTime() - queuedAt);
+            try {
+                task.run();
+            }
+            finally {
+                if (inFlight.decrementAndGet() == 0) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
     public void shutdown() throws InterruptedException {
-        // TODO
+        // let tasks that are still running finish first
+        synchronized (this) {
+            while (inFlight.get() > 0) {
+                wait();
+            }
+        }
+        for (TiredThread worker : workers) {
+            worker.shutdown();
+        }
+        if (stealingPool != null)
+            stealingPool.shutdown();
+        for (TiredThread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Return a snapshot of every worker's counters, in worker order.
+     */
+    @Override
+    public synchronized List<WorkerMetrics> getWorkerMetrics() {
+        List<WorkerMetrics> metrics = new ArrayList<>(workers.length);
+        for (TiredThread worker : workers)
+            metrics.add(new WorkerMetrics(worker, (stealingPool != null) ? worker.queuedTasks() : 0));
+        return metrics;
     }
 
+    @Override
     public synchronized String getWorkerReport() {
-        // TODO: return readable statistics for each worker
-        return null;
+        StringBuilder sb = new StringBuilder();
+        for (TiredThread worker : workers) {
+            sb.append(String.format("Worker %d (%s): fatigue=%.2f, used=%.3f ms, idle=%.3f ms",
+                    worker.getWorkerId(), worker.getName(), worker.getFatigue(),
+                    worker.getTimeUsed() / 1e6, worker.getTimeIdle() / 1e6));
+            if (stealingPool != null)
+                sb.append(String.format(", queued=%d", worker.queuedTasks()));
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
     }
 }
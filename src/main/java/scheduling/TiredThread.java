@@ -1,9 +1,13 @@
 package scheduling;
 
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class TiredThread extends Thread implements Comparable<TiredThread> {
 
@@ -17,15 +21,32 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     // Single-slot handoff queue; executor will put tasks here
     private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
 
+    // Work-stealing mode only: own deque, and the pool to take and steal work from
+    private final ConcurrentLinkedDeque<Runnable> local = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger localCount = new AtomicInteger(0); // size of local, which would take a traversal to count
+    private final WorkStealingPool pool;
+
+    // Handoff mode only: called once a task is done and its time is accounted, so the executor can requeue this worker
+    private final Consumer<TiredThread> onIdle;
+
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
 
     private final AtomicLong timeUsed = new AtomicLong(0); // Total time spent executing tasks
     private final AtomicLong timeIdle = new AtomicLong(0); // Total time spent idle
     private final AtomicLong idleStartTime = new AtomicLong(0); // Timestamp when the worker became idle
+    private final AtomicLong tasksCompleted = new AtomicLong(0); // Number of tasks run, failed ones included
+    private final AtomicLong tasksFailed = new AtomicLong(0); // Number of tasks that threw
+    private final LatencyHistogram queueWait = new LatencyHistogram(); // Submission-to-start latency of the tasks run
 
     public TiredThread(int id, double fatigueFactor) {
+        this(id, fatigueFactor, null, null);
+    }
+
+    TiredThread(int id, double fatigueFactor, WorkStealingPool pool, Consumer<TiredThread> onIdle) {
         this.id = id;
         this.fatigueFactor = fatigueFactor;
+        this.pool = pool;
+        this.onIdle = onIdle;
         this.idleStartTime.set(System.nanoTime());
         setName(String.format("FF=%.2f", fatigueFactor));
     }
@@ -34,6 +55,10 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return id;
     }
 
+    public double getFatigueFactor() {
+        return fatigueFactor;
+    }
+
     public double getFatigue() {
         return fatigueFactor * timeUsed.get();
     }
@@ -50,31 +75,154 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return timeIdle.get();
     }
 
+    /**
+     * Idle time including the current idle period, getTimeIdle() only counts periods that ended with a task.
+     */
+    public long getTimeIdleSoFar() {
+        long idle = timeIdle.get();
+        return busy.get() ? idle : idle + Math.max(0, System.nanoTime() - idleStartTime.get());
+    }
+
+    public long getTasksCompleted() {
+        return tasksCompleted.get();
+    }
+
+    public long getTasksFailed() {
+        return tasksFailed.get();
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Record the time a task spent between its submission and the start of its run on this worker.
+     */
+    void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
     /**
      * Assign a task to this worker.
      * This method is non-blocking: if the worker is not ready to accept a task,
      * it throws IllegalStateException.
      */
     public void newTask(Runnable task) {
-       // TODO
+        if (task == null)
+            throw new IllegalArgumentException("task cannot be null");
+        if (!alive.get())
+            throw new IllegalStateException("worker " + id + " is shut down");
+        if (!handoff.offer(task))
+            throw new IllegalStateException("worker " + id + " is not ready to accept a task");
+    }
+
+    /**
+     * Work-stealing mode: append a batch to this worker's deque.
+     */
+    void pushLocal(List<Runnable> batch) {
+        local.addAll(batch);
+        localCount.addAndGet(batch.size());
+    }
+
+    /**
+     * Work-stealing mode: take the newest task of this worker's own deque, or null.
+     */
+    Runnable pollLocal() {
+        Runnable task = local.pollLast();
+        if (task != null)
+            localCount.decrementAndGet();
+        return task;
+    }
+
+    /**
+     * Work-stealing mode: take the oldest task of this worker's deque on behalf of another worker, or null.
+     */
+    Runnable stealLocal() {
+        Runnable task = local.pollFirst();
+        if (task != null)
+            localCount.decrementAndGet();
+        return task;
+    }
+
+    /**
+     * Work-stealing mode: return number of tasks waiting in this worker's deque.
+     */
+    int queuedTasks() {
+        return localCount.get();
     }
 
     /**
      * Request this worker to stop after finishing current task.
      * Inserts a poison pill so the worker wakes up and exits.
+     * In work-stealing mode the pool is shut down instead and the worker exits once it is drained.
      */
     public void shutdown() {
-       // TODO
+        if (pool != null) {
+            alive.set(false);
+            return;
+        }
+        if (alive.compareAndSet(true, false)) {
+            try {
+                handoff.put(POISON_PILL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
     public void run() {
-       // TODO
+        while (true) {
+            Runnable task;
+            if (pool != null) {
+                task = pool.next(this);
+                if (task == null)
+                    break;
+            }
+            else {
+                try {
+                    task = handoff.take();
+                } catch (InterruptedException e) {
+                    // interrupts are not used for control, the poison pill is
+                    continue;
+                }
+                if (task == POISON_PILL)
+                    break;
+            }
+            execute(task);
+        }
+    }
+
+    /**
+     * Run one task and account its time as used, and the time since the previous one as idle.
+     * Nothing a task throws, errors included, takes the worker down: submitters wrap their tasks to record
+     * and rethrow their own failures, here the failure is only counted.
+     * The fatigue is updated before onIdle runs, so the worker never changes its order while it is in the idle heap.
+     */
+    private void execute(Runnable task) {
+        long start = System.nanoTime();
+        timeIdle.addAndGet(start - idleStartTime.get());
+        busy.set(true);
+        try {
+            task.run();
+        }
+        catch (Throwable t) {
+            tasksFailed.incrementAndGet();
+        }
+        finally {
+            long end = System.nanoTime();
+            timeUsed.addAndGet(end - start);
+            tasksCompleted.incrementAndGet();
+            idleStartTime.set(end);
+            busy.set(false);
+            if (onIdle != null)
+                onIdle.accept(this);
+        }
     }
 
     @Override
     public int compareTo(TiredThread o) {
-        // TODO
-        return 0;
+        int byFatigue = Double.compare(getFatigue(), o.getFatigue());
+        return (byFatigue != 0) ? byFatigue : Integer.compare(id, o.id);
     }
-}
\ No newline at end of file
+}
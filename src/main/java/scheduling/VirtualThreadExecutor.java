@@ -0,0 +1,169 @@
+package scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executor that coordinates on virtual threads and computes on a bounded pool of platform workers.
+ * The compute tasks run on a TiredExecutor of numThreads workers (fatigue, work stealing and the worker
+ * metrics are unchanged), so kernels never oversubscribe the cores.
+ * What only waits runs on virtual threads: handing a batch to the workers one idle worker at a time is done
+ * by a virtual feeder thread, so a submitter (e.g. the dispatcher of a NodeScheduler) goes on preparing the
+ * next ready node instead of waiting for workers, and submitAll() waits without holding a monitor, so a
+ * virtual caller unmounts from its carrier while its batch runs.
+ * In work-stealing (and affinity) mode batches are pushed to the worker deques, which never waits, and no
+ * feeder is needed.
+ * Feeders belong to this executor and shutdown() joins them before stopping the workers, the role
+ * StructuredTaskScope would play (a preview API in Java 21, it would need --enable-preview for every class).
+ */
+public class VirtualThreadExecutor implements TaskExecutor {
+
+    /// ===== fields =====
+    private final TiredExecutor carriers;
+    private final ExecutorService feeders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lae-feeder-", 0).factory());
+    private final AtomicLong fed = new AtomicLong(0); // batches handed over by a feeder
+
+    /// ===== constructor =====
+    public VirtualThreadExecutor(int numThreads) {
+        this(numThreads, false);
+    }
+
+    /** compute tasks run on numThreads platform workers, in the work-stealing mode of TiredExecutor if workStealing is set
+     */
+    public VirtualThreadExecutor(int numThreads, boolean workStealing) {
+        this(numThreads, workStealing, false);
+    }
+
+    /** as above, in the affinity mode of TiredExecutor if affinity is set
+     */
+    public VirtualThreadExecutor(int numThreads, boolean workStealing, boolean affinity) {
+        carriers = new TiredExecutor(numThreads, workStealing, affinity);
+    }
+
+    /// ===== methods =====
+    /**
+     * Run task on a worker, never waits for one.
+     */
+    @Override
+    public void submit(Runnable task) {
+        if (task == null)
+            throw new IllegalArgumentException("task cannot be null");
+        submitBatch(List.of(task));
+    }
+
+    /**
+     * Submit tasks without waiting for them to finish, nor for workers to take them.
+     */
+    @Override
+    public void submitBatch(List<Runnable> tasks) {
+        if (tasks == null)
+            throw new IllegalArgumentException("tasks cannot be null");
+        if (tasks.isEmpty())
+            return;
+        if (carriers.isWorkStealing()) {
+            carriers.submitBatch(tasks);
+            return;
+        }
+        List<Runnable> batch = new ArrayList<>(tasks);
+        try {
+            feeders.execute(() -> feed(batch));
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("executor is shut down");
+        }
+        fed.incrementAndGet();
+    }
+
+    /**
+     * Submit tasks and wait until all of them finish, a virtual caller unmounts while waiting.
+     * The first exception (or error) thrown by a task is rethrown here once the whole batch is done.
+     */
+    @Override
+    public void submitAll(Iterable<Runnable> tasks) {
+        if (tasks == null)
+            throw new IllegalArgumentException("tasks cannot be null");
+        List<Runnable> list = new ArrayList<>();
+        tasks.forEach(list::add);
+
+        CountDownLatch done = new CountDownLatch(list.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>(null);
+        List<Runnable> batch = new ArrayList<>(list.size());
+        for (Runnable task : list) {
+            batch.add(() -> {
+                try {
+                    task.run();
+                }
+                catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                finally {
+                    done.countDown();
+                }
+            });
+        }
+        submitBatch(batch);
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tasks");
+        }
+        if (failure.get() != null)
+            TiredExecutor.rethrow(failure.get());
+    }
+
+    /**
+     * Join the feeders, let the tasks finish, then stop the workers.
+     */
+    @Override
+    public void shutdown() throws InterruptedException {
+        feeders.shutdown();
+        while (!feeders.awaitTermination(1, TimeUnit.SECONDS)) {
+            // a feeder waits for the workers to take its last tasks
+        }
+        carriers.shutdown();
+    }
+
+    @Override
+    public boolean hasAffinity() {
+        return carriers.hasAffinity();
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return carriers.getWorkerCount();
+    }
+
+    @Override
+    public List<WorkerMetrics> getWorkerMetrics() {
+        return carriers.getWorkerMetrics();
+    }
+
+    @Override
+    public String getWorkerReport() {
+        return carriers.getWorkerReport() + String.format("Virtual feeders: %d batches%n", fed.get());
+    }
+
+    /** hand batch to the workers from a feeder thread, one idle worker at a time
+     * a task the workers refuse (the executor is shutting down) runs here, so that whoever counts the tasks
+     * of the batch still sees every one of them finish
+     */
+    private void feed(List<Runnable> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                carriers.submit(batch.get(i));
+            } catch (IllegalStateException e) {
+                for (int j = i; j < batch.size(); j++)
+                    batch.get(j).run();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package scheduling;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Work-stealing mode of TiredExecutor.
+ * Every worker owns a deque: it runs its own work from the tail, idle workers steal from the head.
+ * Submitters push whole batches and never wait for an idle worker.
+ * Fatigue still decides who works: a batch is dealt to the least tired workers first,
+ * and an idle worker steals from the most tired worker that still has queued work.
+ * In affinity mode a batch is dealt by position instead: worker w of W gets the w-th of W contiguous bands
+ * of the batch, so that the same rows (or output tiles) of consecutive nodes run on the same worker, and
+ * fatigue only corrects an imbalance: a worker steals only from workers with more than AFFINITY_IMBALANCE
+ * tasks queued, the most tired of them first.
+ * Fatigue keeps changing while workers run, so it is read once per decision (a snapshot, or a single pass)
+ * and never compared live, e.g. by a sort.
+ */
+class WorkStealingPool {
+
+    /// ===== constants =====
+    static final int AFFINITY_IMBALANCE = 2; // tasks a worker keeps to itself in affinity mode
+
+    /// ===== fields =====
+    private final boolean affinity;
+    private TiredThread[] workers = new TiredThread[0];
+    private final Object signal = new Object();                 // idle workers wait here
+    private final AtomicInteger queued = new AtomicInteger(0);  // tasks pushed and not taken yet
+    private volatile boolean shuttingDown = false;
+
+    /// ===== constructor =====
+    WorkStealingPool() {
+        this(false);
+    }
+
+    WorkStealingPool(boolean affinity) {
+        this.affinity = affinity;
+    }
+
+    /// ===== methods =====
+    /** attach the workers in id order, called once by the executor before they start
+     */
+    void setWorkers(TiredThread[] workers) {
+        this.workers = workers;
+    }
+
+    /** deal a batch over the workers in contiguous chunks, least tired worker first (by position in affinity mode)
+     */
+    void push(List<Runnable> batch) {
+        if (batch.isEmpty())
+            return;
+        if (shuttingDown)
+            throw new IllegalStateException("executor is shut down");
+
+        queued.addAndGet(batch.size());
+        if (affinity) {
+            // task i goes to worker i * W / n, whatever the size of the batch
+            long n = batch.size();
+            long count = workers.length;
+            for (int w = 0; w < workers.length; w++) {
+                int from = (int) ((w * n + count - 1) / count);
+                int to = (int) (((w + 1) * n + count - 1) / count);
+                if (from < to)
+                    workers[w].pushLocal(batch.subList(from, to));
+            }
+        }
+        else {
+            int[] order = leastTiredFirst();
+            int chunk = (batch.size() + order.length - 1) / order.length;
+            for (int w = 0, from = 0; from < batch.size(); w++, from += chunk) {
+                int to = Math.min(from + chunk, batch.size());
+                workers[order[w]].pushLocal(batch.subList(from, to));
+            }
+        }
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    /** return the next task for self, waiting while there is none
+     * returns null once the pool is shut down and no work is left
+     */
+    Runnable next(TiredThread self) {
+        while (true) {
+            Runnable task = self.pollLocal();
+            if (task == null)
+                task = steal(self);
+            if (task != null) {
+                queued.decrementAndGet();
+                return task;
+            }
+
+            synchronized (signal) {
+                // in affinity mode the work left may all be below the imbalance threshold, wait for the next batch
+                if (queued.get() == 0 || (affinity && self.queuedTasks() == 0 && !stealable(self))) {
+                    if (shuttingDown && queued.get() == 0)
+                        return null;
+                    try {
+                        signal.wait();
+                    } catch (InterruptedException e) {
+                        // interrupts are not used for control, shutdown() is
+                    }
+                }
+            }
+            // queued > 0 with nothing found means another worker is mid-take, try again
+            Thread.onSpinWait();
+        }
+    }
+
+    /** return the worker indices from least to most tired, by one snapshot of their fatigue
+     */
+    private int[] leastTiredFirst() {
+        int n = workers.length;
+        double[] fatigue = new double[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            fatigue[i] = workers[i].getFatigue();
+            order[i] = i;
+        }
+        // insertion sort, there are few workers and the keys no longer move
+        for (int i = 1; i < n; i++) {
+            int w = order[i];
+            int j = i - 1;
+            for (; j >= 0 && fatigue[order[j]] > fatigue[w]; j--)
+                order[j + 1] = order[j];
+            order[j + 1] = w;
+        }
+        return order;
+    }
+
+    /** steal the oldest task of the most tired worker that has any (more than AFFINITY_IMBALANCE in affinity mode)
+     * one pass picks the victim, another pass only if its deque was emptied in the meantime
+     */
+    private Runnable steal(TiredThread self) {
+        int keep = affinity ? AFFINITY_IMBALANCE : 0;
+        while (true) {
+            TiredThread victim = null;
+            double most = 0;
+            for (TiredThread worker : workers) {
+                if (worker == self || worker.queuedTasks() <= keep)
+                    continue;
+                double fatigue = worker.getFatigue();
+                if (victim == null || fatigue > most) {
+                    victim = worker;
+                    most = fatigue;
+                }
+            }
+            if (victim == null)
+                return null;
+            Runnable task = victim.stealLocal();
+            if (task != null)
+                return task;
+        }
+    }
+
+    /** return true if another worker has more than AFFINITY_IMBALANCE tasks queued
+     */
+    private boolean stealable(TiredThread self) {
+        for (TiredThread worker : workers) {
+            if (worker != self && worker.queuedTasks() > AFFINITY_IMBALANCE)
+                return true;
+        }
+        return false;
+    }
+
+    /** return number of tasks waiting in the deques
+     */
+    int queuedTasks() {
+        return queued.get();
+    }
+
+    /** stop accepting work, workers exit once the deques are drained
+     */
+    void shutdown() {
+        shuttingDown = true;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+}
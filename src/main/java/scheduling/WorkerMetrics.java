@@ -0,0 +1,93 @@
+package scheduling;
+
+/**
+ * Snapshot of one worker's counters, taken by TiredExecutor.getWorkerMetrics().
+ * Times are in nanoseconds and cumulative since the executor started, the queue wait of a task is the time
+ * from its submission until a worker starts running it.
+ */
+public class WorkerMetrics {
+
+    /// ===== fields =====
+    private final int workerId;
+    private final String name;
+    private final double fatigueFactor;
+    private final double fatigue;
+    private final long busyNanos;
+    private final long idleNanos;
+    private final long tasks;
+    private final long failedTasks;
+    private final int queuedTasks;
+    private final LatencyHistogram queueWait;
+
+    /// ===== constructor =====
+    WorkerMetrics(TiredThread worker, int queuedTasks) {
+        this.workerId = worker.getWorkerId();
+        this.name = worker.getName();
+        this.fatigueFactor = worker.getFatigueFactor();
+        this.fatigue = worker.getFatigue();
+        this.busyNanos = worker.getTimeUsed();
+        this.idleNanos = worker.getTimeIdleSoFar();
+        this.tasks = worker.getTasksCompleted();
+        this.failedTasks = worker.getTasksFailed();
+        this.queuedTasks = queuedTasks;
+        this.queueWait = worker.getQueueWait().snapshot();
+    }
+
+    /// ===== methods =====
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getFatigueFactor() {
+        return fatigueFactor;
+    }
+
+    public double getFatigue() {
+        return fatigue;
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public long getIdleNanos() {
+        return idleNanos;
+    }
+
+    /** return the busy share of the worker's lifetime
+     */
+    public double getUtilization() {
+        long total = busyNanos + idleNanos;
+        return (total == 0) ? 0 : (double) busyNanos / total;
+    }
+
+    public long getTasks() {
+        return tasks;
+    }
+
+    /** return number of tasks that threw, included in getTasks()
+     */
+    public long getFailedTasks() {
+        return failedTasks;
+    }
+
+    /** return number of tasks waiting in the worker's deque, always 0 outside work-stealing mode
+     */
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Worker %d (%s): fatigue=%.2f, used=%.3f ms, idle=%.3f ms, tasks=%d, failed=%d, wait: %s",
+                workerId, name, fatigue, busyNanos / 1e6, idleNanos / 1e6, tasks, failedTasks, queueWait);
+    }
+}
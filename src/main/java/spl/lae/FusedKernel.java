@@ -0,0 +1,221 @@
+package spl.lae;
+
+import memory.BufferPool;
+import memory.SparseMatrix;
+import memory.VectorKernels;
+import parser.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A maximal element-wise subtree (ADD, SUBTRACT, NEGATE, TRANSPOSE) compiled into a single pass.
+ * All of these operators are linear, so the value of such a subtree is a signed sum of its operand
+ * matrices, some of them transposed. The kernel keeps that list of terms and produces every output
+ * row directly from the operands, without any intermediate matrix.
+ * Sums start from -0.0, the additive identity of IEEE arithmetic, so every element is the exact sum of its
+ * terms, signed zeros included (-(0.0) is -0.0, as when the operators run one by one).
+ */
+public class FusedKernel {
+
+    /// ===== constants =====
+    public static final int BLOCK = 32; // rows/columns per block when gathering a transposed term
+
+    /// ===== fields =====
+    private final List<double[][]> terms = new ArrayList<>(); // operand matrices as stored, null for sparse terms
+    private final List<SparseMatrix> sparseTerms = new ArrayList<>(); // term i stored sparse, null for dense terms
+    private final List<Boolean> transposed = new ArrayList<>(); // term i is read transposed
+    private final List<Boolean> negated = new ArrayList<>();    // term i is subtracted
+    private final int rows;
+    private final int cols;
+    private final boolean resultTransposed;
+    private final BufferPool pool; // output rows come from here, null for plain allocation
+
+    /// ===== constructor =====
+    private FusedKernel(ComputationNode root, BufferPool pool) {
+        this.pool = pool;
+        int valueRows = root.getRows();
+        int valueCols = root.getCols();
+        collect(root, false, false, valueRows, valueCols);
+
+        // if every term is transposed, evaluate in the stored frame and hand back a lazy transpose
+        boolean allTransposed = !transposed.contains(false);
+        if (allTransposed) {
+            for (int i = 0; i < transposed.size(); i++)
+                transposed.set(i, false);
+        }
+        // a sparse term read transposed is converted to the output frame once (CSR of the transpose)
+        for (int i = 0; i < sparseTerms.size(); i++) {
+            if (sparseTerms.get(i) != null && transposed.get(i)) {
+                sparseTerms.set(i, sparseTerms.get(i).transpose());
+                transposed.set(i, false);
+            }
+        }
+        this.resultTransposed = allTransposed;
+        this.rows = allTransposed ? valueCols : valueRows;
+        this.cols = allTransposed ? valueRows : valueCols;
+    }
+
+    /// ===== methods =====
+    /** return true for operators that can be fused
+     */
+    public static boolean isElementwise(ComputationNodeType type) {
+        return type == ComputationNodeType.ADD || type == ComputationNodeType.SUBTRACT
+                || type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE;
+    }
+
+    /** return number of element-wise operators in the region rooted at node
+     * a shared child is a region of its own, it is evaluated once for all of its parents
+     */
+    public static int regionSize(ComputationNode node) {
+        if (!isElementwise(node.getNodeType()))
+            return 0;
+        int size = 1;
+        for (ComputationNode child : node.getChildren()) {
+            if (!child.isShared())
+                size += regionSize(child);
+        }
+        return size;
+    }
+
+    /** compile the region rooted at node, every operand at its frontier must be resolved
+     */
+    public static FusedKernel compile(ComputationNode node) {
+        return compile(node, null);
+    }
+
+    /** compile the region rooted at node, output rows are taken from pool
+     */
+    public static FusedKernel compile(ComputationNode node, BufferPool pool) {
+        if (node == null || !isElementwise(node.getNodeType()))
+            throw new IllegalArgumentException("Illegal node: node must be an element-wise operation");
+        return new FusedKernel(node, pool);
+    }
+
+    /** return number of output rows (in the stored frame)
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /** return number of output columns (in the stored frame)
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /** return number of operand matrices read per output element
+     */
+    public int termCount() {
+        return terms.size();
+    }
+
+    /** return true if every term is stored sparse
+     */
+    public boolean isAllSparse() {
+        return !sparseTerms.contains(null);
+    }
+
+    /** return true if the output holds the transpose of the region's value
+     */
+    public boolean isResultTransposed() {
+        return resultTransposed;
+    }
+
+    /** compute output rows [from, to) into out, allocating them
+     */
+    public void evalRows(int from, int to, double[][] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = (pool != null) ? pool.acquire(cols) : new double[cols];
+            Arrays.fill(out[i], -0.0);
+        }
+
+        for (int t = 0; t < terms.size(); t++) {
+            double[][] src = terms.get(t);
+            boolean neg = negated.get(t);
+            SparseMatrix sparse = sparseTerms.get(t);
+            if (sparse != null) {
+                // the elements left out only matter where they turn a -0.0 sum into 0.0
+                double sign = neg ? -1.0 : 1.0;
+                for (int i = from; i < to; i++)
+                    sparse.addRow(i, sign, out[i]);
+            }
+            else if (!transposed.get(t)) {
+                for (int i = from; i < to; i++) {
+                    if (neg)
+                        VectorKernels.subtract(out[i], 0, src[i], 0, cols);
+                    else
+                        VectorKernels.add(out[i], 0, src[i], 0, cols);
+                }
+            }
+            else {
+                // out[i][j] reads src[j][i], walk it in blocks so both sides stay in cache
+                double sign = neg ? -1.0 : 1.0;
+                for (int j0 = 0; j0 < cols; j0 += BLOCK) {
+                    int j1 = Math.min(j0 + BLOCK, cols);
+                    for (int i0 = from; i0 < to; i0 += BLOCK) {
+                        int i1 = Math.min(i0 + BLOCK, to);
+                        for (int j = j0; j < j1; j++) {
+                            double[] s = src[j];
+                            for (int i = i0; i < i1; i++)
+                                out[i][j] += sign * s[i];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** flatten the region into signed, possibly transposed terms
+     * valueRows × valueCols is the shape node's value must have
+     */
+    private void collect(ComputationNode node, boolean neg, boolean trans, int valueRows, int valueCols) {
+        ComputationNodeType type = node.getNodeType();
+        List<ComputationNode> children = node.getChildren();
+
+        if (type == ComputationNodeType.MATRIX) {
+            if (node.getRows() != valueRows || node.getCols() != valueCols)
+                throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+            // output (i, j) is this operand's (j, i) under an odd number of transposes
+            if (node.isSparse()) {
+                terms.add(null);
+                sparseTerms.add(node.getSparse());
+            }
+            else {
+                terms.add(node.getStoredMatrix());
+                sparseTerms.add(null);
+            }
+            transposed.add(node.isTransposed() != trans);
+            negated.add(neg);
+            return;
+        }
+        if (children == null || children.isEmpty())
+            throw new IllegalArgumentException("Illegal node: node must contain at least one child");
+
+        switch (type) {
+            case NEGATE:
+                if (children.size() != 1)
+                    throw new IllegalArgumentException("Illegal node: node must contain exactly one child");
+                collect(children.get(0), !neg, trans, valueRows, valueCols);
+                break;
+            case TRANSPOSE:
+                if (children.size() != 1)
+                    throw new IllegalArgumentException("Illegal node: node must contain exactly one child");
+                collect(children.get(0), neg, !trans, valueCols, valueRows);
+                break;
+            case ADD:
+                for (ComputationNode child : children)
+                    collect(child, neg, trans, valueRows, valueCols);
+                break;
+            case SUBTRACT:
+                if (children.size() != 2)
+                    throw new IllegalArgumentException("Illegal node: node must contain exactly two children");
+                collect(children.get(0), neg, trans, valueRows, valueCols);
+                collect(children.get(1), !neg, trans, valueRows, valueCols);
+                break;
+            default:
+                throw new IllegalStateException("Operand is not resolved yet: " + type);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package spl.lae;
+
+import memory.BufferPool;
+import parser.BinaryFormat;
+import parser.BinaryOutputWriter;
+import parser.OutputWriter;
+import scheduling.TaskExecutor;
+import scheduling.TiredExecutor;
+import scheduling.VirtualThreadExecutor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running mode: one executor, buffer pool and result cache serve every job, so jobs after the first
+ * skip JVM startup, thread creation and JIT warmup, and reuse results of subtrees computed before.
+ * Up to maxJobs jobs run at once, each on its own engine sharing the executor.
+ * Jobs come from a spool directory or a local socket:
+ * - spool: a file moved into spool/in (".json" or ".bin", write it elsewhere and rename it in) is evaluated,
+ *   the output goes to spool/out under the same name and the input is moved to spool/done,
+ *   a job that could not run to the end leaves its error message in spool/out and its input in spool/failed
+ * - socket: every line "input-path TAB output-path" (a space works when the paths have none) is a job,
+ *   the reply is "DONE output-path" once the output is written, or "ERROR message"; "STOP" stops the server.
+ *   Any local user can connect, so both paths are resolved against --root (default: the working directory)
+ *   and a job reading or writing outside of it is refused
+ * With --virtual-threads every job and client gets a virtual thread of its own and at most maxJobs of them
+ * evaluate at once, waiting jobs cost no platform thread; the compute tasks of all jobs share numThreads
+ * platform workers either way.
+ * With --affinity the same row band of consecutive steps runs on the same worker, see TiredExecutor(int, boolean, boolean).
+ * On shutdown (e.g. SIGTERM) running jobs get up to DRAIN_MILLIS to finish, queued ones are dropped.
+ * Usage: --serve numThreads (--spool dir | --port port [--root dir]) [--jobs N] [--work-stealing] [--virtual-threads] [--affinity] [--compact] [--fast-doubles] [--strassen=N]
+ */
+public class JobServer {
+
+    /// ===== constants =====
+    public static final int DEFAULT_MAX_JOBS = 4;
+    private static final long POLL_MILLIS = 200; // how often the serving loops check for stop()
+    static final long DRAIN_MILLIS = 30_000;     // how long the shutdown hook waits for running jobs
+    private static final String USAGE = "usage: --serve numThreads (--spool dir | --port port [--root dir]) [--jobs N] [--work-stealing]"
+            + " [--virtual-threads] [--affinity] [--compact] [--fast-doubles] [--strassen=N]";
+
+    /// ===== fields =====
+    private final TaskExecutor executor;
+    private final BufferPool pool = new BufferPool();
+    private final ResultCache cache = new ResultCache();
+    private final ExecutorService jobs; // runs every job's dispatcher, the job's tasks run on executor
+    private final Semaphore slots;      // jobs evaluating at once
+    private final boolean virtualThreads;
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet(); // spool files queued or running
+    private final boolean compact;
+    private final boolean fastDoubles;
+    private final int strassenThreshold; // < 0 for the engine default
+    private volatile boolean running = true;
+
+    /// ===== constructor =====
+    public JobServer(int numThreads, boolean workStealing, boolean virtualThreads, boolean affinity, int maxJobs,
+                     boolean compact, boolean fastDoubles, int strassenThreshold) {
+        if (maxJobs < 1)
+            throw new IllegalArgumentException("maxJobs must be greater than 0");
+        this.virtualThreads = virtualThreads;
+        if (virtualThreads) {
+            this.executor = new VirtualThreadExecutor(numThreads, workStealing, affinity);
+            this.jobs = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lae-job-", 0).factory());
+        }
+        else {
+            this.executor = new TiredExecutor(numThreads, workStealing, affinity);
+            this.jobs = Executors.newFixedThreadPool(maxJobs);
+        }
+        this.slots = new Semaphore(maxJobs);
+        this.compact = compact;
+        this.fastDoubles = fastDoubles;
+        this.strassenThreshold = strassenThreshold;
+    }
+
+    /// ===== methods =====
+    public static void main(String[] args) throws IOException {
+        // args[0] is --serve
+        if (args.length < 4)
+            throw new IllegalArgumentException(USAGE);
+        int numThreads = Integer.parseInt(args[1].trim());
+        Path spool = null;
+        int port = -1;
+        Path root = Paths.get("");
+        int maxJobs = DEFAULT_MAX_JOBS;
+        boolean workStealing = false;
+        boolean virtualThreads = false;
+        boolean affinity = false;
+        boolean compact = false;
+        boolean fastDoubles = false;
+        int strassenThreshold = -1;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--spool": spool = Paths.get(valueOf(args, ++i)); break;
+                case "--port": port = Integer.parseInt(valueOf(args, ++i).trim()); break;
+                case "--root": root = Paths.get(valueOf(args, ++i)); break;
+                case "--jobs": maxJobs = Integer.parseInt(valueOf(args, ++i).trim()); break;
+                case "--work-stealing": workStealing = true; break;
+                case "--virtual-threads": virtualThreads = true; break;
+                case "--affinity": affinity = true; break;
+                case "--compact": compact = true; break;
+                case "--fast-doubles": fastDoubles = true; break;
+                default:
+                    if (args[i].startsWith("--strassen="))
+                        strassenThreshold = Integer.parseInt(args[i].substring("--strassen=".length()).trim());
+                    else
+                        throw new IllegalArgumentException("unknown option " + args[i] + ", " + USAGE);
+                    break;
+            }
+        }
+        if ((spool == null) == (port < 0))
+            throw new IllegalArgumentException("exactly one of --spool and --port must be given");
+
+        JobServer server = new JobServer(numThreads, workStealing, virtualThreads, affinity, maxJobs, compact,
+                fastDoubles, strassenThreshold);
+        // the JVM halts once the hook returns, a job cut short leaves no output rather than a partial one
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.drain(DRAIN_MILLIS)));
+        try {
+            if (spool != null)
+                server.serveSpool(spool);
+            else
+                server.serveSocket(port, root);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /** return the value of the option before args[i], a trailing option would otherwise fail with an index error
+     */
+    private static String valueOf(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException("missing value for " + args[i - 1] + ", " + USAGE);
+        return args[i];
+    }
+
+    /** run a job in the background, the output (or error message) is written to outputPath
+     */
+    public Future<?> submit(String inputPath, String outputPath) {
+        return jobs.submit(() -> {
+            runJob(inputPath, outputPath);
+            return null;
+        });
+    }
+
+    /** serve jobs from spool/in until stop() is called
+     */
+    public void serveSpool(Path spool) throws IOException {
+        Path in = spool.resolve("in");
+        Path out = spool.resolve("out");
+        Path done = spool.resolve("done");
+        Path failed = spool.resolve("failed");
+        Files.createDirectories(in);
+        Files.createDirectories(out);
+        Files.createDirectories(done);
+        Files.createDirectories(failed);
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            in.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            // files dropped before the watch started
+            scanSpool(in, out, done, failed);
+            while (running) {
+                WatchKey key;
+                try {
+                    key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (key == null)
+                    continue;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // events were lost, look at the whole directory
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        scanSpool(in, out, done, failed);
+                    else
+                        spool(in.resolve((Path) event.context()), out, done, failed);
+                }
+                key.reset();
+            }
+        }
+    }
+
+    /** serve jobs from a socket on the loopback interface until stop() is called (or a client sends STOP),
+     * job paths are resolved against the working directory
+     */
+    public void serveSocket(int port) throws IOException {
+        serveSocket(port, Paths.get(""));
+    }
+
+    /** serve jobs from a socket on the loopback interface, every job path must lie under root
+     */
+    public void serveSocket(int port, Path root) throws IOException {
+        Path realRoot = root.toRealPath();
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int) POLL_MILLIS);
+            int clients = 0;
+            while (running) {
+                Socket client;
+                try {
+                    client = server.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                // a client mostly waits for its jobs, a virtual thread costs next to nothing while it does
+                Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+                builder.name("lae-client-" + (++clients)).start(() -> serveClient(client, realRoot));
+            }
+        }
+    }
+
+    /** stop serving, running jobs still complete
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /** stop serving and wait up to timeoutMillis for the running jobs, then interrupt the rest
+     * return true if every job finished in time
+     */
+    public boolean drain(long timeoutMillis) {
+        stop();
+        jobs.shutdown();
+        try {
+            if (jobs.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS))
+                return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        jobs.shutdownNow();
+        return false;
+    }
+
+    /** wait for the queued jobs and shut the executor down
+     */
+    public void shutdown() {
+        stop();
+        jobs.shutdown();
+        try {
+            while (!jobs.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // keep waiting for the running jobs
+            }
+            executor.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while shutting down executor");
+        }
+    }
+
+    /** return summary of the shared executor, pool and cache
+     */
+    public String getReport() {
+        return executor.getWorkerReport() + pool + System.lineSeparator() + cache + System.lineSeparator();
+    }
+
+    /** evaluate one job once a slot is free
+     */
+    private void runJob(String inputPath, String outputPath) throws IOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a job slot");
+        }
+        try {
+            Main.runJob(this::newEngine, inputPath, outputPath, compact, fastDoubles, null);
+        } finally {
+            slots.release();
+        }
+    }
+
+    /** return an engine for one job, on the shared executor
+     */
+    private LinearAlgebraEngine newEngine() {
+        LinearAlgebraEngine lae = new LinearAlgebraEngine(executor, pool);
+        lae.setResultCache(cache);
+        if (strassenThreshold >= 0)
+            lae.setStrassenThreshold(strassenThreshold);
+        return lae;
+    }
+
+    /** queue every job file in in
+     */
+    private void scanSpool(Path in, Path out, Path done, Path failed) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(in)) {
+            for (Path file : files)
+                spool(file, out, done, failed);
+        }
+    }
+
+    /** queue a spooled job file, unless it is not a job or is queued already
+     * the file always leaves in, so a failing job is not picked up again by the next scan
+     */
+    private void spool(Path file, Path out, Path done, Path failed) {
+        String name = file.getFileName().toString();
+        if (!(name.endsWith(".json") || name.endsWith(".bin")) || !claimed.add(name))
+            return;
+        try {
+            submitSpooled(file, name, out, done, failed);
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down, the file stays in in for the next start
+            claimed.remove(name);
+        }
+    }
+
+    private void submitSpooled(Path file, String name, Path out, Path done, Path failed) {
+        jobs.submit(() -> {
+            String outputPath = out.resolve(name).toString();
+            try {
+                runJob(file.toString(), outputPath);
+                Files.move(file, done.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                fail(file, failed.resolve(name), outputPath, e);
+            } finally {
+                claimed.remove(name);
+            }
+        });
+    }
+
+    /** write the error message of a spooled job that did not finish and move its input to failed
+     */
+    private static void fail(Path file, Path failed, String outputPath, Exception e) {
+        String message = "spool job failed: " + e.getMessage();
+        try {
+            if (BinaryFormat.isBinary(outputPath))
+                BinaryOutputWriter.write(message, outputPath);
+            else
+                OutputWriter.write(message, outputPath);
+        } catch (IOException | RuntimeException ignored) {
+            // the output cannot be written either, the input in failed still marks the job as failed
+        }
+        try {
+            Files.move(file, failed, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ignored) {
+            // the input was removed meanwhile, nothing is left to retry
+        }
+    }
+
+    /** return path resolved against root, which must be a real path
+     * the path, or for a file not created yet its directory, must lie under root once symbolic links are followed
+     */
+    static Path underRoot(Path root, String path) throws IOException {
+        Path resolved = root.resolve(path).normalize();
+        Path existing = Files.exists(resolved) ? resolved : resolved.getParent();
+        if (existing == null || !existing.toRealPath().startsWith(root))
+            throw new IllegalArgumentException("path is outside of the server root: " + path);
+        return resolved;
+    }
+
+    /** answer the job lines of one client, one job at a time
+     */
+    private void serveClient(Socket client, Path root) {
+        try (Socket socket = client;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty())
+                    continue;
+                if (line.equals("STOP")) {
+                    stop();
+                    writer.println("STOPPED");
+                    return;
+                }
+                String[] paths = line.contains("\t") ? line.split("\t", 2) : line.split(" +", 2);
+                if (paths.length != 2) {
+                    writer.println("ERROR expected: input-path TAB output-path");
+                    continue;
+                }
+                try {
+                    String input = underRoot(root, paths[0].strip()).toString();
+                    String output = underRoot(root, paths[1].strip()).toString();
+                    submit(input, output).get();
+                    writer.println("DONE " + paths[1].strip());
+                } catch (ExecutionException e) {
+                    writer.println("ERROR " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    // a path whose directory does not exist
+                    writer.println("ERROR no such path: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // e.g. a path outside of the root, or rejected once the server is shutting down
+                    writer.println("ERROR " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+}
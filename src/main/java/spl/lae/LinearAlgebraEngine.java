@@ -5,130 +5,1013 @@ import memory.*;
 import scheduling.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LinearAlgebraEngine {
 
     /// ===== fields =====
-    private SharedMatrix leftMatrix = new SharedMatrix();
+    private SharedMatrix leftMatrix = new SharedMatrix();  // operands of loadAndCompute and the no-argument create*Tasks
     private SharedMatrix rightMatrix = new SharedMatrix();
-    private TiredExecutor executor;
+    private final TaskExecutor executor;
+    private final boolean ownsExecutor; // false when the executor is shared with other engines
+    private ComputationNode outputRoot = null; // root of the current run, its rows may be streamed
+    private RowSink outputSink = null;
+    private final BufferPool pool; // recycles intermediate matrices between steps
+    private final Map<Object, AtomicInteger> intermediates = new ConcurrentHashMap<>(); // results (double[][] or TiledFileMatrix) computed by this engine, and inputs -> reads still to come
+    private final Set<Object> inputs = ConcurrentHashMap.newKeySet(); // input matrices tracked in intermediates, never pooled
+    private final Map<ComputationNode, AtomicInteger> unread = new ConcurrentHashMap<>(); // operand nodes -> parents still to read them
+    private final AtomicLong liveBytes = new AtomicLong(0); // heap bytes of the inputs, intermediates and operand copies held
+    private final AtomicLong peakLiveBytes = new AtomicLong(0);
+    private final Map<ComputationNode, Integer> consumers = new IdentityHashMap<>(); // parents of every node of the current run
+    private CommonSubexpressions subexpressions = null; // keys of the current run's subtrees
+    private ResultCache resultCache = null; // results kept across runs, none by default
+    private final Map<String, TaskGranularity> granularity = new ConcurrentHashMap<>(); // last choice per operator
+    private int strassenThreshold = StrassenMatMul.DEFAULT_THRESHOLD; // 0 turns the recursive multiply off
+    private RunMetrics lastRun = null;
+    private MemoryBudget budget = null; // out-of-core mode when set
+    private final Map<Object, Long> charged = new ConcurrentHashMap<>(); // resident matrices -> bytes charged to the budget
+    private final Map<ComputationNode, Long> reserved = new ConcurrentHashMap<>(); // steps in flight -> bytes reserved for their result
+    private final Set<ComputationNode> outOfCore = ConcurrentHashMap.newKeySet(); // steps computed tile by tile
 
     /// ===== constructor =====
     public LinearAlgebraEngine(int numThreads) {
+        this(numThreads, false);
+    }
+
+    /** workStealing selects the executor's work-stealing mode instead of the single-slot handoff
+     */
+    public LinearAlgebraEngine(int numThreads, boolean workStealing) {
+        this(numThreads, workStealing, false);
+    }
+
+    /** virtualThreads coordinates on virtual threads, the compute tasks still run on numThreads platform
+     * workers, see VirtualThreadExecutor
+     */
+    public LinearAlgebraEngine(int numThreads, boolean workStealing, boolean virtualThreads) {
+        this(numThreads, workStealing, virtualThreads, false);
+    }
+
+    /** affinity keeps the same row band of consecutive steps on the same worker, which also allocates the band's
+     * result rows, see TiredExecutor(int, boolean, boolean)
+     */
+    public LinearAlgebraEngine(int numThreads, boolean workStealing, boolean virtualThreads, boolean affinity) {
         if (numThreads < 1)
             throw new IllegalArgumentException("numThreads must be greater than 0");
-        executor = new TiredExecutor(numThreads);
+        executor = virtualThreads ? new VirtualThreadExecutor(numThreads, workStealing, affinity)
+                : new TiredExecutor(numThreads, workStealing, affinity);
+        ownsExecutor = true;
+        pool = new BufferPool();
+    }
+
+    /** run on an executor (and buffer pool) shared with other engines, e.g. one engine per concurrent job
+     * shutdown() leaves a shared executor running, it is up to its owner to shut it down
+     */
+    public LinearAlgebraEngine(TaskExecutor executor, BufferPool pool) {
+        if (executor == null || pool == null)
+            throw new IllegalArgumentException("executor and pool cannot be null");
+        this.executor = executor;
+        this.ownsExecutor = false;
+        this.pool = pool;
     }
 
     /// ===== methods =====
+    /** products whose dimensions all exceed threshold (and are within StrassenMatMul.MAX_ASPECT of each other) are
+     * computed with Strassen down to leaves of at most threshold, 0 keeps every product on the classic kernels
+     */
+    public void setStrassenThreshold(int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold must be >= 0");
+        strassenThreshold = threshold;
+    }
+
+    /** run out of core: matrices that do not fit budget are kept in files and operators reading or producing
+     * them run tile by tile (see OutOfCoreKernel), null keeps everything on the heap
+     * element-wise regions are not fused in this mode, every operator is a step of its own
+     * a spilled result is left spilled, the caller reads it from the returned node and releases it
+     */
+    public void setMemoryBudget(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    /** return the memory budget, or null
+     */
+    public MemoryBudget getMemoryBudget() {
+        return budget;
+    }
+
+    /** keep the results of every run in cache and reuse them in later runs, null turns caching off
+     * cached results are not recycled through the buffer pool
+     */
+    public void setResultCache(ResultCache cache) {
+        resultCache = cache;
+    }
+
+    /** return the cache results are kept in, or null
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
     /** resolve computation tree step by step until the final matrix is produced
+     * the executor keeps running afterwards, so an engine can run several trees (one at a time), see shutdown()
      */
     public ComputationNode run(ComputationNode computationRoot) {
+        return run(computationRoot, null);
+    }
+
+    /** resolve computation tree, handing rows of the final matrix to sink as soon as they are final
+     * sink may get some rows or none (e.g. when the root is not computed row by row), it is up to the
+     * caller to take the remaining rows from the returned node
+     */
+    public ComputationNode run(ComputationNode computationRoot, RowSink sink) {
         if (computationRoot == null)
             throw new IllegalArgumentException("computationRoot must not be null");
 
-        computationRoot.associativeNesting();
+        outputRoot = computationRoot;
+        outputSink = sink;
+        long started = System.nanoTime();
+        long planned = started;
+        NodeScheduler scheduler = null;
+        try {
+            computationRoot.associativeNesting();
+            new ExpressionOptimizer().optimize(computationRoot);
 
-        // at the end of the loop, the root will be a matrix with no children.
-        while (computationRoot.getNodeType() != ComputationNodeType.MATRIX){
-            ComputationNode next = computationRoot.findResolvable();
+            // equal subtrees are evaluated once, and subtrees computed by earlier runs not at all
+            subexpressions = new CommonSubexpressions();
+            subexpressions.eliminate(computationRoot);
+            if (resultCache != null)
+                reuseCached(computationRoot, Collections.newSetFromMap(new IdentityHashMap<>()));
+            // nothing compares the keys anymore, let the inputs go once they are read (or spilled)
+            else
+                subexpressions.releaseContents();
+            consumers.clear();
+            countConsumers(computationRoot, Collections.newSetFromMap(new IdentityHashMap<>()));
+            if (budget != null && computationRoot.getChildren() != null)
+                placeLeaves(computationRoot, Collections.newSetFromMap(new IdentityHashMap<>()));
+            liveBytes.set(0);
+            peakLiveBytes.set(0);
+            trackInputs(computationRoot, Collections.newSetFromMap(new IdentityHashMap<>()));
+            for (Map.Entry<ComputationNode, Integer> entry : consumers.entrySet())
+                unread.put(entry.getKey(), new AtomicInteger(entry.getValue()));
+            planned = System.nanoTime();
 
-            if (next == null)
-                throw new IllegalStateException("No resolvable node found");
+            // independent subtrees run concurrently, at the end the root is a matrix with no children.
+            scheduler = new NodeScheduler(this, executor);
+            scheduler.run(computationRoot);
 
-            loadAndCompute(next);
+            // the output is the only place a lazy transpose is paid for
+            materialize(computationRoot);
+        }
+        finally {
+            if (budget != null)
+                releaseBudget(computationRoot);
+            intermediates.clear();
+            inputs.clear();
+            unread.clear();
+            // a failed run reports the steps that were dispatched
+            lastRun = new RunMetrics((scheduler != null) ? scheduler.getMetrics() : List.of(),
+                    executor.getWorkerMetrics(), planned - started, System.nanoTime() - started, peakLiveBytes.get());
+            lastRun.commitWorkerEvents();
         }
 
-        // shutting down and handling InterruptedException
+        return computationRoot;
+    }
+
+    /** shut down the executor once its tasks are done, workers are not daemons so this must be called before exiting
+     * a shared executor is left running
+     */
+    public void shutdown() {
+        if (!ownsExecutor)
+            return;
+        // handling InterruptedException
         try {
             executor.shutdown();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new IllegalStateException("Interrupted while shutting down executor");
         }
+    }
 
-        return computationRoot;
+    /** return the metrics of the last run, or null before the first one
+     */
+    public RunMetrics getMetrics() {
+        return lastRun;
+    }
+
+    /** return the most heap bytes held at once in inputs, intermediate results and operand copies during the last run
+     */
+    public long getPeakLiveBytes() {
+        return peakLiveBytes.get();
+    }
+
+    /** resolve the largest subtrees found in the result cache, top-down
+     */
+    private void reuseCached(ComputationNode node, Set<ComputationNode> visited) {
+        if (node.getChildren() == null || !visited.add(node))
+            return;
+        if (resultCache.resolve(subexpressions.keyOf(node), node))
+            return;
+        for (ComputationNode child : node.getChildren())
+            reuseCached(child, visited);
+    }
+
+    /** charge the input matrices under node to the budget, spilling the ones that do not fit
+     * a spilled input is released once its last reader is done
+     */
+    private void placeLeaves(ComputationNode node, Set<ComputationNode> visited) {
+        if (!visited.add(node))
+            return;
+        if (node.getChildren() != null) {
+            for (ComputationNode child : node.getChildren())
+                placeLeaves(child, visited);
+            return;
+        }
+        if (node.isSpilled())
+            return;
+        if (node.isSparse()) {
+            // sparse inputs are small by construction, they stay
+            long bytes = (long) node.getSparse().nnz() * (Double.BYTES + Integer.BYTES);
+            if (budget.tryReserve(bytes))
+                charged.put(node.getSparse(), bytes);
+            return;
+        }
+        double[][] stored = node.getStoredMatrix();
+        long bytes = bytesOf(node);
+        if (budget.tryReserve(bytes)) {
+            charged.put(stored, bytes);
+            return;
+        }
+        TiledFileMatrix spilled = budget.spill(stored);
+        node.resolveSpilled(spilled, node.isTransposed());
+        intermediates.put(spilled, new AtomicInteger(consumers.getOrDefault(node, 0)));
+    }
+
+    /** track the dense input matrices under node like intermediates, so that each is let go after its last read
+     * inputs belong to the caller (or the result cache) and are never handed to the pool
+     */
+    private void trackInputs(ComputationNode node, Set<ComputationNode> visited) {
+        if (!visited.add(node))
+            return;
+        if (node.getChildren() != null) {
+            for (ComputationNode child : node.getChildren())
+                trackInputs(child, visited);
+            return;
+        }
+        // sparse inputs are small by construction, spilled ones are tracked by placeLeaves()
+        if (node.isSparse() || node.isSpilled())
+            return;
+        double[][] stored = node.getStoredMatrix();
+        inputs.add(stored);
+        track(stored, consumers.getOrDefault(node, 0));
+    }
+
+    /** refund every charge of the run and delete the spill files that are not the result's
+     */
+    private void releaseBudget(ComputationNode root) {
+        for (Long bytes : charged.values())
+            budget.release(bytes);
+        charged.clear();
+        for (Long bytes : reserved.values())
+            budget.release(bytes);
+        reserved.clear();
+        outOfCore.clear();
+        for (Object stored : intermediates.keySet()) {
+            if (stored instanceof TiledFileMatrix && stored != root.getSpilled())
+                ((TiledFileMatrix) stored).release();
+        }
+    }
+
+    /** return the heap footprint of node's value held dense
+     */
+    private static long bytesOf(ComputationNode node) {
+        return (long) node.getRows() * node.getCols() * Double.BYTES;
+    }
+
+    /** return the heap footprint of node's value held dense, 0 if its shape cannot be inferred (an invalid node)
+     */
+    long resultBytes(ComputationNode node) {
+        try {
+            return bytesOf(node);
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /** return false if the result of step does not fit the memory budget now but may once running steps are done
+     * without a budget everything fits, and so does a result larger than the whole budget (it is computed out of core)
+     */
+    boolean fitsBudget(ComputationNode step) {
+        if (budget == null || step.getNodeType() == ComputationNodeType.TRANSPOSE)
+            return true;
+        long bytes = resultBytes(step);
+        return bytes > budget.getLimit() || budget.getUsed() + bytes <= budget.getLimit();
+    }
+
+    /** return the heap footprint of a stored matrix, 0 for one in a file
+     */
+    private static long heapBytes(Object stored) {
+        if (!(stored instanceof double[][]))
+            return 0;
+        double[][] matrix = (double[][]) stored;
+        return (matrix.length == 0 || matrix[0] == null) ? 0 : (long) matrix.length * matrix[0].length * Double.BYTES;
+    }
+
+    /** add delta to the live bytes, keeping track of their peak
+     */
+    private void addLive(long delta) {
+        peakLiveBytes.accumulateAndGet(liveBytes.addAndGet(delta), Math::max);
+    }
+
+    /** count the parents of every node under node, a node read twice by the same parent counts twice
+     */
+    private void countConsumers(ComputationNode node, Set<ComputationNode> visited) {
+        if (node.getChildren() == null || !visited.add(node))
+            return;
+        for (ComputationNode child : node.getChildren()) {
+            consumers.merge(child, 1, Integer::sum);
+            countConsumers(child, visited);
+        }
+    }
+
+    /** collect the operands (non element-wise or shared descendants) of the element-wise region rooted at node
+     */
+    void collectFrontier(ComputationNode node, List<ComputationNode> frontier) {
+        for (ComputationNode child : node.getChildren()) {
+            // out of core every operator is a step, operands may have to be read tile by tile
+            if (budget == null && FusedKernel.isElementwise(child.getNodeType()) && !child.isShared())
+                collectFrontier(child, frontier);
+            else
+                frontier.add(child);
+        }
+    }
+
+    /** compute a whole element-wise region in one pass over its output
+     */
+    public void computeFused(ComputationNode node) {
+        PreparedNode prepared = prepareFused(node);
+        executor.submitAll(prepared.getTasks());
+        prepared.finish();
     }
 
     /** load operand matrices, create compute tasks & submit tasks to executor
+     * one node at a time on the engine's own operand matrices, run() prepares every node with its own
      */
     public void loadAndCompute(ComputationNode node) {
-        // checks
-        if (node == null || node.getNodeType() == ComputationNodeType.MATRIX)
-            throw new IllegalArgumentException("Illegal node: node must not be null or matrix");
+        // phases run one after the other
+        for (PreparedNode phase = prepareOperator(node, leftMatrix, rightMatrix); phase != null; phase = phase.getNext()) {
+            phase.operandsLoaded();
+            executor.submitAll(phase.getTasks());
+            phase.finish();
+        }
+    }
+
+    /** prepare node for execution: a fused pass for element-wise regions, a single operator otherwise
+     * every call gets its own operand matrices, so independent nodes can be in flight at the same time
+     */
+    PreparedNode prepare(ComputationNode node) {
+        // out of core: operators reading a spilled matrix, or whose result does not fit, run tile by tile
+        if (budget != null && (hasSpilledOperand(node) || !reserveResult(node)))
+            return prepareOutOfCore(node);
+        if (hasSparseOperand(node))
+            return prepareSparse(node);
+        if (FusedKernel.regionSize(node) > 1)
+            return prepareFused(node);
+        return prepareOperator(node, new SharedMatrix(pool), new SharedMatrix(pool));
+    }
+
+    /** compile an element-wise region and return the tasks computing its output
+     */
+    private PreparedNode prepareFused(ComputationNode node) {
+        FusedKernel kernel = FusedKernel.compile(node, pool);
+        double[][] result = new double[kernel.rows()][];
+        // rows of the final node are final as soon as their task is done, unless they still need a transpose
+        RowSink sink = (node == outputRoot && !kernel.isResultTransposed()) ? outputSink : null;
+        return new PreparedNode(createFusedTasks(kernel, result, sink),
+                () -> {
+                    List<ComputationNode> operands = new ArrayList<>();
+                    collectFrontier(node, operands);
+                    // sparse terms only: keep the result sparse unless fill-in made it dense
+                    if (kernel.isAllSparse() && node != outputRoot && resolveIfSparse(node, result, kernel.isResultTransposed())) {
+                        recycle(node, operands, null);
+                        return;
+                    }
+                    resolveAs(node, result, kernel.isResultTransposed());
+                    recycle(node, operands, result);
+                });
+    }
+
+    /** return true if one of the operands of the step rooted at node is stored sparse
+     * a product whose dense operand holds Inf or NaN is left to the dense kernels, which do not skip the zeros
+     * that make 0 × Inf a NaN
+     */
+    private boolean hasSparseOperand(ComputationNode node) {
+        if (node.getChildren() == null)
+            return false;
+        List<ComputationNode> operands = new ArrayList<>();
+        if (FusedKernel.isElementwise(node.getNodeType()))
+            collectFrontier(node, operands);
+        else
+            operands.addAll(node.getChildren());
+        boolean sparse = false;
+        for (ComputationNode operand : operands)
+            sparse |= operand.isSparse();
+        if (!sparse || node.getNodeType() != ComputationNodeType.MULTIPLY)
+            return sparse;
+        for (ComputationNode operand : operands) {
+            if (!operand.isSparse() && !operand.isSpilled() && !SparseMatrix.isFinite(operand.getStoredMatrix()))
+                return false;
+        }
+        return true;
+    }
+
+    /** return true if one of node's operands is stored in a file
+     */
+    private boolean hasSpilledOperand(ComputationNode node) {
+        for (ComputationNode child : node.getChildren()) {
+            if (child.isSpilled())
+                return true;
+        }
+        return false;
+    }
 
+    /** charge the result of node to the budget, return false if it does not fit
+     * the charge moves to the result once node is resolved, see recycle()
+     */
+    private boolean reserveResult(ComputationNode node) {
+        // an invalid node is left to the regular checks, a transpose is a flag flip
         List<ComputationNode> children = node.getChildren();
-        if (children == null || children.isEmpty())
-            throw new IllegalArgumentException("Illegal node: node must contain at least one child");
+        if (children == null || children.isEmpty() || node.getNodeType() == ComputationNodeType.TRANSPOSE)
+            return true;
+        long bytes;
+        try {
+            bytes = bytesOf(node);
+        } catch (RuntimeException e) {
+            return true;
+        }
+        if (!budget.tryReserve(bytes))
+            return false;
+        reserved.put(node, bytes);
+        return true;
+    }
+
+    /** prepare an operator whose operands or result are too large for the heap, one task per output tile
+     */
+    private PreparedNode prepareOutOfCore(ComputationNode node) {
+        checkOperator(node);
+        outOfCore.add(node);
+        List<ComputationNode> children = node.getChildren();
+        ComputationNode A = children.get(0);
 
+        if (node.getNodeType() == ComputationNodeType.TRANSPOSE) {
+            // only reached for a spilled operand, whose file becomes the result
+            return new PreparedNode(new ArrayList<>(), () -> {
+                TiledFileMatrix stored = A.getSpilled();
+                node.resolveSpilled(stored, !A.isTransposed());
+                recycle(node, List.of(A), stored);
+            });
+        }
+
+        OutOfCoreKernel kernel = OutOfCoreKernel.compile(node, budget);
+        List<Runnable> tasks = new ArrayList<>(kernel.tileRows() * kernel.tileCols());
+        for (int ti = 0; ti < kernel.tileRows(); ti++) {
+            for (int tj = 0; tj < kernel.tileCols(); tj++) {
+                final int row = ti;
+                final int col = tj;
+                tasks.add(() -> kernel.computeTile(row, col));
+            }
+        }
+        return new PreparedNode(tasks, () -> {
+            TiledFileMatrix result = kernel.getResult();
+            node.resolveSpilled(result, false);
+            recycle(node, children, result);
+        });
+    }
+
+    /** prepare a step with sparse operands
+     * transpose and negation of a sparse matrix stay sparse, element-wise regions read the non-zeros of their
+     * sparse terms only, products use the sparse × dense, dense × sparse and sparse × sparse kernels
+     */
+    private PreparedNode prepareSparse(ComputationNode node) {
         ComputationNodeType type = node.getNodeType();
-        if ((type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE) && children.size() != 1)
-            throw new IllegalArgumentException("Illegal node: node must contain exactly one child");
-        if ((type == ComputationNodeType.ADD || type == ComputationNodeType.MULTIPLY) && children.size() != 2)
+        List<ComputationNode> children = node.getChildren();
+        if (children.isEmpty())
+            throw new IllegalArgumentException("Illegal node: node must contain at least one child");
+
+        if ((type == ComputationNodeType.TRANSPOSE || type == ComputationNodeType.NEGATE) && children.size() == 1
+                && children.get(0).isSparse()) {
+            ComputationNode A = children.get(0);
+            boolean transpose = (type == ComputationNodeType.TRANSPOSE);
+            return new PreparedNode(new ArrayList<>(), () -> {
+                SparseMatrix value = transpose ? A.getSparse() : A.getSparse().negate();
+                node.resolveSparse(value, transpose != A.isTransposed());
+                recycle(node, List.of(A), null);
+            });
+        }
+        if (FusedKernel.isElementwise(type))
+            return prepareFused(node);
+        if (type != ComputationNodeType.MULTIPLY)
+            throw new IllegalArgumentException("Illegal node: unknown computation node type");
+        if (children.size() != 2)
             throw new IllegalArgumentException("Illegal node: node must contain exactly two children");
 
-        // extract matrices and sizes
-        double[][] M1 = children.get(0).getMatrix();
-        double[][] M2 = (children.size() == 2) ? children.get(1).getMatrix() : null;
+        ComputationNode A = children.get(0);
+        ComputationNode B = children.get(1);
+        if (A.getCols() != B.getRows())
+            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
 
-        int aRows = M1.length;
-        int aCols = M1[0].length;
+        // sparse operands in the value frame (a lazily transposed one is converted CSC -> CSR), dense ones row-major
+        SparseMatrix sa = A.isSparse() ? valueOf(A) : null;
+        SparseMatrix sb = B.isSparse() ? valueOf(B) : null;
+        double[][] da = (sa == null) ? denseValueOf(A) : null;
+        double[][] db = (sb == null) ? denseValueOf(B) : null;
 
-        int bRows = (M2 != null) ? M2.length : 0;
-        int bCols = (M2 != null) ? M2[0].length : 0;
+        int rows = A.getRows();
+        int cols = B.getCols();
+        double[][] result = new double[rows][];
+        // work per output element, only non-zeros are multiplied
+        double costPerElement = (sa != null)
+                ? 2.0 * sa.averageRowNonZeros() * ((sb != null) ? sb.density() : 1.0)
+                : 2.0 * sb.nnz() / Math.max(cols, 1);
+        TaskGranularity g = chooseGranularity("sparse multiply", rows, cols, costPerElement, false);
+        int rowsPerTask = g.getRowsPerTask();
 
-        // check dimensions
-        if (type == ComputationNodeType.ADD && (aRows != bRows || aCols != bCols))
-            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
-        else if (type == ComputationNodeType.MULTIPLY && (aCols != bRows))
-            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+        List<Runnable> tasks = new ArrayList<>(g.getTaskCount());
+        for (int r = 0; r < rows; r += rowsPerTask) {
+            final int from = r;
+            final int to = Math.min(r + rowsPerTask, rows);
+            tasks.add(() -> {
+                for (int i = from; i < to; i++)
+                    result[i] = pool.acquireZeroed(cols);
+                if (sa != null && sb != null)
+                    sa.multiplySparse(sb, from, to, result);
+                else if (sa != null)
+                    sa.multiplyDense(db, from, to, result);
+                else
+                    SparseMatrix.denseMultiply(da, sb, from, to, result);
+            });
+        }
+        return new PreparedNode(tasks, () -> {
+            List<ComputationNode> operands = List.of(A, B);
+            if (sa != null && sb != null && node != outputRoot && resolveIfSparse(node, result, false)) {
+                recycle(node, operands, null);
+                return;
+            }
+            node.resolve(result);
+            recycle(node, operands, result);
+        });
+    }
+
+    /** return a sparse operand's value in CSR form
+     */
+    private SparseMatrix valueOf(ComputationNode operand) {
+        return operand.isTransposed() ? operand.getSparse().transpose() : operand.getSparse();
+    }
+
+    /** return a dense operand's value row-major, a transposed copy if it is stored transposed
+     * the node is left as it is: other steps may be reading its stored matrix, whose readers are counted on it
+     */
+    private static double[][] denseValueOf(ComputationNode operand) {
+        double[][] stored = operand.getStoredMatrix();
+        if (!operand.isTransposed())
+            return stored;
+        SharedMatrix value = new SharedMatrix(stored);
+        value.transpose();
+        return value.readRowMajor();
+    }
+
+    /** resolve node to the sparse form of result if it is sparse enough, handing the dense rows back to the pool
+     * returns false (and leaves node alone) when fill-in made the result too dense
+     */
+    private boolean resolveIfSparse(ComputationNode node, double[][] result, boolean transposed) {
+        if (!SparseMatrix.isWorthStoring(result))
+            return false;
+        node.resolveSparse(SparseMatrix.fromDense(result), transposed);
+        pool.release(result);
+        return true;
+    }
+
+    /** load the operands of a single operator node into left/right and return its tasks
+     */
+    private PreparedNode prepareOperator(ComputationNode node, SharedMatrix left, SharedMatrix right) {
+        checkOperator(node);
+        List<ComputationNode> children = node.getChildren();
+        ComputationNodeType type = node.getNodeType();
+
+        // extract operands and sizes, transposed operands are still stored untransposed
+        ComputationNode A = children.get(0);
+        ComputationNode B = (children.size() == 2) ? children.get(1) : null;
+
+        int aRows = A.getRows();
+        int aCols = A.getCols();
+        int bCols = (B != null) ? B.getCols() : 0;
+
+        // transpose is a flag flip on the stored matrix, no copy and no tasks
+        if (type == ComputationNodeType.TRANSPOSE) {
+            // the result is the operand's own matrix, which stays alive with it
+            return new PreparedNode(new ArrayList<>(), () -> {
+                double[][] stored = A.getStoredMatrix();
+                resolveAs(node, stored, !A.isTransposed());
+                recycle(node, List.of(A), stored);
+            });
+        }
 
         // load matrices and create tasks
         List<Runnable> tasks;
+        TiledMatMul tiled = null;
+        boolean resultTransposed = false;
+        double[][] readback = null;
         switch (type) {
             case ADD:
-                leftMatrix.loadRowMajor(M1);
-                rightMatrix.loadRowMajor(M2);
-                tasks = createAddTasks();
+            case SUBTRACT:
+                // two lazy transposes are added as stored and the sum stays lazy
+                resultTransposed = A.isTransposed() && B.isTransposed();
+                if (resultTransposed) {
+                    left.loadRowMajor(A.getStoredMatrix());
+                    right.loadRowMajor(B.getStoredMatrix());
+                }
+                else {
+                    loadOperand(left, A, VectorOrientation.ROW_MAJOR);
+                    loadOperand(right, B, VectorOrientation.ROW_MAJOR);
+                }
+                // right is only read from here on, its rows are read without locking
+                right.freeze();
+                readback = allocateReadback(left);
+                tasks = createCombineTasks(type == ComputationNodeType.ADD ? "add" : "subtract", left, right,
+                        type == ComputationNodeType.SUBTRACT, readback);
                 break;
             case MULTIPLY:
-                leftMatrix.loadRowMajor(M1);
-                rightMatrix.loadColumnMajor(M2);
-                tasks = createMultiplyTasks();
+                // large square-ish products are split recursively, the operands are read as stored
+                if (StrassenMatMul.worthRecursing(aRows, aCols, bCols, strassenThreshold))
+                    return prepareStrassen(node, A, B);
+                loadOperand(left, A, VectorOrientation.ROW_MAJOR);
+                loadOperand(right, B, VectorOrientation.COLUMN_MAJOR);
+                right.freeze();
+                // tiny operands keep the per-row tasks, anything larger goes through the tiled kernel
+                if (TiledMatMul.worthTiling(aRows, aCols, bCols)) {
+                    // the tiled kernel writes a separate result, so both operands are read-only
+                    left.freeze();
+                    tiled = new TiledMatMul(left, right, executor.hasAffinity());
+                    tasks = createTiledMultiplyTasks(tiled);
+                }
+                else {
+                    readback = allocateReadback(left);
+                    tasks = createMultiplyTasks(left, right, readback);
+                }
                 break;
             case NEGATE:
-                leftMatrix.loadRowMajor(M1);
-                rightMatrix.loadRowMajor(null);
-                tasks = createNegateTasks();
-                break;
-            case TRANSPOSE:
-                leftMatrix.loadColumnMajor(M1);
-                rightMatrix.loadRowMajor(null);
-                tasks = createTransposeTasks();
+                // negation does not care about the layout, a lazy transpose stays lazy
+                resultTransposed = A.isTransposed();
+                left.loadRowMajor(A.getStoredMatrix());
+                right.loadRowMajor(null);
+                readback = allocateReadback(left);
+                tasks = createNegateTasks(left, readback);
                 break;
             default:
                 throw new IllegalArgumentException("Illegal node: unknown computation node type");
         }
 
-        // submit tasks and resolve
-        executor.submitAll(tasks);
-        double[][] result = leftMatrix.readRowMajor();
-        node.resolve(result);
+        // the operands were copied into left/right, they are let go as soon as the tasks are submitted
+        long copies = ((long) aRows * aCols + ((type != ComputationNodeType.NEGATE) ? (long) B.getRows() * bCols : 0)) * Double.BYTES;
+        addLive(copies);
+
+        // the result is read back and the node resolved once every task is done
+        final TiledMatMul product = tiled;
+        final boolean transposed = resultTransposed;
+        final double[][] rows = readback;
+        return new PreparedNode(tasks, () -> {
+            double[][] result = (product != null) ? product.getResult() : (rows != null) ? rows : left.readRowMajor();
+            resolveAs(node, result, transposed);
+            left.release();
+            right.release();
+            addLive(-copies);
+            recycle(node, List.of(), result);
+        }, null, () -> releaseOperands(children, null));
+    }
+
+    /** with affinity, the rows a step computes in left are read back by the task that computed them, so they are
+     * allocated by the worker that owns their band, return where they go or null without affinity
+     */
+    private double[][] allocateReadback(SharedMatrix left) {
+        return (executor.hasAffinity() && left.length() > 0) ? new double[left.length()][] : null;
+    }
+
+    /** check that node is an operator with the right number of operands of matching dimensions
+     */
+    private void checkOperator(ComputationNode node) {
+        // checks
+        if (node == null || node.getNodeType() == ComputationNodeType.MATRIX)
+            throw new IllegalArgumentException("Illegal node: node must not be null or matrix");
+
+        List<ComputationNode> children = node.getChildren();
+        if (children == null || children.isEmpty())
+            throw new IllegalArgumentException("Illegal node: node must contain at least one child");
+
+        ComputationNodeType type = node.getNodeType();
+        if ((type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE) && children.size() != 1)
+            throw new IllegalArgumentException("Illegal node: node must contain exactly one child");
+        if ((type == ComputationNodeType.ADD || type == ComputationNodeType.SUBTRACT || type == ComputationNodeType.MULTIPLY) && children.size() != 2)
+            throw new IllegalArgumentException("Illegal node: node must contain exactly two children");
+
+        ComputationNode A = children.get(0);
+        ComputationNode B = (children.size() == 2) ? children.get(1) : null;
+
+        int aRows = A.getRows();
+        int aCols = A.getCols();
+
+        int bRows = (B != null) ? B.getRows() : 0;
+        int bCols = (B != null) ? B.getCols() : 0;
+
+        // check dimensions
+        if ((type == ComputationNodeType.ADD || type == ComputationNodeType.SUBTRACT) && (aRows != bRows || aCols != bCols))
+            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+        else if (type == ComputationNodeType.MULTIPLY && (aCols != bRows))
+            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+    }
+
+    /** prepare A × B as three phases: the right-hand sums of the leaves, the leaf products and the output blocks
+     */
+    private PreparedNode prepareStrassen(ComputationNode node, ComputationNode A, ComputationNode B) {
+        StrassenMatMul mul = new StrassenMatMul(A.getStoredMatrix(), A.isTransposed(),
+                B.getStoredMatrix(), B.isTransposed(), strassenThreshold, pool);
+
+        PreparedNode combine = new PreparedNode(createStrassenCombineTasks(mul), () -> {
+            double[][] result = mul.getResult();
+            mul.release();
+            node.resolve(result);
+            recycle(node, List.of(A, B), result);
+        });
+        PreparedNode multiply = new PreparedNode(createStrassenLeafTasks(mul), () -> {}, combine);
+        return new PreparedNode(createStrassenFormTasks(mul), () -> {}, multiply);
+    }
+
+    /** load a resolved operand so that its vectors are rows (ROW_MAJOR) or columns (COLUMN_MAJOR) of its value
+     * a lazily transposed operand is loaded as stored and its layout is swapped instead of copied transposed
+     */
+    private void loadOperand(SharedMatrix target, ComputationNode operand, VectorOrientation wanted) {
+        double[][] stored = operand.getStoredMatrix();
+        if (!operand.isTransposed()) {
+            if (wanted == VectorOrientation.ROW_MAJOR)
+                target.loadRowMajor(stored);
+            else
+                target.loadColumnMajor(stored);
+        }
+        else {
+            // rows of the stored matrix are the columns of the value and vice versa
+            if (wanted == VectorOrientation.ROW_MAJOR)
+                target.loadColumnMajor(stored);
+            else
+                target.loadRowMajor(stored);
+            target.transpose();
+        }
+    }
+
+    /** describe the prepared step rooted at node for its metrics, from the shapes of its operands
+     * flops count the element operations of the classic algorithm, bytes every operand read once and the result
+     * written once, a sparse operand only its non-zeros
+     */
+    NodeMetrics measure(ComputationNode node, int id, int[] operandSteps) {
+        ComputationNodeType type = node.getNodeType();
+        List<ComputationNode> operands = new ArrayList<>();
+        if (FusedKernel.isElementwise(type))
+            collectFrontier(node, operands);
+        else
+            operands.addAll(node.getChildren());
+
+        int rows = node.getRows();
+        int cols = node.getCols();
+        long elements = (long) rows * cols;
+        int region = Math.max(FusedKernel.regionSize(node), 1);
+        long bytes = elements * Double.BYTES;
+        for (ComputationNode operand : operands) {
+            bytes += operand.isSparse()
+                    ? (long) operand.getSparse().nnz() * (Double.BYTES + Integer.BYTES)
+                    : (long) operand.getRows() * operand.getCols() * Double.BYTES;
+        }
+
+        String operator;
+        long flops;
+        if (type == ComputationNodeType.MULTIPLY) {
+            ComputationNode A = operands.get(0);
+            ComputationNode B = operands.get(1);
+            double density = (A.isSparse() ? A.getSparse().density() : 1.0) * (B.isSparse() ? B.getSparse().density() : 1.0);
+            flops = (long) (2.0 * elements * A.getCols() * density);
+            operator = (!A.isSparse() && !B.isSparse() && StrassenMatMul.worthRecursing(rows, A.getCols(), cols, strassenThreshold))
+                    ? "strassen multiply" : "multiply";
+        }
+        else if (type == ComputationNodeType.TRANSPOSE && region == 1) {
+            // a flag flip, nothing is read or written
+            flops = 0;
+            bytes = 0;
+            operator = "transpose";
+        }
+        else {
+            flops = elements * region;
+            operator = (region > 1) ? "fused" : type.name().toLowerCase();
+        }
+        if (hasSparseOperand(node))
+            operator = "sparse " + operator;
+        if (outOfCore.contains(node))
+            operator = "out-of-core " + operator;
+
+        SubtreeKey key = (subexpressions != null) ? subexpressions.keyOf(node) : null;
+        return new NodeMetrics(id, operandSteps, operator, (key != null) ? key.toString() : null, region,
+                rows, cols, flops, bytes);
+    }
+
+    /** resolve node to matrix, keeping the transpose lazy if requested
+     */
+    private void resolveAs(ComputationNode node, double[][] matrix, boolean transposed) {
+        if (transposed)
+            node.resolveTransposed(matrix);
+        else
+            node.resolve(matrix);
+    }
+
+    /** keep node's result in the result cache or mark it as an intermediate read by node's parents, and count
+     * the read of every operand, see releaseOperands()
+     * a result that is an operand's own matrix (a lazy transpose) takes over the operand's readers
+     */
+    private void recycle(ComputationNode node, List<ComputationNode> operands, Object result) {
+        boolean aliased = false;
+        for (ComputationNode operand : operands)
+            aliased |= !operand.isSparse() && storageOf(operand) == result;
+
+        boolean cached = remember(node);
+        if (cached) {
+            // the cache owns the matrix from now on
+            if (result != null && intermediates.remove(result) != null)
+                addLive(-heapBytes(result));
+        }
+        else if (result != null) {
+            int readers = consumers.getOrDefault(node, 0);
+            if (!aliased)
+                track(result, readers);
+            else if (intermediates.containsKey(result))
+                intermediates.get(result).addAndGet(readers);
+        }
+        if (budget != null)
+            chargeResult(node, result, cached || aliased);
+
+        releaseOperands(operands, result);
+    }
+
+    /** count a read of every operand: results nobody reads anymore go back to the pool (or their files are
+     * deleted) and operand nodes no parent reads anymore drop their value
+     * called once the operands are copied (see PreparedNode.operandsLoaded()) or, when the tasks read them
+     * in place, once the step is resolved; sparse operands are not pooled
+     */
+    private void releaseOperands(List<ComputationNode> operands, Object result) {
+        for (ComputationNode operand : operands) {
+            if (!operand.isSparse()) {
+                Object stored = storageOf(operand);
+                AtomicInteger reads = intermediates.get(stored);
+                // the root's result has no readers and is kept until materialized
+                if (reads != null && reads.decrementAndGet() <= 0 && stored != result && intermediates.remove(stored, reads))
+                    release(stored);
+            }
+            AtomicInteger parents = unread.get(operand);
+            if (parents != null && parents.decrementAndGet() == 0)
+                operand.discard();
+        }
+    }
+
+    /** mark stored as held by the run for readers more reads
+     */
+    private void track(Object stored, int readers) {
+        intermediates.computeIfAbsent(stored, k -> {
+            addLive(heapBytes(stored));
+            return new AtomicInteger();
+        }).addAndGet(readers);
+    }
+
+    /** move the budget reserved for node to its resident result, or refund it if there is none to charge
+     */
+    private void chargeResult(ComputationNode node, Object result, boolean notOwned) {
+        Long bytes = reserved.remove(node);
+        if (bytes == null)
+            return;
+        if (result instanceof double[][] && !notOwned)
+            charged.put(result, bytes);
+        else
+            budget.release(bytes);
+    }
+
+    /** return what node's value is stored in, its file if it is spilled
+     */
+    private static Object storageOf(ComputationNode node) {
+        return node.isSpilled() ? node.getSpilled() : node.getStoredMatrix();
+    }
+
+    /** free a result nobody reads anymore
+     */
+    private void release(Object stored) {
+        if (stored instanceof TiledFileMatrix) {
+            ((TiledFileMatrix) stored).release();
+            return;
+        }
+        addLive(-heapBytes(stored));
+        Long bytes = charged.remove(stored);
+        if (bytes != null)
+            budget.release(bytes);
+        if (!inputs.remove(stored))
+            pool.release((double[][]) stored);
+    }
+
+    /** keep the result of a resolved node in the result cache, return true if it was kept
+     */
+    private boolean remember(ComputationNode node) {
+        if (resultCache == null || subexpressions == null)
+            return false;
+        SubtreeKey key = subexpressions.keyOf(node);
+        return key != null && resultCache.put(key, node);
+    }
+
+    /** materialize a lazily transposed result through the shared matrix read path
+     */
+    private void materialize(ComputationNode node) {
+        // a spilled result is read band by band by whoever writes it out, see TiledFileMatrix.rowReader
+        if (node.isTransposed() && !node.isSpilled()) {
+            double[][] stored = node.getStoredMatrix();
+            SharedMatrix output = new SharedMatrix(stored);
+            output.transpose();
+            node.resolve(output.readRowMajor());
+            if (intermediates.remove(stored) != null)
+                release(stored);
+        }
     }
 
     /** return tasks that perform row-wise addition
      */
     public List<Runnable> createAddTasks() {
-        int rows = leftMatrix.length();
-        List<Runnable> tasks = new ArrayList<>(rows);
-        for (int i = 0; i < rows; i++) {
-            final int row = i;
-            tasks.add(() -> {
-                SharedVector M1Row = leftMatrix.get(row);
-                SharedVector M2Row = rightMatrix.get(row);
-                M1Row.add(M2Row);
-            });
+        return createAddTasks(leftMatrix, rightMatrix);
+    }
+
+    /** return tasks that add right into left, a chunk of rows (or of one row) per task
+     */
+    public List<Runnable> createAddTasks(SharedMatrix left, SharedMatrix right) {
+        return createCombineTasks("add", left, right, false, null);
+    }
+
+    /** return tasks that perform row-wise subtraction
+     */
+    public List<Runnable> createSubtractTasks() {
+        return createSubtractTasks(leftMatrix, rightMatrix);
+    }
+
+    /** return tasks that subtract right from left, a chunk of rows (or of one row) per task
+     */
+    public List<Runnable> createSubtractTasks(SharedMatrix left, SharedMatrix right) {
+        return createCombineTasks("subtract", left, right, true, null);
+    }
+
+    /** split left ± right by the cost model, short and wide operands are split inside rows too
+     * if readback is not null, every task copies the rows it computed into it (whole rows only, see chooseGranularity)
+     */
+    private List<Runnable> createCombineTasks(String operator, SharedMatrix left, SharedMatrix right, boolean subtract,
+                                              double[][] readback) {
+        int rows = left.length();
+        int cols = (rows > 0) ? left.get(0).length() : 0;
+        TaskGranularity g = chooseGranularity(operator, rows, cols, 1, true);
+        int rowsPerTask = g.getRowsPerTask();
+        int colsPerTask = g.getColsPerTask();
+
+        List<Runnable> tasks = new ArrayList<>(g.getTaskCount());
+        for (int r = 0; r < rows; r += rowsPerTask) {
+            final int rowStart = r;
+            final int rowEnd = Math.min(r + rowsPerTask, rows);
+            if (colsPerTask >= cols) {
+                tasks.add(() -> {
+                    for (int row = rowStart; row < rowEnd; row++) {
+                        if (subtract)
+                            left.get(row).subtract(right.get(row));
+                        else
+                            left.get(row).add(right.get(row));
+                    }
+                    if (readback != null)
+                        left.readRows(rowStart, rowEnd, readback);
+                });
+                continue;
+            }
+            for (int c = 0; c < cols; c += colsPerTask) {
+                final int colStart = c;
+                final int colEnd = Math.min(c + colsPerTask, cols);
+                tasks.add(() -> {
+                    for (int row = rowStart; row < rowEnd; row++) {
+                        if (subtract)
+                            left.get(row).subtract(right.get(row), colStart, colEnd);
+                        else
+                            left.get(row).add(right.get(row), colStart, colEnd);
+                    }
+                });
+            }
         }
         return tasks;
     }
@@ -136,51 +1019,230 @@ public class LinearAlgebraEngine {
     /** return tasks that perform row × matrix multiplication
      */
     public List<Runnable> createMultiplyTasks() {
-        int rows = leftMatrix.length();
-        List<Runnable> tasks = new ArrayList<>(rows);
-        for (int i = 0; i < rows; i++) {
-            final int row = i;
+        return createMultiplyTasks(leftMatrix, rightMatrix);
+    }
+
+    /** return tasks that multiply a chunk of rows of left by right
+     */
+    public List<Runnable> createMultiplyTasks(SharedMatrix left, SharedMatrix right) {
+        return createMultiplyTasks(left, right, null);
+    }
+
+    /** as above, if readback is not null every task copies the rows it computed into it
+     */
+    private List<Runnable> createMultiplyTasks(SharedMatrix left, SharedMatrix right, double[][] readback) {
+        int rows = left.length();
+        int inner = (rows > 0) ? left.get(0).length() : 0;
+        // every output element costs a dot product over the inner dimension
+        TaskGranularity g = chooseGranularity("multiply", rows, right.length(), 2.0 * inner, false);
+        int rowsPerTask = g.getRowsPerTask();
+
+        List<Runnable> tasks = new ArrayList<>(g.getTaskCount());
+        for (int r = 0; r < rows; r += rowsPerTask) {
+            final int rowStart = r;
+            final int rowEnd = Math.min(r + rowsPerTask, rows);
             tasks.add(() -> {
-                SharedVector M1Row = leftMatrix.get(row);
-                M1Row.vecMatMul(rightMatrix);
+                for (int row = rowStart; row < rowEnd; row++)
+                    left.get(row).vecMatMul(right);
+                if (readback != null)
+                    left.readRows(rowStart, rowEnd, readback);
             });
         }
         return tasks;
     }
 
-    /** return tasks that negate rows
+    /** return tasks that each compute one block of output tiles
      */
-    public List<Runnable> createNegateTasks() {
-        int rows = leftMatrix.length();
-        List<Runnable> tasks = new ArrayList<>(rows);
-        for (int i = 0; i < rows; i++) {
-            final int row = i;
+    public List<Runnable> createTiledMultiplyTasks(TiledMatMul mul) {
+        int rows = mul.rows();
+        int cols = mul.cols();
+        int blockRows = mul.blockRows();
+        int blockCols = mul.blockCols();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int r = 0; r < rows; r += blockRows) {
+            for (int c = 0; c < cols; c += blockCols) {
+                final int rowStart = r;
+                final int rowEnd = Math.min(r + blockRows, rows);
+                final int colStart = c;
+                final int colEnd = Math.min(c + blockCols, cols);
+                tasks.add(() -> mul.multiplyBlock(rowStart, rowEnd, colStart, colEnd));
+            }
+        }
+        return tasks;
+    }
+
+    /** return tasks that each build the right-hand sum of one Strassen leaf
+     */
+    public List<Runnable> createStrassenFormTasks(StrassenMatMul mul) {
+        List<Runnable> tasks = new ArrayList<>(mul.leafCount());
+        for (int leaf = 0; leaf < mul.leafCount(); leaf++) {
+            final int index = leaf;
+            tasks.add(() -> mul.formRight(index));
+        }
+        return tasks;
+    }
+
+    /** return tasks that each compute a chunk of rows of one Strassen leaf product
+     */
+    public List<Runnable> createStrassenLeafTasks(StrassenMatMul mul) {
+        int size = mul.leafSize();
+        // the leaves are stacked as one tall product, a chunk never crosses a leaf
+        TaskGranularity g = chooseGranularity("strassen multiply", mul.leafCount() * size, size, 2.0 * size, false);
+        int rowsPerTask = Math.min(g.getRowsPerTask(), size);
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (int leaf = 0; leaf < mul.leafCount(); leaf++) {
+            for (int r = 0; r < size; r += rowsPerTask) {
+                final int index = leaf;
+                final int from = r;
+                final int to = Math.min(r + rowsPerTask, size);
+                tasks.add(() -> mul.multiplyLeaf(index, from, to));
+            }
+        }
+        return tasks;
+    }
+
+    /** return tasks that each add the leaf products into a chunk of rows of one Strassen output block
+     */
+    public List<Runnable> createStrassenCombineTasks(StrassenMatMul mul) {
+        int size = mul.leafSize();
+        TaskGranularity g = chooseGranularity("strassen combine", mul.blockCount() * size, size, mul.averageBlockTerms(), false);
+        int rowsPerTask = Math.min(g.getRowsPerTask(), size);
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (int block = 0; block < mul.blockCount(); block++) {
+            for (int r = 0; r < size; r += rowsPerTask) {
+                final int index = block;
+                final int from = r;
+                final int to = Math.min(r + rowsPerTask, size);
+                tasks.add(() -> mul.combineBlock(index, from, to));
+            }
+        }
+        return tasks;
+    }
+
+    /** return tasks that each compute a chunk of rows of a fused region
+     */
+    public List<Runnable> createFusedTasks(FusedKernel kernel, double[][] result) {
+        return createFusedTasks(kernel, result, null);
+    }
+
+    /** return tasks that each compute a chunk of rows of a fused region and pass the rows to sink (if not null)
+     */
+    public List<Runnable> createFusedTasks(FusedKernel kernel, double[][] result, RowSink sink) {
+        int rows = kernel.rows();
+        // every output element reads one element of each term
+        TaskGranularity g = chooseGranularity("fused", rows, kernel.cols(), kernel.termCount(), false);
+        int rowsPerTask = g.getRowsPerTask();
+
+        List<Runnable> tasks = new ArrayList<>(g.getTaskCount());
+        for (int r = 0; r < rows; r += rowsPerTask) {
+            final int from = r;
+            final int to = Math.min(r + rowsPerTask, rows);
             tasks.add(() -> {
-                SharedVector M1Row = leftMatrix.get(row);
-                M1Row.negate();
+                kernel.evalRows(from, to, result);
+                if (sink != null) {
+                    for (int row = from; row < to; row++)
+                        sink.rowReady(row, result[row]);
+                }
             });
         }
         return tasks;
     }
 
-    /** return tasks that transpose rows
+    /** return tasks that negate rows
+     */
+    public List<Runnable> createNegateTasks() {
+        return createNegateTasks(leftMatrix);
+    }
+
+    /** return tasks that negate a chunk of rows (or of one row) of left
+     */
+    public List<Runnable> createNegateTasks(SharedMatrix left) {
+        return createNegateTasks(left, null);
+    }
+
+    /** as above, if readback is not null every task copies the rows it computed into it (whole rows only)
+     */
+    private List<Runnable> createNegateTasks(SharedMatrix left, double[][] readback) {
+        int rows = left.length();
+        int cols = (rows > 0) ? left.get(0).length() : 0;
+        TaskGranularity g = chooseGranularity("negate", rows, cols, 1, true);
+        int rowsPerTask = g.getRowsPerTask();
+        int colsPerTask = g.getColsPerTask();
+
+        List<Runnable> tasks = new ArrayList<>(g.getTaskCount());
+        for (int r = 0; r < rows; r += rowsPerTask) {
+            for (int c = 0; c < cols; c += colsPerTask) {
+                final int rowStart = r;
+                final int rowEnd = Math.min(r + rowsPerTask, rows);
+                final int colStart = c;
+                final int colEnd = Math.min(c + colsPerTask, cols);
+                tasks.add(() -> {
+                    for (int row = rowStart; row < rowEnd; row++)
+                        left.get(row).negate(colStart, colEnd);
+                    if (readback != null)
+                        left.readRows(rowStart, rowEnd, readback);
+                });
+            }
+        }
+        return tasks;
+    }
+
+    /** return tasks that transpose a chunk of vectors
      */
     public List<Runnable> createTransposeTasks() {
         int vectors = leftMatrix.length();
-        List<Runnable> tasks = new ArrayList<>(vectors);
-        for (int i = 0; i < vectors; i++) {
-            final int index = i;
+        // a transpose only flips the orientation flag, one unit of work per vector
+        TaskGranularity g = chooseGranularity("transpose", vectors, 1, 1, false);
+        int vectorsPerTask = g.getRowsPerTask();
+
+        List<Runnable> tasks = new ArrayList<>(g.getTaskCount());
+        for (int v = 0; v < vectors; v += vectorsPerTask) {
+            final int from = v;
+            final int to = Math.min(v + vectorsPerTask, vectors);
             tasks.add(() -> {
-                SharedVector v = leftMatrix.get(index);
-                v.transpose();
+                for (int index = from; index < to; index++)
+                    leftMatrix.get(index).transpose();
             });
         }
         return tasks;
     }
 
+    /** choose the granularity of an operator for this engine's worker count and remember it for the report
+     * with affinity rows are never split, a task owns whole rows so that their band stays on one worker
+     */
+    private TaskGranularity chooseGranularity(String operator, int rows, int cols, double costPerElement, boolean splitColumns) {
+        TaskGranularity g = TaskGranularity.choose(operator, rows, cols, costPerElement,
+                executor.getWorkerCount(), splitColumns && !executor.hasAffinity());
+        granularity.put(operator, g);
+        return g;
+    }
+
+    /** return the granularity last chosen for every operator, one per line
+     */
+    public String getGranularityReport() {
+        StringBuilder sb = new StringBuilder();
+        for (TaskGranularity g : new TreeMap<>(granularity).values())
+            sb.append(g).append('\n');
+        return sb.toString();
+    }
+
+    /** return a snapshot of every worker's counters
+     */
+    public List<WorkerMetrics> getWorkerMetrics() {
+        return executor.getWorkerMetrics();
+    }
+
     /** return summary of worker activity
      */
     public String getWorkerReport() {
         return executor.getWorkerReport();
     }
+
+    /** return hit/miss statistics of the buffer pool recycling intermediate matrices
+     */
+    public String getPoolReport() {
+        return pool.toString();
+    }
 }
@@ -3,27 +3,161 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
+import java.util.function.Supplier;
 
+import memory.MemoryBudget;
+import memory.TiledFileMatrix;
+import memory.VectorKernels;
 import parser.*;
 
 public class Main {
+    private static final String USAGE = "usage: numThreads input output [--work-stealing] [--virtual-threads] [--affinity]"
+            + " [--compact] [--fast-doubles] [--strassen=N] [--metrics=path] [--memory-budget=SIZE] [--spill-dir=dir]"
+            + ", or --serve numThreads (--spool dir | --port port) [options], or --convert input.json output.bin";
+
     public static void main(String[] args) throws IOException {
+        // which kernels run, a jar started without the vector module silently falls back to the scalar ones
+        // logged at DEBUG (java.util.logging FINE for spl.lae.Main) so that a normal run prints nothing
+        System.getLogger(Main.class.getName()).log(System.Logger.Level.DEBUG, VectorKernels::describe);
+
+        // long-running mode, see JobServer
+        if (args.length > 0 && args[0].equals("--serve")) {
+            JobServer.main(args);
+            return;
+        }
+        // one-off conversion of a JSON input into the binary container, e.g. to reuse a large input across runs
+        if (args.length > 0 && args[0].equals("--convert")) {
+            if (args.length != 3)
+                throw new IllegalArgumentException(USAGE);
+            try {
+                convert(args[1], args[2]);
+            } catch (ParseException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+            return;
+        }
+
+        if (args.length < 3)
+            throw new IllegalArgumentException(USAGE);
         final int numThreads = Integer.parseInt(args[0].trim());
         final String inputPath = args[1];
         final String outputPath = args[2];
+        boolean workStealing = false;
+        boolean virtualThreads = false;
+        boolean affinity = false;
+        boolean compact = false;
+        boolean fastDoubles = false;
+        int strassenThreshold = -1; // engine default
+        String metricsPath = null;
+        long memoryBudget = -1; // no out-of-core mode
+        String spillDir = System.getProperty("java.io.tmpdir");
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--work-stealing": workStealing = true; break;
+                case "--virtual-threads": virtualThreads = true; break;
+                case "--affinity": affinity = true; break;
+                case "--compact": compact = true; break;
+                case "--fast-doubles": fastDoubles = true; break;
+                default:
+                    // --strassen=N sets the recursive multiply threshold, 0 turns it off
+                    if (args[i].startsWith("--strassen="))
+                        strassenThreshold = Integer.parseInt(args[i].substring("--strassen=".length()).trim());
+                    // --metrics=path writes the run's per-node and per-worker metrics as JSON
+                    else if (args[i].startsWith("--metrics="))
+                        metricsPath = args[i].substring("--metrics=".length());
+                    // --memory-budget=SIZE (e.g. 512M) keeps at most SIZE of matrices on the heap, the rest in files under --spill-dir
+                    else if (args[i].startsWith("--memory-budget="))
+                        memoryBudget = MemoryBudget.parseSize(args[i].substring("--memory-budget=".length()));
+                    else if (args[i].startsWith("--spill-dir="))
+                        spillDir = args[i].substring("--spill-dir=".length());
+                    // a mistyped option (e.g. --strasen=8) would otherwise be dropped without a word
+                    else
+                        throw new IllegalArgumentException("unknown option " + args[i] + ", " + USAGE);
+                    break;
+            }
+        }
 
+        final boolean stealing = workStealing;
+        final boolean virtual = virtualThreads;
+        final boolean pinned = affinity;
+        final int threshold = strassenThreshold;
+        final MemoryBudget budget = (memoryBudget >= 0)
+                ? new MemoryBudget(memoryBudget, Paths.get(spillDir), MemoryBudget.DEFAULT_TILE) : null;
+        runJob(() -> {
+            LinearAlgebraEngine lae = new LinearAlgebraEngine(numThreads, stealing, virtual, pinned);
+            if (threshold >= 0)
+                lae.setStrassenThreshold(threshold);
+            lae.setMemoryBudget(budget);
+            return lae;
+        }, inputPath, outputPath, compact, fastDoubles, metricsPath);
+    }
+
+    /**
+     * Evaluates the tree in inputPath and writes the result, or the error message, to outputPath.
+     * The engine is created once the input is parsed and shut down at the end.
+     * The run's metrics are written to metricsPath as JSON, if it is not null, also when the run failed.
+     */
+    static void runJob(Supplier<LinearAlgebraEngine> engines, String inputPath, String outputPath,
+                       boolean compact, boolean fastDoubles, String metricsPath) throws IOException {
+        ResultStream stream = null;
+        LinearAlgebraEngine lae = null;
         try {
-            InputParser inputParser = new InputParser();
-            ComputationNode root = inputParser.parse(inputPath);
+            // the file extension picks the format, ".bin" is the binary container, anything else JSON
+            ComputationNode root = BinaryFormat.isBinary(inputPath)
+                    ? new BinaryInputParser().parse(inputPath)
+                    : new InputParser().parse(inputPath);
 
-            LinearAlgebraEngine lae = new LinearAlgebraEngine(numThreads);
-            ComputationNode resolved = lae.run(root);
-            double[][] matrix = resolved.getMatrix();
+            // JSON results are streamed, rows of the final node are written as soon as they are computed
+            if (!BinaryFormat.isBinary(outputPath))
+                stream = new ResultStream(outputPath, compact, fastDoubles);
 
-            OutputWriter.write(matrix, outputPath);
+            lae = engines.get();
+            ComputationNode resolved = lae.run(root, stream);
+            // a result spilled by an out-of-core run is written straight from its file
+            if (resolved.isSpilled())
+                writeSpilled(resolved, stream, outputPath);
+            else if (stream != null)
+                stream.finish(resolved.getMatrix());
+            else
+                BinaryOutputWriter.write(resolved.getMatrix(), outputPath);
         } catch (Exception e) {
-            OutputWriter.write(e.getMessage(), outputPath);
+            if (stream != null)
+                stream.close();
+            if (BinaryFormat.isBinary(outputPath))
+                BinaryOutputWriter.write(e.getMessage(), outputPath);
+            else
+                OutputWriter.write(e.getMessage(), outputPath);
+        } finally {
+            if (lae != null) {
+                lae.shutdown();
+                if (metricsPath != null && lae.getMetrics() != null)
+                    lae.getMetrics().writeJson(metricsPath);
+            }
         }
+    }
+
+    /**
+     * Parses the JSON tree in inputPath and writes it to outputPath in the binary format (see BinaryFormat),
+     * the result of running either file is the same.
+     */
+    static void convert(String inputPath, String outputPath) throws IOException, ParseException {
+        if (BinaryFormat.isBinary(inputPath) || !BinaryFormat.isBinary(outputPath))
+            throw new IllegalArgumentException("--convert reads a JSON input and writes a " + BinaryFormat.EXTENSION + " file");
+        BinaryOutputWriter.writeTree(new InputParser().parse(inputPath), outputPath);
+    }
 
+    /**
+     * Writes a result left in a file by an out-of-core run, one band of rows at a time, and deletes the file.
+     */
+    private static void writeSpilled(ComputationNode resolved, ResultStream stream, String outputPath) throws IOException {
+        TiledFileMatrix spilled = resolved.getSpilled();
+        try {
+            if (stream != null)
+                stream.finish(resolved.getRows(), spilled.rowReader(resolved.isTransposed()));
+            else
+                BinaryOutputWriter.write(resolved.getRows(), resolved.getCols(), spilled.rowReader(resolved.isTransposed()), outputPath);
+        } finally {
+            spilled.release();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,146 @@
+package spl.lae;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import scheduling.WorkerMetrics;
+
+/**
+ * JFR events of the engine, recorded along with the JVM's own events when flight recording is on,
+ * e.g. java -XX:StartFlightRecording:filename=lae.jfr -jar ...
+ * A node event spans a step from the submission of its first phase to its resolution (its preparation
+ * time is a field), a worker event is a snapshot of a worker's
+ * counters taken at the end of every run. Committing an event costs next to nothing while no recording runs.
+ */
+final class MetricsEvents {
+
+    private MetricsEvents() {}
+
+    @Name("spl.lae.Node")
+    @Label("Node")
+    @Category("Linear Algebra Engine")
+    @Description("A step of a run, from submission to resolution")
+    @StackTrace(false)
+    static final class NodeEvent extends Event {
+        @Label("Step")
+        int step;
+
+        @Label("Operator")
+        String operator;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int cols;
+
+        @Label("Load Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long loadTime;
+
+        @Label("Compute Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long computeTime;
+
+        @Label("Task Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long taskTime;
+
+        @Label("Readback Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long readbackTime;
+
+        @Label("Floating Point Operations")
+        long flops;
+
+        @Label("Bytes Moved")
+        @DataAmount
+        long bytes;
+
+        @Label("Tasks")
+        int tasks;
+    }
+
+    @Name("spl.lae.Worker")
+    @Label("Worker")
+    @Category("Linear Algebra Engine")
+    @Description("Counters of an executor worker, cumulative since the executor started")
+    @StackTrace(false)
+    static final class WorkerEvent extends Event {
+        @Label("Worker")
+        int worker;
+
+        @Label("Fatigue")
+        double fatigue;
+
+        @Label("Busy Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long busyTime;
+
+        @Label("Idle Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long idleTime;
+
+        @Label("Utilization")
+        @Percentage
+        double utilization;
+
+        @Label("Tasks")
+        long tasks;
+
+        @Label("Queue Wait p50")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWaitP50;
+
+        @Label("Queue Wait p99")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWaitP99;
+
+        @Label("Queue Wait Max")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWaitMax;
+    }
+
+    /** commit the event of a step begun with begin(), filled from its metrics
+     */
+    static void commitNode(NodeEvent event, NodeMetrics metrics) {
+        if (!event.shouldCommit())
+            return;
+        event.step = metrics.getId();
+        event.operator = metrics.getOperator();
+        event.rows = metrics.getRows();
+        event.cols = metrics.getCols();
+        event.loadTime = metrics.getLoadNanos();
+        event.computeTime = metrics.getComputeNanos();
+        event.taskTime = metrics.getTaskNanos();
+        event.readbackTime = metrics.getReadbackNanos();
+        event.flops = metrics.getFlops();
+        event.bytes = metrics.getBytes();
+        event.tasks = metrics.getTasks();
+        event.commit();
+    }
+
+    /** commit a snapshot event for a worker
+     */
+    static void commitWorker(WorkerMetrics metrics) {
+        WorkerEvent event = new WorkerEvent();
+        if (!event.isEnabled())
+            return;
+        event.worker = metrics.getWorkerId();
+        event.fatigue = metrics.getFatigue();
+        event.busyTime = metrics.getBusyNanos();
+        event.idleTime = metrics.getIdleNanos();
+        event.utilization = metrics.getUtilization();
+        event.tasks = metrics.getTasks();
+        event.queueWaitP50 = metrics.getQueueWait().getP50Nanos();
+        event.queueWaitP99 = metrics.getQueueWait().getP99Nanos();
+        event.queueWaitMax = metrics.getQueueWait().getMaxNanos();
+        event.commit();
+    }
+}
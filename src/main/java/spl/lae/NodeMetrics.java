@@ -0,0 +1,152 @@
+package spl.lae;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What one step of a run (an operator node, or the root of a fused element-wise region) cost.
+ * Times are in nanoseconds:
+ * - load: preparing the step on the dispatcher, i.e. loading operands into shared matrices and creating tasks
+ * - compute: wall time from submitting a phase's tasks until the last one finished, summed over phases
+ * - task: time the workers spent running the step's tasks, summed over tasks (compute × parallelism)
+ * - readback: reading the result back and resolving the node once the tasks are done
+ * flops and bytes are estimated from the operand shapes before the step runs: the element operations of
+ * the classic algorithm (also for Strassen) and the compulsory traffic, i.e. every operand read once and
+ * the result written once, a sparse operand counting its non-zeros only.
+ * operands lists the ids of the steps whose results this step reads, so costs can be summed per subtree.
+ * Every step is also recorded as a JFR event, see MetricsEvents.
+ */
+public class NodeMetrics {
+
+    /// ===== fields =====
+    private final int id;            // registration order, the root is 0
+    private final int[] operands;    // ids of the operand steps
+    private final String operator;
+    private final String key;        // SubtreeKey of the step, or null
+    private final int nodes;         // operator nodes covered, more than one for a fused region
+    private final int rows;
+    private final int cols;
+    private final long flops;
+    private final long bytes;
+    private final AtomicLong loadNanos = new AtomicLong(0);
+    private final AtomicLong computeNanos = new AtomicLong(0);
+    private final AtomicLong taskNanos = new AtomicLong(0);
+    private final AtomicLong readbackNanos = new AtomicLong(0);
+    private final AtomicInteger tasks = new AtomicInteger(0);
+    private final AtomicInteger phases = new AtomicInteger(0);
+    private final MetricsEvents.NodeEvent event = new MetricsEvents.NodeEvent(); // from submission to resolution
+
+    /// ===== constructor =====
+    NodeMetrics(int id, int[] operands, String operator, String key, int nodes, int rows, int cols, long flops, long bytes) {
+        this.id = id;
+        this.operands = operands;
+        this.operator = operator;
+        this.key = key;
+        this.nodes = nodes;
+        this.rows = rows;
+        this.cols = cols;
+        this.flops = flops;
+        this.bytes = bytes;
+        event.begin();
+    }
+
+    /// ===== methods =====
+    void addLoad(long nanos) {
+        loadNanos.addAndGet(nanos);
+    }
+
+    /** account one phase of tasks count that took nanos from submission to completion
+     */
+    void addPhase(int count, long nanos) {
+        phases.incrementAndGet();
+        tasks.addAndGet(count);
+        computeNanos.addAndGet(nanos);
+    }
+
+    void addTask(long nanos) {
+        taskNanos.addAndGet(nanos);
+    }
+
+    void addReadback(long nanos) {
+        readbackNanos.addAndGet(nanos);
+    }
+
+    /** end the step's JFR event, once its last phase is done
+     */
+    void commit() {
+        MetricsEvents.commitNode(event, this);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int[] getOperands() {
+        return operands.clone();
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public long getFlops() {
+        return flops;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLoadNanos() {
+        return loadNanos.get();
+    }
+
+    public long getComputeNanos() {
+        return computeNanos.get();
+    }
+
+    public long getTaskNanos() {
+        return taskNanos.get();
+    }
+
+    public long getReadbackNanos() {
+        return readbackNanos.get();
+    }
+
+    /** return load + compute + readback, the time this step was on the critical path of its subtree
+     */
+    public long getTotalNanos() {
+        return getLoadNanos() + getComputeNanos() + getReadbackNanos();
+    }
+
+    public int getTasks() {
+        return tasks.get();
+    }
+
+    public int getPhases() {
+        return phases.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d %s %dx%d: load=%.3f ms, compute=%.3f ms, readback=%.3f ms, tasks=%d, %.1f MFLOP, %.1f MB",
+                id, operator, rows, cols, getLoadNanos() / 1e6, getComputeNanos() / 1e6, getReadbackNanos() / 1e6,
+                getTasks(), flops / 1e6, bytes / (double) (1 << 20));
+    }
+}
@@ -0,0 +1,335 @@
+package spl.lae;
+
+import parser.*;
+import scheduling.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dependency-driven evaluation of a computation tree.
+ * The tree is cut into steps: the root of every element-wise region and every other operator node.
+ * A step is ready once all the steps producing its operands are resolved, and every ready step is
+ * handed to the executor right away, so independent subtrees run at the same time while every step
+ * is still split into row/tile tasks.
+ * Only the calling thread submits; the last task of a step resolves it and releases its parent step,
+ * so a worker never waits for another worker.
+ * A step prepared in several phases goes back to the ready queue after each phase, and the calling
+ * thread submits its next phase from there.
+ * Every dispatched step gets a NodeMetrics, steps are numbered in registration order (the root is 0).
+ * Ready steps are dispatched in an order that keeps few results alive at once, in the style of Sethi–Ullman:
+ * a step's need is the most bytes held while its subtree is evaluated, and of the operands of a step the one
+ * whose need exceeds its result the most is evaluated first, so the smaller results wait for the larger
+ * subtrees rather than the other way around (a shared step is counted in every subtree reading it).
+ * With a memory budget a ready step whose result does not fit is held back until a running step is done.
+ */
+class NodeScheduler {
+
+    private static final ComputationNode WAKE_UP = new ComputationNode(new double[0][0]); // wakes the dispatcher after a failure
+
+    /// ===== fields =====
+    private final LinearAlgebraEngine engine;
+    private final TaskExecutor executor;
+    private final Map<ComputationNode, List<ComputationNode>> parentSteps = new IdentityHashMap<>(); // several for a shared step
+    private final Map<ComputationNode, AtomicInteger> pendingOperands = new IdentityHashMap<>();
+    private final Map<ComputationNode, Integer> ranks = new IdentityHashMap<>(); // evaluation order, fixed before the first dispatch
+    private final BlockingQueue<ComputationNode> ready = new PriorityBlockingQueue<>(16,
+            Comparator.comparingInt(step -> ranks.getOrDefault(step, -1))); // WAKE_UP first
+    private final Deque<ComputationNode> deferred = new ArrayDeque<>(); // ready steps held back by the memory budget, dispatcher only
+    private final Map<ComputationNode, PreparedNode> nextPhase = new ConcurrentHashMap<>(); // steps back in ready for their next phase
+    private final Map<ComputationNode, Integer> stepIds = new IdentityHashMap<>();
+    private final Map<ComputationNode, int[]> operandSteps = new IdentityHashMap<>(); // ids of the steps a step reads
+    private final Map<ComputationNode, List<ComputationNode>> operandNodes = new IdentityHashMap<>(); // the steps a step reads
+    private final Map<ComputationNode, Long> needs = new IdentityHashMap<>(); // most bytes held while evaluating a step's subtree
+    private final Map<ComputationNode, Long> sizes = new IdentityHashMap<>(); // bytes of a step's result
+    private final List<ComputationNode> leaves = new ArrayList<>(); // steps with no unresolved operand
+    private final Map<ComputationNode, NodeMetrics> metrics = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger(0); // phases submitted and not completed yet
+    private final AtomicInteger inFlight = new AtomicInteger(0); // steps dispatched and not resolved yet
+    private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
+    private final Lock drainLock = new ReentrantLock(); // not a monitor, a virtual dispatcher unmounts while it waits
+    private final Condition drained = drainLock.newCondition();
+
+    /// ===== constructor =====
+    NodeScheduler(LinearAlgebraEngine engine, TaskExecutor executor) {
+        if (engine == null || executor == null)
+            throw new IllegalArgumentException("engine and executor cannot be null");
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    /// ===== methods =====
+    /** resolve every node under root, returns once root is a matrix or rethrows the first failure
+     */
+    void run(ComputationNode root) {
+        if (root.getNodeType() == ComputationNodeType.MATRIX)
+            return;
+
+        register(root, null);
+        rank(root);
+        ready.addAll(leaves);
+        int undispatched = pendingOperands.size();
+
+        while (undispatched > 0 && failure.get() == null) {
+            ComputationNode step;
+            try {
+                step = ready.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new IllegalStateException("Interrupted while waiting for a ready node"));
+                break;
+            }
+            if (step == WAKE_UP) {
+                // a step was resolved, the steps held back may fit now
+                ready.addAll(deferred);
+                deferred.clear();
+                continue;
+            }
+            PreparedNode phase = nextPhase.remove(step);
+            if (phase != null)
+                submit(step, phase, metrics.get(step));
+            else if (inFlight.get() > 0 && !engine.fitsBudget(step)) {
+                // every completion wakes the dispatcher, and with nothing in flight the step runs out of core
+                deferred.add(step);
+                continue;
+            }
+            else
+                undispatched += dispatch(step);
+            undispatched--;
+        }
+
+        // let every dispatched step drain before returning, even after a failure
+        drainLock.lock();
+        try {
+            while (running.get() > 0)
+                drained.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for nodes");
+        } finally {
+            drainLock.unlock();
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t != null)
+            throw new IllegalStateException(t.getMessage(), t);
+    }
+
+    /** return the metrics of every dispatched step, in no particular order
+     */
+    List<NodeMetrics> getMetrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /** record node as a step under parent, and every unresolved operand as a step under node
+     * a shared node is registered once and releases each of its parents when it completes
+     */
+    private void register(ComputationNode node, ComputationNode parent) {
+        List<ComputationNode> parents = parentSteps.get(node);
+        if (parents != null) {
+            parents.add(parent);
+            return;
+        }
+        parents = new ArrayList<>();
+        if (parent != null)
+            parents.add(parent);
+        parentSteps.put(node, parents);
+        stepIds.put(node, stepIds.size());
+        AtomicInteger pending = new AtomicInteger(0);
+        pendingOperands.put(node, pending);
+
+        List<ComputationNode> operands = new ArrayList<>();
+        if (node.getChildren() != null) {
+            if (FusedKernel.isElementwise(node.getNodeType()))
+                engine.collectFrontier(node, operands);
+            else
+                operands.addAll(node.getChildren());
+        }
+
+        int count = 0;
+        List<Integer> ids = new ArrayList<>();
+        for (ComputationNode operand : operands) {
+            if (operand.getNodeType() != ComputationNodeType.MATRIX) {
+                count++;
+                register(operand, node);
+                ids.add(stepIds.get(operand));
+            }
+        }
+        operandSteps.put(node, ids.stream().mapToInt(Integer::intValue).toArray());
+        pending.set(count);
+        if (count == 0)
+            leaves.add(node);
+        measureNeed(node, operands);
+    }
+
+    /** order the operand steps of node by need minus result, largest first, and compute node's need:
+     * the results of the operands evaluated so far are held while the next one is evaluated, then all of them
+     * together with node's own result
+     */
+    private void measureNeed(ComputationNode node, List<ComputationNode> candidates) {
+        // resolved operands are inputs, held from the start
+        List<ComputationNode> operands = new ArrayList<>();
+        for (ComputationNode operand : candidates) {
+            if (needs.containsKey(operand) && !operands.contains(operand))
+                operands.add(operand);
+        }
+        operands.sort(Comparator.comparingLong((ComputationNode operand) -> needs.get(operand) - sizes.get(operand)).reversed());
+        long held = 0;
+        long need = 0;
+        for (ComputationNode operand : operands) {
+            need = Math.max(need, held + needs.get(operand));
+            held += sizes.get(operand);
+        }
+        long size = engine.resultBytes(node);
+        operandNodes.put(node, operands);
+        sizes.put(node, size);
+        needs.put(node, Math.max(need, held + size));
+    }
+
+    /** number the steps under root in evaluation order: operands in the order chosen by measureNeed(), depth first
+     */
+    private void rank(ComputationNode root) {
+        // iterative post-order, chains of steps can be deep
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        stack.push(root);
+        expanded.push(false);
+        while (!stack.isEmpty()) {
+            ComputationNode step = stack.pop();
+            boolean done = expanded.pop();
+            if (ranks.containsKey(step))
+                continue;
+            if (done) {
+                ranks.put(step, ranks.size());
+                continue;
+            }
+            stack.push(step);
+            expanded.push(true);
+            List<ComputationNode> operands = operandNodes.get(step);
+            for (int i = operands.size() - 1; i >= 0; i--) {
+                stack.push(operands.get(i));
+                expanded.push(false);
+            }
+        }
+    }
+
+    /** prepare a ready step and submit its first phase, returns the number of phases left to submit
+     */
+    private int dispatch(ComputationNode step) {
+        PreparedNode prepared;
+        NodeMetrics measured;
+        try {
+            long start = System.nanoTime();
+            prepared = engine.prepare(step);
+            long load = System.nanoTime() - start;
+            // measured once prepared, so that an invalid node fails with the message of prepare()
+            measured = engine.measure(step, stepIds.get(step), operandSteps.get(step));
+            measured.addLoad(load);
+            // operands copied by prepare() are let go before the tasks run
+            prepared.operandsLoaded();
+        } catch (RuntimeException e) {
+            fail(e);
+            return 0;
+        }
+        metrics.put(step, measured);
+        inFlight.incrementAndGet();
+        submit(step, prepared, measured);
+        return prepared.remainingPhases();
+    }
+
+    /** submit the tasks of a phase of step, the last one to finish completes the phase
+     */
+    private void submit(ComputationNode step, PreparedNode prepared, NodeMetrics measured) {
+        running.incrementAndGet();
+        List<Runnable> tasks = prepared.getTasks();
+        long submitted = System.nanoTime();
+        if (tasks.isEmpty()) {
+            complete(step, prepared, measured, 0, submitted);
+            return;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(tasks.size());
+        List<Runnable> batch = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            batch.add(() -> {
+                long start = System.nanoTime();
+                try {
+                    if (failure.get() == null)
+                        task.run();
+                }
+                catch (Throwable t) {
+                    fail(t);
+                }
+                finally {
+                    measured.addTask(System.nanoTime() - start);
+                    if (remaining.decrementAndGet() == 0)
+                        complete(step, prepared, measured, tasks.size(), submitted);
+                }
+            });
+        }
+        executor.submitBatch(batch);
+    }
+
+    /** finish a phase of step, then queue its next phase or release its parent step if this was its last pending operand
+     */
+    private void complete(ComputationNode step, PreparedNode prepared, NodeMetrics measured, int taskCount, long submitted) {
+        try {
+            if (failure.get() == null) {
+                long finishing = System.nanoTime();
+                measured.addPhase(taskCount, finishing - submitted);
+                prepared.finish();
+                measured.addReadback(System.nanoTime() - finishing);
+                if (prepared.getNext() != null) {
+                    nextPhase.put(step, prepared.getNext());
+                    ready.add(step);
+                    return;
+                }
+                measured.commit();
+                for (ComputationNode parent : parentSteps.get(step)) {
+                    if (pendingOperands.get(parent).decrementAndGet() == 0)
+                        ready.add(parent);
+                }
+                inFlight.decrementAndGet();
+                if (engine.getMemoryBudget() != null)
+                    ready.add(WAKE_UP);
+            }
+        }
+        catch (Throwable t) {
+            fail(t);
+        }
+        finally {
+            if (running.decrementAndGet() == 0) {
+                drainLock.lock();
+                try {
+                    drained.signalAll();
+                } finally {
+                    drainLock.unlock();
+                }
+            }
+        }
+    }
+
+    /** keep the first failure and wake the dispatcher
+     */
+    private void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+        ready.add(WAKE_UP);
+    }
+}
@@ -0,0 +1,172 @@
+package spl.lae;
+
+import memory.MemoryBudget;
+import memory.TiledFileMatrix;
+import memory.VectorKernels;
+import parser.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tile-by-tile evaluation of one operator whose operands or result do not fit the memory budget.
+ * Operands are read a tile at a time whether they are spilled, resident dense or sparse (densified first),
+ * and the result goes to a new TiledFileMatrix, one output tile per task:
+ * - ADD / SUBTRACT / NEGATE combine the matching tiles of their operands
+ * - MULTIPLY accumulates A(i, k) × B(k, j) over k, so three tiles are resident per task
+ * TRANSPOSE needs no kernel, a spilled matrix is transposed lazily like a dense one.
+ */
+public class OutOfCoreKernel {
+
+    /// ===== fields =====
+    private final ComputationNodeType type;
+    private final Operand a;
+    private final Operand b; // null for NEGATE
+    private final TiledFileMatrix result;
+    private final int tile;
+    private final int innerTiles; // tiles along the inner dimension of a product
+
+    /// ===== constructor =====
+    private OutOfCoreKernel(ComputationNode node, MemoryBudget budget) {
+        this.type = node.getNodeType();
+        this.tile = budget.getTileSize();
+        List<ComputationNode> children = node.getChildren();
+        this.a = new Operand(children.get(0), tile);
+        this.b = (children.size() > 1) ? new Operand(children.get(1), tile) : null;
+        this.innerTiles = (type == ComputationNodeType.MULTIPLY) ? ceilDiv(a.cols, tile) : 0;
+        int rows = a.rows;
+        int cols = (type == ComputationNodeType.MULTIPLY) ? b.cols : a.cols;
+        this.result = budget.allocate(rows, cols);
+    }
+
+    /// ===== methods =====
+    /** compile node, a checked ADD, SUBTRACT, NEGATE or MULTIPLY whose children are resolved
+     */
+    public static OutOfCoreKernel compile(ComputationNode node, MemoryBudget budget) {
+        ComputationNodeType type = (node != null) ? node.getNodeType() : null;
+        if (type != ComputationNodeType.ADD && type != ComputationNodeType.SUBTRACT
+                && type != ComputationNodeType.NEGATE && type != ComputationNodeType.MULTIPLY)
+            throw new IllegalArgumentException("Illegal node: no out-of-core kernel for " + type);
+        return new OutOfCoreKernel(node, budget);
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /** return number of output tiles down
+     */
+    public int tileRows() {
+        return result.tileRows();
+    }
+
+    /** return number of output tiles across
+     */
+    public int tileCols() {
+        return result.tileCols();
+    }
+
+    /** return the output, complete once computeTile has run for every tile
+     */
+    public TiledFileMatrix getResult() {
+        return result;
+    }
+
+    /** compute output tile (ti, tj) and write it to the result
+     */
+    public void computeTile(int ti, int tj) {
+        int size = tile * tile;
+        double[] out = new double[size];
+        if (type == ComputationNodeType.MULTIPLY) {
+            double[] left = new double[size];
+            double[] right = new double[size];
+            double[] scratch = new double[size];
+            for (int k = 0; k < innerTiles; k++) {
+                a.readTile(ti, k, left, scratch);
+                b.readTile(k, tj, right, scratch);
+                // row i of the output tile += A(i, kk) × row kk of B, padding is zero on both sides
+                for (int i = 0; i < tile; i++) {
+                    for (int kk = 0; kk < tile; kk++) {
+                        double aik = left[i * tile + kk];
+                        if (aik != 0.0)
+                            VectorKernels.axpy(aik, right, kk * tile, out, i * tile, tile);
+                    }
+                }
+            }
+        }
+        else {
+            double[] scratch = new double[size];
+            a.readTile(ti, tj, out, scratch);
+            if (type == ComputationNodeType.NEGATE) {
+                VectorKernels.negate(out, 0, size);
+            }
+            else {
+                double[] other = new double[size];
+                b.readTile(ti, tj, other, scratch);
+                if (type == ComputationNodeType.ADD)
+                    VectorKernels.add(out, 0, other, 0, size);
+                else
+                    VectorKernels.subtract(out, 0, other, 0, size);
+            }
+        }
+        result.writeTile(ti, tj, out);
+    }
+
+    /** an operand as tiles of its value
+     */
+    private static final class Operand {
+        final TiledFileMatrix spilled; // null if resident
+        final double[][] stored;       // null if spilled
+        final boolean transposed;
+        final int rows;                // of the value
+        final int cols;
+        final int tile;
+
+        Operand(ComputationNode node, int tile) {
+            this.spilled = node.isSpilled() ? node.getSpilled() : null;
+            // a sparse operand is densified, tiles of it are read like any resident matrix
+            this.stored = node.isSpilled() ? null : node.getStoredMatrix();
+            this.transposed = node.isTransposed();
+            this.rows = node.getRows();
+            this.cols = node.getCols();
+            this.tile = tile;
+            if (spilled != null && spilled.tileSize() != tile)
+                throw new IllegalArgumentException("Illegal operand: spilled with another tile size");
+        }
+
+        /** copy tile (ti, tj) of the value into buffer, zero padded, scratch is a tile of working space
+         */
+        void readTile(int ti, int tj, double[] buffer, double[] scratch) {
+            if (spilled != null && !transposed) {
+                spilled.readTile(ti, tj, buffer);
+                return;
+            }
+            if (spilled != null) {
+                spilled.readTile(tj, ti, scratch);
+                for (int i = 0; i < tile; i++) {
+                    for (int j = 0; j < tile; j++)
+                        buffer[i * tile + j] = scratch[j * tile + i];
+                }
+                return;
+            }
+
+            Arrays.fill(buffer, 0.0);
+            int h = Math.min(tile, rows - ti * tile);
+            int w = Math.min(tile, cols - tj * tile);
+            int r0 = ti * tile;
+            int c0 = tj * tile;
+            if (!transposed) {
+                for (int i = 0; i < h; i++)
+                    System.arraycopy(stored[r0 + i], c0, buffer, i * tile, w);
+            }
+            else {
+                // value (i, j) is stored (j, i)
+                for (int j = 0; j < w; j++) {
+                    double[] column = stored[c0 + j];
+                    for (int i = 0; i < h; i++)
+                        buffer[i * tile + j] = column[r0 + i];
+                }
+            }
+        }
+    }
+}
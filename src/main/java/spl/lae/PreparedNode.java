@@ -0,0 +1,70 @@
+package spl.lae;
+
+import java.util.List;
+
+/**
+ * A node whose operands are loaded and whose compute tasks are created but not yet run.
+ * Once every task has completed, finish() reads the result back and resolves the node.
+ * A node computed in several phases chains them through getNext(): the tasks of the next phase
+ * may only be submitted once this phase has finished.
+ * A node whose operands were copied when it was prepared releases them through operandsLoaded(), so they
+ * are not kept alive while its tasks run.
+ */
+class PreparedNode {
+
+    /// ===== fields =====
+    private final List<Runnable> tasks;
+    private final Runnable finisher;
+    private final PreparedNode next; // null for the last phase
+    private final Runnable loaded;   // releases the operands once they are copied, null if they are read by the tasks
+
+    /// ===== constructor =====
+    PreparedNode(List<Runnable> tasks, Runnable finisher) {
+        this(tasks, finisher, null);
+    }
+
+    PreparedNode(List<Runnable> tasks, Runnable finisher, PreparedNode next) {
+        this(tasks, finisher, next, null);
+    }
+
+    PreparedNode(List<Runnable> tasks, Runnable finisher, PreparedNode next, Runnable loaded) {
+        if (tasks == null || finisher == null)
+            throw new IllegalArgumentException("tasks and finisher cannot be null");
+        this.tasks = tasks;
+        this.finisher = finisher;
+        this.next = next;
+        this.loaded = loaded;
+    }
+
+    /// ===== methods =====
+    /** return the compute tasks, they may run in any order and concurrently
+     */
+    List<Runnable> getTasks() {
+        return tasks;
+    }
+
+    /** release the operands the tasks no longer need, called once before the tasks are submitted
+     */
+    void operandsLoaded() {
+        if (loaded != null)
+            loaded.run();
+    }
+
+    /** read the result back and resolve the node, only after every task has completed
+     */
+    void finish() {
+        finisher.run();
+    }
+
+    /** return the phase to run after this one, or null
+     */
+    PreparedNode getNext() {
+        return next;
+    }
+
+    /** return number of phases after this one
+     */
+    int remainingPhases() {
+        return (next == null) ? 0 : 1 + next.remainingPhases();
+    }
+}
@@ -0,0 +1,135 @@
+package spl.lae;
+
+import memory.SparseMatrix;
+import parser.*;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of computed subtrees, kept across runs by their SubtreeKey so that a later request containing
+ * the same subtree resolves it without computing anything.
+ * Matrices are kept as computed (dense or sparse, possibly as a lazy transpose) and are never written to
+ * afterwards, an engine hands a matrix to the cache instead of recycling it.
+ * A hit needs a key equal in structure and leaf elements, not only in hash (see SubtreeKey), so every key
+ * keeps the input matrices it was computed from, they count toward the capacity along with the result.
+ * The least recently used results are evicted once the cache holds more than its capacity.
+ * Results spilled to disk by an out-of-core run are not kept.
+ */
+public class ResultCache {
+
+    /// ===== constants =====
+    public static final long DEFAULT_CAPACITY = 32L << 20; // doubles, 256MB
+
+    /// ===== fields =====
+    private final long capacity;  // max doubles held
+    private long held = 0;        // doubles currently held
+    private long hits = 0;
+    private long misses = 0;
+    private final LinkedHashMap<SubtreeKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+
+    /// ===== constructor =====
+    public ResultCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ResultCache(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must be >= 0");
+        this.capacity = capacity;
+    }
+
+    /// ===== methods =====
+    /** resolve node to the cached result of key, return false if there is none
+     */
+    public synchronized boolean resolve(SubtreeKey key, ComputationNode node) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        if (entry.sparse != null)
+            node.resolveSparse(entry.sparse, entry.transposed);
+        else if (entry.transposed)
+            node.resolveTransposed(entry.matrix);
+        else
+            node.resolve(entry.matrix);
+        return true;
+    }
+
+    /** keep the result of a resolved node under key, return false if it is too large to keep
+     * once kept, the node's matrix must not be written to or recycled
+     */
+    public synchronized boolean put(SubtreeKey key, ComputationNode node) {
+        if (node.getNodeType() != ComputationNodeType.MATRIX)
+            throw new IllegalArgumentException("node is not resolved");
+        // a spilled result lives in a file owned by the run that made it
+        if (node.isSpilled())
+            return false;
+        Entry entry = node.isSparse()
+                ? new Entry(null, node.getSparse(), node.isTransposed(), key.contentSize())
+                : new Entry(node.getStoredMatrix(), null, node.isTransposed(), key.contentSize());
+        if (entry.size > capacity)
+            return false;
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null)
+            held -= previous.size;
+        held += entry.size;
+        // evict the least recently used results, never the one just added
+        Iterator<Map.Entry<SubtreeKey, Entry>> it = entries.entrySet().iterator();
+        while (held > capacity && it.hasNext()) {
+            Map.Entry<SubtreeKey, Entry> oldest = it.next();
+            if (oldest.getKey().equals(key))
+                continue;
+            held -= oldest.getValue().size;
+            it.remove();
+        }
+        return true;
+    }
+
+    /** return number of cached results
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** return number of lookups that found a result
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** drop every cached result
+     */
+    public synchronized void clear() {
+        entries.clear();
+        held = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("result cache: %d results (%.1fMB), hits=%d, misses=%d",
+                entries.size(), held * 8.0 / (1 << 20), hits, misses);
+    }
+
+    /** a cached result, size is its footprint in doubles, the inputs its key keeps included
+     */
+    private static final class Entry {
+        final double[][] matrix;
+        final SparseMatrix sparse;
+        final boolean transposed;
+        final long size;
+
+        Entry(double[][] matrix, SparseMatrix sparse, boolean transposed, long keySize) {
+            this.matrix = matrix;
+            this.sparse = sparse;
+            this.transposed = transposed;
+            // a non-zero of a sparse matrix takes a value and half a double of column index
+            this.size = keySize + ((sparse != null) ? sparse.nnz() * 3L / 2 + sparse.rows()
+                    : (long) matrix.length * ((matrix.length > 0) ? matrix[0].length : 0));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package spl.lae;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import scheduling.WorkerMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metrics of one LinearAlgebraEngine run: a NodeMetrics per step in registration order (the root first)
+ * and a snapshot of every executor worker taken when the run ended.
+ * Worker counters are cumulative since the executor started, an executor shared by several engines
+ * reports the work of all of them.
+ * plan is the time spent rewriting the tree (nesting, optimizer, common subexpressions, cache lookups)
+ * before any step ran, elapsed the whole run.
+ * peakLiveBytes is the most heap held at once in inputs, intermediate results and operand copies.
+ */
+public class RunMetrics {
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /// ===== fields =====
+    private final List<NodeMetrics> nodes;
+    private final List<WorkerMetrics> workers;
+    private final Map<Integer, NodeMetrics> byId = new HashMap<>();
+    private final long planNanos;
+    private final long elapsedNanos;
+    private final long peakLiveBytes;
+
+    /// ===== constructor =====
+    RunMetrics(List<NodeMetrics> nodes, List<WorkerMetrics> workers, long planNanos, long elapsedNanos, long peakLiveBytes) {
+        List<NodeMetrics> ordered = new ArrayList<>(nodes);
+        ordered.sort(Comparator.comparingInt(NodeMetrics::getId));
+        this.nodes = Collections.unmodifiableList(ordered);
+        for (NodeMetrics node : ordered)
+            byId.put(node.getId(), node);
+        this.workers = Collections.unmodifiableList(new ArrayList<>(workers));
+        this.planNanos = planNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.peakLiveBytes = peakLiveBytes;
+    }
+
+    /// ===== methods =====
+    public List<NodeMetrics> getNodes() {
+        return nodes;
+    }
+
+    public List<WorkerMetrics> getWorkers() {
+        return workers;
+    }
+
+    public long getPlanNanos() {
+        return planNanos;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getPeakLiveBytes() {
+        return peakLiveBytes;
+    }
+
+    /** return the estimated floating point operations of every step
+     */
+    public long getFlops() {
+        long total = 0;
+        for (NodeMetrics node : nodes)
+            total += node.getFlops();
+        return total;
+    }
+
+    /** return the estimated bytes moved by every step
+     */
+    public long getBytes() {
+        long total = 0;
+        for (NodeMetrics node : nodes)
+            total += node.getBytes();
+        return total;
+    }
+
+    /** return the count steps with the most task time, most expensive first
+     */
+    public List<NodeMetrics> slowest(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("count must be >= 0");
+        List<NodeMetrics> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparingLong(NodeMetrics::getTaskNanos).reversed());
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    /** return the task time of the subtree rooted at step id, a shared step counts once
+     */
+    public long subtreeTaskNanos(int id) {
+        long total = 0;
+        Set<Integer> seen = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            // steps that never ran (after a failure) have no metrics
+            NodeMetrics node = byId.get(stack.pop());
+            if (node == null || !seen.add(node.getId()))
+                continue;
+            total += node.getTaskNanos();
+            for (int operand : node.getOperands())
+                stack.push(operand);
+        }
+        return total;
+    }
+
+    /** return the metrics as a JSON document
+     */
+    public String toJson() {
+        try {
+            return mapper.writeValueAsString(this);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize metrics: " + e.getMessage(), e);
+        }
+    }
+
+    /** write the metrics as a JSON document to filePath
+     */
+    public void writeJson(String filePath) throws IOException {
+        mapper.writeValue(new File(filePath), this);
+    }
+
+    /** record a JFR event for every worker, node events are recorded while the run goes
+     */
+    void commitWorkerEvents() {
+        for (WorkerMetrics worker : workers)
+            MetricsEvents.commitWorker(worker);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("run: %d steps, plan=%.3f ms, elapsed=%.3f ms, %.1f MFLOP, %.1f MB, peak live %.1f MB%n",
+                nodes.size(), planNanos / 1e6, elapsedNanos / 1e6, getFlops() / 1e6, getBytes() / (double) (1 << 20),
+                peakLiveBytes / (double) (1 << 20)));
+        for (NodeMetrics node : nodes)
+            sb.append(node).append(System.lineSeparator());
+        for (WorkerMetrics worker : workers)
+            sb.append(worker).append(System.lineSeparator());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package spl.lae;
+
+/**
+ * How an operator's output is cut into tasks.
+ * The cost model is rows × cols × cost per element, spread over TASKS_PER_WORKER tasks per worker
+ * so that fatigue differences can even out, but never so thin that a task is cheaper than
+ * MIN_TASK_COST (the handoff and the lambda would cost more than the work).
+ * When there are fewer rows than tasks (short, wide matrices), rows are also split into column ranges.
+ */
+public class TaskGranularity {
+
+    /// ===== constants =====
+    public static final long MIN_TASK_COST = 16_384; // element operations per task, below this handoff dominates
+    public static final int TASKS_PER_WORKER = 4;
+
+    /// ===== fields =====
+    private final String operator;
+    private final int rows;
+    private final int cols;
+    private final int rowsPerTask;
+    private final int colsPerTask;
+    private final int taskCount;
+
+    /// ===== constructor =====
+    private TaskGranularity(String operator, int rows, int cols, int rowsPerTask, int colsPerTask) {
+        this.operator = operator;
+        this.rows = rows;
+        this.cols = cols;
+        this.rowsPerTask = rowsPerTask;
+        this.colsPerTask = colsPerTask;
+        this.taskCount = ceilDiv(rows, rowsPerTask) * ceilDiv(cols, colsPerTask);
+    }
+
+    /// ===== methods =====
+    /** choose the granularity of an operator over a rows × cols output
+     * costPerElement is the work per output element (1 for add/negate, 2 × inner size for a product),
+     * splitColumns allows 2-D splitting for kernels that can work on part of a row.
+     */
+    public static TaskGranularity choose(String operator, int rows, int cols, double costPerElement,
+                                         int workers, boolean splitColumns) {
+        if (rows < 0 || cols < 0 || workers < 1)
+            throw new IllegalArgumentException("Illegal granularity input: rows, cols must be >= 0 and workers > 0");
+        if (rows == 0 || cols == 0)
+            return new TaskGranularity(operator, rows, cols, Math.max(rows, 1), Math.max(cols, 1));
+
+        double total = (double) rows * cols * Math.max(costPerElement, 1.0);
+        long byCost = Math.max(1, (long) (total / MIN_TASK_COST));
+        long tasks = Math.min((long) workers * TASKS_PER_WORKER, byCost);
+
+        if (tasks <= rows || !splitColumns) {
+            int rowsPerTask = ceilDiv(rows, (int) Math.min(tasks, rows));
+            return new TaskGranularity(operator, rows, cols, rowsPerTask, cols);
+        }
+
+        // short and wide: one row per task is not enough parallelism, split the rows as well
+        int splitsPerRow = (int) Math.min(Math.ceilDiv(tasks, rows), cols);
+        int colsPerTask = ceilDiv(cols, splitsPerRow);
+        return new TaskGranularity(operator, rows, cols, 1, colsPerTask);
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /** return number of rows covered by one task
+     */
+    public int getRowsPerTask() {
+        return rowsPerTask;
+    }
+
+    /** return number of columns covered by one task (cols when rows are not split)
+     */
+    public int getColsPerTask() {
+        return colsPerTask;
+    }
+
+    /** return number of tasks created
+     */
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %dx%d: %d tasks of %dx%d", operator, rows, cols, taskCount, rowsPerTask, colsPerTask);
+    }
+}
@@ -0,0 +1,111 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BufferPool hands a released buffer to exactly one later acquire of the same length, and never holds
+ * more than its capacity.
+ */
+class BufferPoolTest {
+
+    private static final int LENGTH = BufferPool.MIN_POOLED_LENGTH;
+
+    @Test
+    void releasedBufferIsReusedForTheSameLengthOnly() {
+        BufferPool pool = new BufferPool();
+        double[] buffer = pool.acquire(LENGTH);
+        pool.release(buffer);
+
+        assertNotSame(buffer, pool.acquire(LENGTH + 1));
+        assertSame(buffer, pool.acquire(LENGTH));
+        // the bucket is empty again
+        assertNotSame(buffer, pool.acquire(LENGTH));
+        assertEquals(1, pool.getHits());
+        assertEquals(3, pool.getMisses());
+    }
+
+    @Test
+    void tinyBuffersAreNotPooled() {
+        BufferPool pool = new BufferPool();
+        double[] tiny = new double[LENGTH - 1];
+        pool.release(tiny);
+
+        assertNotSame(tiny, pool.acquire(LENGTH - 1));
+        assertEquals(0, pool.getRecycled());
+        assertEquals(0, pool.getPooledDoubles());
+    }
+
+    @Test
+    void zeroedBufferIsClearedAfterReuse() {
+        BufferPool pool = new BufferPool();
+        double[] dirty = pool.acquire(LENGTH);
+        Arrays.fill(dirty, Double.NaN);
+        pool.release(dirty);
+
+        double[] zeroed = pool.acquireZeroed(LENGTH);
+        assertSame(dirty, zeroed);
+        assertArrayEquals(new double[LENGTH], zeroed);
+    }
+
+    @Test
+    void releasesBeyondCapacityAreDropped() {
+        BufferPool pool = new BufferPool(2L * LENGTH);
+        for (int i = 0; i < 3; i++)
+            pool.release(new double[LENGTH]);
+
+        assertEquals(2, pool.getRecycled());
+        assertEquals(1, pool.getDropped());
+        assertEquals(2L * LENGTH, pool.getPooledDoubles());
+    }
+
+    @Test
+    void concurrentAcquiresNeverShareABuffer() throws Exception {
+        BufferPool pool = new BufferPool();
+        for (int i = 0; i < 64; i++)
+            pool.release(new double[LENGTH]);
+
+        // every thread marks the buffers it holds, a buffer handed out twice at once would be overwritten
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        Set<double[]> corrupted = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final double mark = t + 1;
+            done.add(threads.submit(() -> {
+                for (int round = 0; round < 2_000; round++) {
+                    double[] buffer = pool.acquire(LENGTH);
+                    Arrays.fill(buffer, mark);
+                    Thread.yield();
+                    for (double v : buffer) {
+                        if (v != mark)
+                            corrupted.add(buffer);
+                    }
+                    pool.release(buffer);
+                }
+            }));
+        }
+        for (Future<?> f : done)
+            f.get();
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(corrupted.isEmpty());
+        assertEquals(pool.getPooledDoubles(), (long) LENGTH * (64 + pool.getMisses()));
+    }
+}
@@ -0,0 +1,86 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * SharedMatrix above the store limit: a matrix too large for one array holds an array per vector
+ * and must read back exactly like one held in a contiguous store.
+ */
+class SharedMatrixTest {
+
+    private static final int LIMIT = 100; // below the 9 x 13 test matrix
+
+    @Test
+    void rowMajorAboveLimitMatchesContiguousStore() {
+        double[][] m = sample(9, 13);
+        SharedMatrix split = new SharedMatrix(null, LIMIT);
+        split.loadRowMajor(m);
+        SharedMatrix whole = new SharedMatrix(m);
+
+        assertEquals(9, split.length());
+        assertEquals(13, split.getStride());
+        assertSame(whole.readRowMajor(), split.readRowMajor());
+
+        double[][] rows = new double[9][];
+        split.readRows(2, 7, rows);
+        for (int i = 2; i < 7; i++)
+            assertArrayEquals(m[i], rows[i]);
+
+        split.transpose();
+        whole.transpose();
+        assertSame(whole.readRowMajor(), split.readRowMajor());
+    }
+
+    @Test
+    void columnMajorAboveLimitMatchesContiguousStore() {
+        // wider than TRANSPOSE_BLOCK so the blocked copy crosses block edges
+        double[][] m = sample(37, 45);
+        SharedMatrix split = new SharedMatrix(null, LIMIT);
+        split.loadColumnMajor(m);
+        SharedMatrix whole = new SharedMatrix();
+        whole.loadColumnMajor(m);
+
+        assertEquals(45, split.length());
+        assertEquals(VectorOrientation.COLUMN_MAJOR, split.getLayout());
+        assertSame(m, split.readRowMajor());
+        assertSame(whole.readRowMajor(), split.readRowMajor());
+    }
+
+    @Test
+    void releaseHandsBackEveryVectorArray() {
+        BufferPool pool = new BufferPool();
+        SharedMatrix split = new SharedMatrix(pool, LIMIT);
+        split.loadRowMajor(sample(3, BufferPool.MIN_POOLED_LENGTH));
+        split.release();
+
+        assertEquals(0, split.length());
+        assertEquals(3, pool.getRecycled());
+    }
+
+    @Test
+    void raggedRowsAreRejectedBeforeAllocating() {
+        double[][] m = sample(9, 13);
+        m[4] = new double[12];
+        assertThrows(IllegalArgumentException.class, () -> new SharedMatrix(null, LIMIT).loadRowMajor(m));
+        assertThrows(IllegalArgumentException.class, () -> new SharedMatrix(null, LIMIT).loadColumnMajor(m));
+    }
+
+    /// ===== helpers =====
+    private static double[][] sample(int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = i * 100 + j + 0.5;
+        return m;
+    }
+
+    private static void assertSame(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], actual[i]);
+    }
+}
@@ -0,0 +1,43 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * SharedVector combined with itself follows IEEE arithmetic like two distinct vectors do.
+ */
+class SharedVectorTest {
+
+    private static final double[] VALUES = {1.5, -0.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    @Test
+    void subtractFromItselfMatchesSubtractOfCopy() {
+        SharedVector self = new SharedVector(VALUES.clone(), VectorOrientation.ROW_MAJOR);
+        self.subtract(self);
+        SharedVector copy = new SharedVector(VALUES.clone(), VectorOrientation.ROW_MAJOR);
+        copy.subtract(new SharedVector(VALUES.clone(), VectorOrientation.ROW_MAJOR));
+
+        // assertArrayEquals(double[], double[]) compares bits, NaN equals NaN
+        assertArrayEquals(new double[] {0.0, 0.0, 0.0, Double.NaN, Double.NaN, Double.NaN}, elements(self));
+        assertArrayEquals(elements(copy), elements(self));
+    }
+
+    @Test
+    void addToItselfMatchesAddOfCopy() {
+        SharedVector self = new SharedVector(VALUES.clone(), VectorOrientation.ROW_MAJOR);
+        self.add(self);
+        SharedVector copy = new SharedVector(VALUES.clone(), VectorOrientation.ROW_MAJOR);
+        copy.add(new SharedVector(VALUES.clone(), VectorOrientation.ROW_MAJOR));
+
+        assertArrayEquals(elements(copy), elements(self));
+    }
+
+    /// ===== helpers =====
+    private static double[] elements(SharedVector v) {
+        double[] out = new double[v.length()];
+        for (int i = 0; i < out.length; i++)
+            out[i] = v.get(i);
+        return out;
+    }
+}
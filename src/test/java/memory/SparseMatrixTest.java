@@ -0,0 +1,123 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SparseMatrix against IEEE arithmetic: the kernels skip zeros, so Inf and NaN must never reach them,
+ * and signed zeros read back the way the dense form holds them.
+ */
+class SparseMatrixTest {
+
+    private static final int N = 40; // 1600 elements, above MIN_ELEMENTS
+
+    @Test
+    void sparseFiniteMatrixIsWorthStoring() {
+        assertTrue(SparseMatrix.isWorthStoring(diagonal(N, 2.0)));
+    }
+
+    @Test
+    void matrixWithInfOrNaNIsNeverWorthStoring() {
+        double[][] inf = diagonal(N, 2.0);
+        inf[3][7] = Double.POSITIVE_INFINITY;
+        double[][] nan = diagonal(N, 2.0);
+        nan[5][1] = Double.NaN;
+
+        assertFalse(SparseMatrix.isWorthStoring(inf));
+        assertFalse(SparseMatrix.isWorthStoring(nan));
+        assertFalse(SparseMatrix.isFinite(inf));
+        assertFalse(SparseMatrix.isFinite(nan));
+        assertTrue(SparseMatrix.isFinite(diagonal(N, 2.0)));
+    }
+
+    @Test
+    void fromDenseRejectsInfAndNaN() {
+        double[][] matrix = diagonal(N, 2.0);
+        matrix[0][N - 1] = Double.NEGATIVE_INFINITY;
+        assertThrows(IllegalArgumentException.class, () -> SparseMatrix.fromDense(matrix));
+        matrix[0][N - 1] = Double.NaN;
+        assertThrows(IllegalArgumentException.class, () -> SparseMatrix.fromDense(matrix));
+    }
+
+    @Test
+    void finiteProductsMatchDenseKernel() {
+        double[][] a = diagonal(N, 3.0);
+        a[2][9] = -1.5;
+        double[][] b = new double[N][N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                b[i][j] = (i * 31 + j * 7) % 11 - 5;
+
+        double[][] out = new double[N][N];
+        SparseMatrix.fromDense(a).multiplyDense(b, 0, N, out);
+        double[][] expected = naive(a, b);
+        for (int i = 0; i < N; i++)
+            assertArrayEquals(expected[i], out[i]);
+    }
+
+    @Test
+    void signedZerosAreKept() {
+        // assertEquals(double, double) compares bits, -0.0 and 0.0 differ
+        double[][] a = diagonal(N, 2.0);
+        a[1][2] = -0.0;
+        SparseMatrix sparse = SparseMatrix.fromDense(a);
+        assertEquals(N + 1, sparse.nnz());
+        assertEquals(-0.0, sparse.toDense()[1][2]);
+
+        SparseMatrix negated = sparse.negate();
+        assertTrue(negated.isNegativeZero());
+        double[][] dense = negated.toDense();
+        assertEquals(-2.0, dense[0][0]);
+        assertEquals(-0.0, dense[0][1]);
+        assertEquals(0.0, dense[1][2]);
+        assertEquals(-0.0, negated.transpose().toDense()[1][0]);
+        assertEquals(0.0, negated.negate().toDense()[0][1]);
+    }
+
+    @Test
+    void addRowSumsSignedZerosLikeTheDenseForm() {
+        double[][] a = diagonal(N, 2.0);
+        SparseMatrix sparse = SparseMatrix.fromDense(a);
+        SparseMatrix negated = sparse.negate();
+        for (double scale : new double[] {1.0, -1.0}) {
+            for (SparseMatrix m : new SparseMatrix[] {sparse, negated}) {
+                double[] out = new double[N];
+                Arrays.fill(out, -0.0);
+                out[5] = 1.5;
+                m.addRow(3, scale, out);
+
+                double[] row = m.toDense()[3];
+                double[] expected = new double[N];
+                Arrays.fill(expected, -0.0);
+                expected[5] = 1.5;
+                for (int j = 0; j < N; j++)
+                    expected[j] += scale * row[j];
+                assertArrayEquals(expected, out);
+            }
+        }
+    }
+
+    /// ===== helpers =====
+    private static double[][] diagonal(int n, double value) {
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++)
+            m[i][i] = value;
+        return m;
+    }
+
+    private static double[][] naive(double[][] a, double[][] b) {
+        double[][] out = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++)
+                    out[i][j] += a[i][k] * b[k][j];
+        return out;
+    }
+}
@@ -0,0 +1,143 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StrassenMatMul against the classic kernels: the tiled kernel (TiledMatMul) and a naive triple loop.
+ * Strassen reorders and cancels terms, so results are compared with a relative tolerance, not exactly.
+ */
+class StrassenMatMulTest {
+
+    // Frobenius norm of the difference over the norm of the classic result
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    void oneLevelMatchesClassic() {
+        // 40 / 2 = 20 fits the threshold after one split
+        assertMatchesClassic(40, 40, 40, 20, 1, false, false);
+    }
+
+    @Test
+    void twoLevelsMatchClassic() {
+        assertMatchesClassic(37, 37, 37, 10, 2, false, false);
+    }
+
+    @Test
+    void threeLevelsMatchClassic() {
+        assertMatchesClassic(41, 41, 41, 6, 3, false, false);
+    }
+
+    @Test
+    void oddRectangularSizesMatchClassic() {
+        // nothing is a power of two and the padding differs on every side
+        assertMatchesClassic(33, 45, 29, 8, 3, false, false);
+        assertMatchesClassic(51, 27, 39, 16, 2, false, false);
+    }
+
+    @Test
+    void transposedOperandsMatchClassic() {
+        assertMatchesClassic(35, 43, 31, 9, 3, true, false);
+        assertMatchesClassic(35, 43, 31, 9, 3, false, true);
+        assertMatchesClassic(35, 43, 31, 9, 3, true, true);
+    }
+
+    @Test
+    void worthRecursingRespectsThresholdAndAspect() {
+        assertTrue(StrassenMatMul.worthRecursing(600, 600, 600, 512));
+        assertTrue(!StrassenMatMul.worthRecursing(512, 512, 512, 512));
+        assertTrue(!StrassenMatMul.worthRecursing(600, 600, 1300, 512));
+        assertTrue(!StrassenMatMul.worthRecursing(600, 600, 600, 0));
+    }
+
+    /** multiply a random rows × depth by depth × cols product both ways and compare them
+     * a transposed flag hands the operand to Strassen stored as its transpose
+     */
+    private static void assertMatchesClassic(int rows, int depth, int cols, int threshold, int levels,
+                                             boolean leftTransposed, boolean rightTransposed) {
+        Random random = new Random(31L * rows + 17L * depth + cols);
+        double[][] a = randomMatrix(random, rows, depth);
+        double[][] b = randomMatrix(random, depth, cols);
+
+        StrassenMatMul mul = new StrassenMatMul(leftTransposed ? transpose(a) : a, leftTransposed,
+                rightTransposed ? transpose(b) : b, rightTransposed, threshold, null);
+        assertEquals(levels, mul.levels(), "levels");
+        double[][] strassen = run(mul);
+
+        double[][] naive = naive(a, b);
+        double[][] tiled = tiled(a, b);
+        assertClose(naive, tiled);
+        assertClose(naive, strassen);
+    }
+
+    /** run the three phases in order, one task at a time
+     */
+    private static double[][] run(StrassenMatMul mul) {
+        int size = mul.leafSize();
+        for (int leaf = 0; leaf < mul.leafCount(); leaf++)
+            mul.formRight(leaf);
+        for (int leaf = 0; leaf < mul.leafCount(); leaf++)
+            mul.multiplyLeaf(leaf, 0, size);
+        for (int block = 0; block < mul.blockCount(); block++)
+            mul.combineBlock(block, 0, size);
+        double[][] result = mul.getResult();
+        mul.release();
+        return result;
+    }
+
+    private static double[][] tiled(double[][] a, double[][] b) {
+        SharedMatrix left = new SharedMatrix();
+        SharedMatrix right = new SharedMatrix();
+        left.loadRowMajor(a);
+        right.loadColumnMajor(b);
+        TiledMatMul mul = new TiledMatMul(left, right);
+        for (int r = 0; r < mul.rows(); r += mul.blockRows())
+            for (int c = 0; c < mul.cols(); c += mul.blockCols())
+                mul.multiplyBlock(r, Math.min(r + mul.blockRows(), mul.rows()), c, Math.min(c + mul.blockCols(), mul.cols()));
+        return mul.getResult();
+    }
+
+    private static double[][] naive(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++)
+                    c[i][j] += a[i][k] * b[k][j];
+        return c;
+    }
+
+    private static void assertClose(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length, "rows");
+        double diff = 0, norm = 0;
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].length, actual[i].length, "cols of row " + i);
+            for (int j = 0; j < expected[i].length; j++) {
+                double d = expected[i][j] - actual[i][j];
+                diff += d * d;
+                norm += expected[i][j] * expected[i][j];
+            }
+        }
+        double error = Math.sqrt(diff / norm);
+        assertTrue(error <= TOLERANCE, "relative error " + error + " exceeds " + TOLERANCE);
+    }
+
+    private static double[][] randomMatrix(Random random, int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (double[] row : m)
+            for (int j = 0; j < cols; j++)
+                row[j] = random.nextDouble() * 2 - 1;
+        return m;
+    }
+
+    private static double[][] transpose(double[][] m) {
+        double[][] t = new double[m[0].length][m.length];
+        for (int i = 0; i < m.length; i++)
+            for (int j = 0; j < m[0].length; j++)
+                t[j][i] = m[i][j];
+        return t;
+    }
+}
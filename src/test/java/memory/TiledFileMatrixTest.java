@@ -0,0 +1,79 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TiledFileMatrix reads back exactly what it was given, also when the tile size does not divide the shape.
+ */
+class TiledFileMatrixTest {
+
+    private static final int TILE = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void denseRoundTripWithPartialTiles() throws IOException {
+        double[][] m = sample(37, 21);
+        TiledFileMatrix tiled = TiledFileMatrix.fromDense(m, TILE, dir);
+
+        assertEquals(3, tiled.tileRows());
+        assertEquals(2, tiled.tileCols());
+        assertMatrixEquals(m, tiled.toDense());
+        tiled.release();
+    }
+
+    @Test
+    void rowReaderReadsTheValueOrItsTranspose() throws IOException {
+        double[][] m = sample(37, 21);
+        TiledFileMatrix tiled = TiledFileMatrix.fromDense(m, TILE, dir);
+
+        IntFunction<double[]> rows = tiled.rowReader(false);
+        for (int i = 0; i < m.length; i++)
+            assertArrayEquals(m[i], rows.apply(i));
+        IntFunction<double[]> columns = tiled.rowReader(true);
+        for (int j = 0; j < m[0].length; j++) {
+            double[] column = columns.apply(j);
+            assertEquals(m.length, column.length);
+            for (int i = 0; i < m.length; i++)
+                assertEquals(m[i][j], column[i]);
+        }
+        tiled.release();
+    }
+
+    @Test
+    void releaseDeletesTheFile() throws IOException {
+        TiledFileMatrix tiled = TiledFileMatrix.fromDense(sample(5, 5), TILE, dir);
+        tiled.release();
+
+        assertTrue(tiled.isReleased());
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /// ===== helpers =====
+    private static double[][] sample(int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = i * 1000 + j + 0.25;
+        return m;
+    }
+
+    private static void assertMatrixEquals(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], actual[i]);
+    }
+}
@@ -0,0 +1,16 @@
+package parser;
+
+/**
+ * Opens SubtreeKey.withHashOf() to tests outside the parser package.
+ */
+public final class Collisions {
+
+    private Collisions() {}
+
+    /**
+     * Returns key with the hash of other, as if the two collided.
+     */
+    public static SubtreeKey collide(SubtreeKey key, SubtreeKey other) {
+        return key.withHashOf(other);
+    }
+}
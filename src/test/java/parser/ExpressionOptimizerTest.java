@@ -0,0 +1,69 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpressionOptimizerTest {
+
+    @Test
+    void negatedProductNegatesTheSmallerOperand() {
+        // 1×4 times 4×8: the left operand is the smallest of A, B and A * B
+        ComputationNode a = matrix(1, 4);
+        ComputationNode b = matrix(4, 8);
+        ComputationNode root = node(ComputationNodeType.NEGATE, node(ComputationNodeType.MULTIPLY, a, b));
+
+        new ExpressionOptimizer().optimize(root);
+
+        assertEquals(ComputationNodeType.MULTIPLY, root.getNodeType());
+        assertEquals(ComputationNodeType.NEGATE, root.getChildren().get(0).getNodeType());
+        assertSame(a, root.getChildren().get(0).getChildren().get(0));
+        assertSame(b, root.getChildren().get(1));
+    }
+
+    @Test
+    void negatedProductOfMalformedOperandIsLeftForTheEngine() {
+        // -((-()) * [[1]]): the inner negation has no operand, so no shape can be inferred
+        ComputationNode empty = new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>());
+        ComputationNode product = node(ComputationNodeType.MULTIPLY, empty, matrix(1, 1));
+        ComputationNode root = node(ComputationNodeType.NEGATE, product);
+
+        ExpressionOptimizer optimizer = new ExpressionOptimizer();
+        optimizer.optimize(root);
+
+        assertEquals(0, optimizer.getRewriteCount());
+        assertEquals(ComputationNodeType.NEGATE, root.getNodeType());
+        assertSame(product, root.getChildren().get(0));
+    }
+
+    @Test
+    void shapeOfMalformedNodeIsRejectedWithTheEngineMessage() {
+        ComputationNode empty = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>());
+        ComputationNode root = node(ComputationNodeType.TRANSPOSE, node(ComputationNodeType.NEGATE, empty));
+
+        assertFalse(root.hasShape());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, root::getRows);
+        assertEquals("Illegal node: node must contain at least one child", e.getMessage());
+        assertThrows(IllegalArgumentException.class, root::getCols);
+        assertTrue(matrix(2, 3).hasShape());
+    }
+
+    private static ComputationNode matrix(int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = i * cols + j + 1;
+        return new ComputationNode(m);
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... operands) {
+        return new ComputationNode(type, new ArrayList<>(List.of(operands)));
+    }
+}
@@ -0,0 +1,88 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * InputParser reads from the token stream and hands anything the stream does not accept to the tree reader,
+ * so errors and lenient conversions are the ones the tree reader always gave.
+ * The expected messages are those of the tree-only parser.
+ */
+class InputParserTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void errorsMatchTheTreeParser() throws IOException {
+        assertError("Inconsistent row sizes in matrix.", "[[1,2],[3]]");
+        assertError("Inconsistent row sizes in matrix.", "[[1,2],[3,4,5]]");
+        assertError("Inconsistent row sizes in matrix.", "[[1,2],5]");
+        assertError("Vectors (1D arrays) are not supported as standalone nodes.", "[1,2]");
+        assertError("Empty array cannot be parsed as DataNode.", "[]");
+        assertError("Invalid node structure: {\"operator\":\"+\"}", "{\"operator\":\"+\"}");
+        assertError("Invalid node structure: 5", "5");
+        assertError("Invalid node structure: ", "");
+    }
+
+    @Test
+    void unknownOperatorIsRejectedByTheNodeAsBefore() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> parse("{\"operator\":\"x\",\"operands\":[[[1]],[[2]]]}"));
+        assertEquals("Unknown operator: x", e.getMessage());
+    }
+
+    @Test
+    void malformedJsonIsReportedAsReadFailure() throws IOException {
+        ParseException e = assertThrows(ParseException.class,
+                () -> parse("{\"operator\":\"+\",\"operands\":[[[1]],[[2]]"));
+        assertTrue(e.getMessage().startsWith("Failed to read the input JSON file: Unexpected end-of-input"));
+    }
+
+    @Test
+    void elementsTheStreamRejectsFallBackToTheTreeParser() throws Exception {
+        // the tree reader converts a quoted number, and any other text to 0
+        assertMatrix(new double[][] {{1, 2}, {3, 4}}, parse("[[1,\"2\"],[3,4]]"));
+        assertMatrix(new double[][] {{0}}, parse("[[\"a\"]]"));
+    }
+
+    @Test
+    void streamedTreeMatchesInput() throws Exception {
+        ComputationNode root = parse("{\"operands\":[{\"operator\":\"T\",\"operands\":[[[1,2],[3,4]]]},[[5,6],[7,8]]],"
+                + "\"extra\":{\"a\":[1]},\"operator\":\"*\"}");
+        assertEquals(ComputationNodeType.MULTIPLY, root.getNodeType());
+        ComputationNode transpose = root.getChildren().get(0);
+        assertEquals(ComputationNodeType.TRANSPOSE, transpose.getNodeType());
+        assertMatrix(new double[][] {{1, 2}, {3, 4}}, transpose.getChildren().get(0));
+        assertMatrix(new double[][] {{5, 6}, {7, 8}}, root.getChildren().get(1));
+    }
+
+    /// ===== helpers =====
+    private ComputationNode parse(String json) throws IOException, ParseException {
+        Path file = Files.writeString(dir.resolve("input.json"), json);
+        return new InputParser().parse(file.toString());
+    }
+
+    private void assertError(String expected, String json) throws IOException {
+        ParseException e = assertThrows(ParseException.class, () -> parse(json), json);
+        assertEquals(expected, e.getMessage(), json);
+    }
+
+    private static void assertMatrix(double[][] expected, ComputationNode node) {
+        assertEquals(ComputationNodeType.MATRIX, node.getNodeType());
+        double[][] actual = node.getMatrix();
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], actual[i]);
+    }
+}
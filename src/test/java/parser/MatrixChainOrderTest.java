@@ -0,0 +1,46 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MatrixChainOrderTest {
+
+    @Test
+    void chainIsNestedInTheCheapestOrder() {
+        // 10×100 * 100×5 * 5×50: (A0 * A1) * A2 costs 7500 multiply-adds, A0 * (A1 * A2) costs 75000
+        List<ComputationNode> operands = List.of(matrix(10, 100), matrix(100, 5), matrix(5, 50));
+        MatrixChainOrder order = MatrixChainOrder.compute(operands);
+
+        assertEquals("((A0 * A1) * A2)", order.getOrder());
+        assertEquals(2L * 7500, order.getEstimatedFlops());
+    }
+
+    @Test
+    void malformedOperandFallsBackToLeftNesting() {
+        // [[1]] * (+ with no operands) * [[1]]
+        ComputationNode a = matrix(1, 1);
+        ComputationNode empty = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>());
+        ComputationNode c = matrix(1, 1);
+        assertNull(MatrixChainOrder.compute(List.of(a, empty, c)));
+
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(a, empty, c)));
+        root.associativeNesting();
+
+        assertNull(root.getChainOrder());
+        ComputationNode left = root.getChildren().get(0);
+        assertEquals(ComputationNodeType.MULTIPLY, left.getNodeType());
+        assertSame(a, left.getChildren().get(0));
+        assertSame(empty, left.getChildren().get(1));
+        assertSame(c, root.getChildren().get(1));
+    }
+
+    private static ComputationNode matrix(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+}
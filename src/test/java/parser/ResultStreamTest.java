@@ -0,0 +1,116 @@
+package parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ResultStream writes the document the ObjectMapper-based OutputWriter always wrote, byte for byte,
+ * whatever the order and the threads the rows arrive from.
+ */
+class ResultStreamTest {
+
+    private static final ObjectMapper pretty = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final ObjectMapper compact = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writerOutputIsByteIdenticalToTreeSerialization() throws IOException {
+        double[][] matrix = sample(7, 5);
+        Path file = dir.resolve("out.json");
+        OutputWriter.write(matrix, file.toString());
+
+        assertArrayEquals(serialize(matrix), Files.readAllBytes(file));
+    }
+
+    @Test
+    void compactOutputIsByteIdenticalToTreeSerialization() throws IOException {
+        double[][] matrix = sample(7, 5);
+        Path file = dir.resolve("out.json");
+        OutputWriter.write(matrix, file.toString(), true, false);
+
+        assertArrayEquals(compact.writeValueAsBytes(new OutputWriter.ResultMatrix(matrix)), Files.readAllBytes(file));
+    }
+
+    @Test
+    void rowsOfferedOutOfOrderFromManyThreadsAreWrittenInOrder() throws Exception {
+        double[][] matrix = sample(300, 9);
+        Path file = dir.resolve("out.json");
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < matrix.length; i++)
+            order.add(i);
+        Collections.shuffle(order, new Random(7));
+
+        ResultStream stream = new ResultStream(file.toString(), false, false);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        // every third row is left to finish, as rows of a result that are never offered
+        for (int i : order) {
+            if (i % 3 != 0)
+                threads.execute(() -> stream.rowReady(i, matrix[i]));
+        }
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        stream.finish(matrix);
+
+        assertArrayEquals(serialize(matrix), Files.readAllBytes(file));
+    }
+
+    @Test
+    void rowsTakenFromAReaderAreByteIdentical() throws IOException {
+        double[][] matrix = sample(11, 4);
+        Path file = dir.resolve("out.json");
+        ResultStream stream = new ResultStream(file.toString(), false, false);
+        stream.finish(matrix.length, i -> matrix[i].clone());
+
+        assertArrayEquals(serialize(matrix), Files.readAllBytes(file));
+    }
+
+    @Test
+    void fastDoublesReadBackToTheSameValues() throws IOException {
+        double[][] matrix = sample(7, 5);
+        Path file = dir.resolve("out.json");
+        OutputWriter.write(matrix, file.toString(), false, true);
+
+        JsonNode read = compact.readTree(file.toFile()).get("result");
+        assertEquals(matrix.length, read.size());
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++)
+                assertEquals(matrix[i][j], read.get(i).get(j).asDouble());
+        }
+    }
+
+    /// ===== helpers =====
+    private static byte[] serialize(double[][] matrix) throws IOException {
+        // the call OutputWriter made before results were streamed
+        return pretty.writerWithDefaultPrettyPrinter().writeValueAsBytes(new OutputWriter.ResultMatrix(matrix));
+    }
+
+    private static double[][] sample(int rows, int cols) {
+        // values whose shortest decimal forms differ in length, sign and exponent
+        double[] values = {0.0, -0.0, 1.0, -2.5, 1.0 / 3, 1e-300, 6.02214076e23, -Double.MIN_VALUE, Double.MAX_VALUE, 0.1 + 0.2};
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = values[(i * cols + j) % values.length] * (i + 1);
+        return m;
+    }
+}
@@ -0,0 +1,116 @@
+package parser;
+
+import memory.SparseMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SubtreeKeyTest {
+
+    @Test
+    void equalElementsInDifferentArraysGiveEqualKeys() {
+        double[][] a = matrix(4, 5, 1.0);
+        SubtreeKey key = SubtreeKey.ofMatrix(a, false);
+
+        assertEquals(key, SubtreeKey.ofMatrix(copy(a), false));
+        assertEquals(key.hashCode(), SubtreeKey.ofMatrix(copy(a), false).hashCode());
+        assertNotEquals(key, SubtreeKey.ofMatrix(a, true));
+    }
+
+    @Test
+    void denseAndSparseStorageOfTheSameMatrixGiveEqualKeys() {
+        double[][] a = new double[40][40];
+        a[3][7] = 2.5;
+        a[39][0] = -1.0;
+        assertEquals(SubtreeKey.ofMatrix(a, false), SubtreeKey.ofSparse(SparseMatrix.fromDense(a), false));
+    }
+
+    @Test
+    void forcedCollisionOfLeavesIsNotEqual() {
+        SubtreeKey a = SubtreeKey.ofMatrix(matrix(3, 3, 1.0), false);
+        SubtreeKey b = SubtreeKey.ofMatrix(matrix(3, 3, 2.0), false).withHashOf(a);
+
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.toString(), b.toString());
+        assertNotEquals(a, b);
+        assertNotEquals(b, a);
+
+        Map<SubtreeKey, String> map = new HashMap<>();
+        map.put(a, "a");
+        map.put(b, "b");
+        assertEquals(2, map.size());
+        assertEquals("a", map.get(a));
+    }
+
+    @Test
+    void forcedCollisionOfOperatorsIsNotEqual() {
+        SubtreeKey a = SubtreeKey.ofMatrix(matrix(2, 2, 1.0), false);
+        SubtreeKey b = SubtreeKey.ofMatrix(matrix(2, 2, 3.0), false);
+        SubtreeKey negA = SubtreeKey.ofOperator(ComputationNodeType.NEGATE, new SubtreeKey[] {a});
+        SubtreeKey negB = SubtreeKey.ofOperator(ComputationNodeType.NEGATE, new SubtreeKey[] {b.withHashOf(a)})
+                .withHashOf(negA);
+        // same hashes all the way down, only the elements of the leaves differ
+        assertNotEquals(negA, negB);
+
+        SubtreeKey transA = SubtreeKey.ofOperator(ComputationNodeType.TRANSPOSE, new SubtreeKey[] {a}).withHashOf(negA);
+        assertNotEquals(negA, transA);
+    }
+
+    @Test
+    void releasedKeyIsOnlyEqualToItself() {
+        double[][] a = matrix(2, 3, 1.0);
+        SubtreeKey key = SubtreeKey.ofOperator(ComputationNodeType.NEGATE, new SubtreeKey[] {SubtreeKey.ofMatrix(a, false)});
+        SubtreeKey same = SubtreeKey.ofOperator(ComputationNodeType.NEGATE, new SubtreeKey[] {SubtreeKey.ofMatrix(copy(a), false)});
+        assertEquals(key, same);
+        assertEquals(6, key.contentSize());
+
+        key.releaseContents();
+        assertEquals(key, key);
+        assertNotEquals(key, same);
+        assertEquals(0, key.contentSize());
+    }
+
+    @Test
+    void subtreesWithEqualElementsAreMerged() {
+        double[][] a = matrix(2, 2, 1.0);
+        ComputationNode left = negate(new ComputationNode(a));
+        ComputationNode right = negate(new ComputationNode(copy(a)));
+        ComputationNode other = negate(new ComputationNode(matrix(2, 2, 5.0)));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(left, right, other)));
+
+        CommonSubexpressions cse = new CommonSubexpressions();
+        cse.eliminate(root);
+
+        assertEquals(2, cse.getMergedCount()); // the leaf and its negation
+        assertSame(root.getChildren().get(0), root.getChildren().get(1));
+        assertNotSame(root.getChildren().get(0), root.getChildren().get(2));
+    }
+
+    /// ===== helpers =====
+    private static ComputationNode negate(ComputationNode operand) {
+        return new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>(List.of(operand)));
+    }
+
+    private static double[][] matrix(int rows, int cols, double base) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = base + i * cols + j;
+        return m;
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++)
+            c[i] = m[i].clone();
+        return c;
+    }
+}
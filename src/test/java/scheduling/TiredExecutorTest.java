@@ -0,0 +1,68 @@
+package scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TiredExecutorTest {
+
+    @Test
+    void errorIsRethrownAndWorkersSurviveIt() throws InterruptedException {
+        for (boolean workStealing : new boolean[] {false, true}) {
+            TiredExecutor executor = new TiredExecutor(2, workStealing);
+            try {
+                AssertionError error = new AssertionError("boom");
+                AtomicInteger ran = new AtomicInteger();
+                List<Runnable> batch = new ArrayList<>();
+                for (int i = 0; i < 8; i++)
+                    batch.add(ran::incrementAndGet);
+                batch.add(() -> { throw error; });
+
+                AssertionError thrown = assertThrows(AssertionError.class, () -> executor.submitAll(batch));
+                assertSame(error, thrown);
+                assertEquals(8, ran.get());
+
+                // both workers are still alive and back in service
+                ran.set(0);
+                executor.submitAll(List.of(ran::incrementAndGet, ran::incrementAndGet, ran::incrementAndGet));
+                assertEquals(3, ran.get());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void workerSurvivesAnErrorWithNoSubmitterWaiting() throws InterruptedException {
+        // one worker, so the second task can only run if the first error did not kill it
+        TiredExecutor executor = new TiredExecutor(1);
+        AtomicInteger ran = new AtomicInteger();
+        executor.submit(() -> { throw new OutOfMemoryError("test"); });
+        executor.submit(ran::incrementAndGet);
+        executor.shutdown();
+
+        assertEquals(1, ran.get());
+        assertEquals(1, executor.getWorkerMetrics().get(0).getFailedTasks());
+        assertEquals(2, executor.getWorkerMetrics().get(0).getTasks());
+    }
+
+    @Test
+    void errorIsRethrownByTheVirtualThreadExecutor() throws InterruptedException {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(2);
+        try {
+            assertThrows(StackOverflowError.class,
+                    () -> executor.submitAll(List.of(() -> {}, () -> { throw new StackOverflowError(); })));
+            AtomicInteger ran = new AtomicInteger();
+            executor.submitAll(List.of(ran::incrementAndGet, ran::incrementAndGet));
+            assertEquals(2, ran.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The workers are never started, the test takes tasks on their behalf with next(), so the deal is deterministic.
+ */
+class WorkStealingPoolTest {
+
+    private static final int WORKERS = 4;
+
+    @Test
+    void bandsStayOnTheirWorkerUnderBalancedLoad() throws InterruptedException {
+        WorkStealingPool pool = new WorkStealingPool(true);
+        TiredThread[] workers = workers(pool);
+
+        for (int round = 0; round < 3; round++) {
+            // 2 tasks per worker, never more than AFFINITY_IMBALANCE, so nothing is stolen
+            List<Runnable> batch = batch(WORKERS * 2);
+            pool.push(batch);
+            for (int w = 0; w < WORKERS; w++) {
+                assertEquals(2 * w + 1, batch.indexOf(pool.next(workers[w])));
+                assertEquals(2 * w, batch.indexOf(pool.next(workers[w])));
+            }
+        }
+
+        // worker 0 is done with its band while the others still hold theirs, it waits instead of stealing
+        List<Runnable> batch = batch(WORKERS * 2);
+        pool.push(batch);
+        pool.next(workers[0]);
+        pool.next(workers[0]);
+        AtomicReference<Runnable> taken = new AtomicReference<>();
+        Thread waiter = new Thread(() -> taken.set(pool.next(workers[0])));
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive(), "worker 0 stole below the imbalance threshold");
+
+        for (int w = 1; w < WORKERS; w++) {
+            pool.next(workers[w]);
+            pool.next(workers[w]);
+        }
+        pool.shutdown();
+        waiter.join(5000);
+        assertNull(taken.get());
+        assertEquals(0, pool.queuedTasks());
+    }
+
+    @Test
+    void bandsMigrateOnceTheImbalanceExceedsTheThreshold() throws InterruptedException {
+        WorkStealingPool pool = new WorkStealingPool(true);
+        TiredThread[] workers = workers(pool);
+
+        // 4 tasks per worker, worker 0 runs its own band, then takes from the others down to AFFINITY_IMBALANCE each
+        List<Runnable> batch = batch(WORKERS * 4);
+        pool.push(batch);
+        for (int i = 0; i < 4; i++)
+            assertEquals(3 - i, batch.indexOf(pool.next(workers[0])));
+        int stealable = (WORKERS - 1) * (4 - WorkStealingPool.AFFINITY_IMBALANCE);
+        for (int i = 0; i < stealable; i++) {
+            int index = batch.indexOf(pool.next(workers[0]));
+            // a stolen task is the oldest left in another worker's band
+            assertTrue(index >= 4, "task " + index + " is not from another band");
+        }
+        for (int w = 1; w < WORKERS; w++)
+            assertEquals(WorkStealingPool.AFFINITY_IMBALANCE, workers[w].queuedTasks());
+
+        // what is left is within the threshold and stays where it was dealt
+        Thread waiter = new Thread(() -> pool.next(workers[0]));
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive(), "worker 0 stole below the imbalance threshold");
+        for (int w = 1; w < WORKERS; w++) {
+            for (int i = 0; i < WorkStealingPool.AFFINITY_IMBALANCE; i++) {
+                int index = batch.indexOf(pool.next(workers[w]));
+                assertEquals(w, index / 4, "task " + index + " left its band");
+            }
+        }
+        pool.shutdown();
+        waiter.join(5000);
+    }
+
+    @Test
+    void withoutAffinityIdleWorkersStealAnything() {
+        WorkStealingPool pool = new WorkStealingPool(false);
+        TiredThread[] workers = workers(pool);
+
+        List<Runnable> batch = batch(WORKERS);
+        pool.push(batch);
+        for (int i = 0; i < WORKERS; i++)
+            assertTrue(batch.indexOf(pool.next(workers[0])) >= 0);
+        assertEquals(0, pool.queuedTasks());
+        pool.shutdown();
+        assertNull(pool.next(workers[0]));
+    }
+
+    private static TiredThread[] workers(WorkStealingPool pool) {
+        TiredThread[] workers = new TiredThread[WORKERS];
+        for (int i = 0; i < WORKERS; i++)
+            workers[i] = new TiredThread(i, 1.0, pool, null);
+        pool.setWorkers(workers);
+        return workers;
+    }
+
+    private static List<Runnable> batch(int size) {
+        List<Runnable> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // capturing i makes every task a distinct object, indexOf() tells them apart
+            final int index = i;
+            batch.add(() -> Integer.toString(index));
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,102 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.BinaryInputParser;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.InputParser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Main --convert: a JSON input turned into the binary container holds the same tree and runs to the same result.
+ */
+class ConvertTest {
+
+    // (A * B) + -(C^T)
+    private static final String INPUT = "{\"operator\": \"+\", \"operands\": ["
+            + "{\"operator\": \"*\", \"operands\": [[[1, 2, 3], [4, 5, 6]], [[7, 8], [9, 10], [11, 12]]]},"
+            + "{\"operator\": \"-\", \"operands\": [{\"operator\": \"T\", \"operands\": [[[1, 2], [3, 4]]]}]}]}";
+    private static final double[][] EXPECTED = {{57.0, 61.0}, {137.0, 150.0}};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void convertedTreeMatchesParsedJson() throws Exception {
+        Path json = Files.writeString(dir.resolve("in.json"), INPUT);
+        Path bin = dir.resolve("in.bin");
+        Main.convert(json.toString(), bin.toString());
+
+        assertTreeEquals(new InputParser().parse(json.toString()), new BinaryInputParser().parse(bin.toString()));
+    }
+
+    @Test
+    void jsonAndConvertedInputRunToTheSameResult() throws Exception {
+        Path json = Files.writeString(dir.resolve("in.json"), INPUT);
+        Path bin = dir.resolve("in.bin");
+        Main.convert(json.toString(), bin.toString());
+
+        Path fromJson = dir.resolve("json-out.bin");
+        Path fromBin = dir.resolve("bin-out.bin");
+        Main.runJob(ConvertTest::engine, json.toString(), fromJson.toString(), false, false, null);
+        Main.runJob(ConvertTest::engine, bin.toString(), fromBin.toString(), false, false, null);
+
+        assertArrayEquals(Files.readAllBytes(fromJson), Files.readAllBytes(fromBin));
+        double[][] result = readResult(fromBin);
+        assertEquals(EXPECTED.length, result.length);
+        for (int i = 0; i < EXPECTED.length; i++)
+            assertArrayEquals(EXPECTED[i], result[i]);
+    }
+
+    @Test
+    void convertOnlyWritesBinary() throws Exception {
+        Path json = Files.writeString(dir.resolve("in.json"), INPUT);
+        assertThrows(IllegalArgumentException.class,
+                () -> Main.convert(json.toString(), dir.resolve("out.json").toString()));
+    }
+
+    /// ===== helpers =====
+    private static LinearAlgebraEngine engine() {
+        return new LinearAlgebraEngine(2, false, false, false);
+    }
+
+    private static void assertTreeEquals(ComputationNode expected, ComputationNode actual) {
+        assertEquals(expected.getNodeType(), actual.getNodeType());
+        if (expected.getNodeType() == ComputationNodeType.MATRIX) {
+            double[][] e = expected.getMatrix();
+            double[][] a = actual.getMatrix();
+            assertEquals(e.length, a.length);
+            for (int i = 0; i < e.length; i++)
+                assertArrayEquals(e[i], a[i]);
+            return;
+        }
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++)
+            assertTreeEquals(expected.getChildren().get(i), actual.getChildren().get(i));
+    }
+
+    /** decode a RESULT file: header, matrix tag, rows, cols, padding, row-major doubles (see BinaryFormat)
+     */
+    private static double[][] readResult(Path path) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1, buffer.getInt(8)); // KIND_RESULT
+        int rows = buffer.getInt(16);
+        int cols = buffer.getInt(20);
+        double[][] matrix = new double[rows][cols];
+        int position = 24;
+        for (double[] row : matrix) {
+            for (int j = 0; j < cols; j++, position += 8)
+                row[j] = buffer.getDouble(position);
+        }
+        return matrix;
+    }
+}
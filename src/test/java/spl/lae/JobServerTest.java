@@ -0,0 +1,110 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JobServer's socket only reads and writes under its root, and shuts down within a bounded wait.
+ */
+class JobServerTest {
+
+    private static final String INPUT = "{\"operator\": \"+\", \"operands\": [[[1, 2]], [[3, 4]]]}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pathsUnderRootAreResolved() throws IOException {
+        Path root = Files.createDirectories(dir.resolve("root")).toRealPath();
+        Files.createDirectories(root.resolve("jobs"));
+
+        assertEquals(root.resolve("in.json"), JobServer.underRoot(root, "in.json"));
+        assertEquals(root.resolve("jobs/out.json"), JobServer.underRoot(root, "jobs/../jobs/out.json"));
+        assertEquals(root.resolve("out.json"), JobServer.underRoot(root, root.resolve("out.json").toString()));
+    }
+
+    @Test
+    void pathsOutsideRootAreRefused() throws IOException {
+        Path root = Files.createDirectories(dir.resolve("root")).toRealPath();
+        Path outside = Files.createDirectories(dir.resolve("outside"));
+        Files.createSymbolicLink(root.resolve("link"), outside);
+        Files.createSymbolicLink(root.resolve("file.json"), Files.writeString(outside.resolve("secret.json"), INPUT));
+
+        assertThrows(IllegalArgumentException.class, () -> JobServer.underRoot(root, "../outside/out.json"));
+        assertThrows(IllegalArgumentException.class, () -> JobServer.underRoot(root, outside.resolve("x.json").toString()));
+        assertThrows(IllegalArgumentException.class, () -> JobServer.underRoot(root, "link/out.json"));
+        assertThrows(IllegalArgumentException.class, () -> JobServer.underRoot(root, "file.json"));
+    }
+
+    @Test
+    void socketRunsJobsUnderRootOnly() throws Exception {
+        Path root = Files.createDirectories(dir.resolve("root"));
+        Files.writeString(root.resolve("in.json"), INPUT);
+        Files.writeString(dir.resolve("in.json"), INPUT);
+        JobServer server = new JobServer(2, false, false, false, 1, true, false, -1);
+        int port;
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = probe.getLocalPort();
+        }
+        CompletableFuture<Void> serving = CompletableFuture.runAsync(() -> {
+            try {
+                server.serveSocket(port, root);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try (Socket socket = connect(port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            writer.println("in.json\tout.json");
+            assertEquals("DONE out.json", reader.readLine());
+            assertTrue(Files.readString(root.resolve("out.json")).contains("[4.0,6.0]"));
+
+            writer.println("../in.json\tout2.json");
+            assertTrue(reader.readLine().startsWith("ERROR path is outside of the server root"));
+            writer.println("in.json\t../out.json");
+            assertTrue(reader.readLine().startsWith("ERROR path is outside of the server root"));
+            assertFalse(Files.exists(dir.resolve("out.json")));
+
+            writer.println("STOP");
+            assertEquals("STOPPED", reader.readLine());
+        } finally {
+            server.stop();
+            serving.get(10, TimeUnit.SECONDS);
+            assertTrue(server.drain(JobServer.DRAIN_MILLIS));
+            server.shutdown();
+        }
+    }
+
+    /// ===== helpers =====
+    private static Socket connect(int port) throws Exception {
+        // the server binds its socket on another thread
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket(InetAddress.getLoopbackAddress(), port);
+            } catch (IOException e) {
+                if (attempt == 50)
+                    throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+}
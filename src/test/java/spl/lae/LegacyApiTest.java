@@ -0,0 +1,74 @@
+package spl.lae;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The single-node entry points kept for callers that drive the engine one operator at a time.
+ */
+class LegacyApiTest {
+
+    private final LinearAlgebraEngine lae = new LinearAlgebraEngine(2, false, false, false);
+
+    @AfterEach
+    void shutDown() {
+        lae.shutdown();
+    }
+
+    @Test
+    void loadAndComputeResolvesEveryOperator() {
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = {{7, 8}, {9, 10}, {11, 12}};
+        double[][] c = {{1, -1, 0}, {2, 0, -2}};
+
+        assertResult(new double[][] {{2, 1, 3}, {6, 5, 4}}, compute(ComputationNodeType.ADD, a, c));
+        assertResult(new double[][] {{58, 64}, {139, 154}}, compute(ComputationNodeType.MULTIPLY, a, b));
+        assertResult(new double[][] {{-1, -2, -3}, {-4, -5, -6}}, compute(ComputationNodeType.NEGATE, a));
+        assertResult(new double[][] {{1, 4}, {2, 5}, {3, 6}}, compute(ComputationNodeType.TRANSPOSE, a));
+    }
+
+    @Test
+    void computeFusedResolvesElementwiseRegion() {
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{10, 20}, {30, 40}};
+        ComputationNode node = new ComputationNode(ComputationNodeType.ADD, List.of(
+                new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(a))),
+                new ComputationNode(b)));
+        lae.computeFused(node);
+        assertResult(new double[][] {{9, 18}, {27, 36}}, node);
+    }
+
+    @Test
+    void noArgumentTasksWorkOnTheEngineOperands() {
+        // nothing loaded yet, so there is nothing to do
+        assertTrue(lae.createTransposeTasks().isEmpty());
+        assertTrue(lae.createNegateTasks().isEmpty());
+    }
+
+    /// ===== helpers =====
+    private ComputationNode compute(ComputationNodeType type, double[][]... operands) {
+        List<ComputationNode> children = new ArrayList<>();
+        for (double[][] operand : operands)
+            children.add(new ComputationNode(operand));
+        ComputationNode node = new ComputationNode(type, children);
+        lae.loadAndCompute(node);
+        return node;
+    }
+
+    private static void assertResult(double[][] expected, ComputationNode node) {
+        assertEquals(ComputationNodeType.MATRIX, node.getNodeType());
+        double[][] actual = node.getMatrix();
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], actual[i]);
+    }
+}
@@ -0,0 +1,38 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Command line options are checked before anything runs, a mistyped option is an error rather than a default.
+ */
+class OptionsTest {
+
+    @Test
+    void mainRejectsUnknownOption() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Main.main(new String[] {"2", "in.json", "out.json", "--strasen=8"}));
+        assertTrue(e.getMessage().startsWith("unknown option --strasen=8"));
+    }
+
+    @Test
+    void mainRejectsMissingArguments() {
+        assertThrows(IllegalArgumentException.class, () -> Main.main(new String[] {"2", "in.json"}));
+    }
+
+    @Test
+    void serverRejectsUnknownOption() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Main.main(new String[] {"--serve", "2", "--port", "0", "--job", "2"}));
+        assertTrue(e.getMessage().startsWith("unknown option --job"));
+    }
+
+    @Test
+    void serverRejectsOptionWithoutValue() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Main.main(new String[] {"--serve", "2", "--jobs", "2", "--spool"}));
+        assertTrue(e.getMessage().startsWith("missing value for --spool"));
+    }
+}
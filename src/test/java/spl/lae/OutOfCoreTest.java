@@ -0,0 +1,155 @@
+package spl.lae;
+
+import memory.BufferPool;
+import memory.MemoryBudget;
+import memory.TiledFileMatrix;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.TiredExecutor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A run under a MemoryBudget gives the result of the same run on the heap, whatever the budget spills,
+ * and leaves no spill file behind.
+ */
+class OutOfCoreTest {
+
+    private static final int TILE = 16; // does not divide the shapes below, so edge tiles are partial
+    private static final long[] BUDGETS = {0, 64 << 10, 256 << 10}; // bytes, a 70 × 45 matrix is about 25KB
+
+    private final TiredExecutor executor = new TiredExecutor(4, false, false);
+    private final BufferPool pool = new BufferPool();
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Test
+    void productChainMatchesInMemoryRun() throws IOException {
+        // (A * B) * C
+        assertSameAsInMemory(() -> node(ComputationNodeType.MULTIPLY,
+                node(ComputationNodeType.MULTIPLY, leaf(sample(70, 45, 1)), leaf(sample(45, 33, 2))),
+                leaf(sample(33, 50, 3))));
+    }
+
+    @Test
+    void elementwiseAndTransposesMatchInMemoryRun() throws IOException {
+        // -(A^T * B) + (C^T + D)^T, mixing lazy transposes with tile-by-tile operators
+        assertSameAsInMemory(() -> node(ComputationNodeType.ADD,
+                node(ComputationNodeType.NEGATE, node(ComputationNodeType.MULTIPLY,
+                        node(ComputationNodeType.TRANSPOSE, leaf(sample(45, 70, 4))), leaf(sample(45, 40, 5)))),
+                node(ComputationNodeType.TRANSPOSE, node(ComputationNodeType.ADD,
+                        node(ComputationNodeType.TRANSPOSE, leaf(sample(70, 40, 6))), leaf(sample(40, 70, 7))))));
+    }
+
+    @Test
+    void sharedSubexpressionMatchesInMemoryRun() throws IOException {
+        // (A * B) + (A * B) * I, the equal products are merged into one node read twice
+        assertSameAsInMemory(() -> node(ComputationNodeType.ADD,
+                node(ComputationNodeType.MULTIPLY, leaf(sample(50, 60, 8)), leaf(sample(60, 50, 9))),
+                node(ComputationNodeType.MULTIPLY,
+                        node(ComputationNodeType.MULTIPLY, leaf(sample(50, 60, 8)), leaf(sample(60, 50, 9))),
+                        leaf(identity(50)))));
+    }
+
+    /// ===== helpers =====
+    private void assertSameAsInMemory(Supplier<ComputationNode> tree) throws IOException {
+        double[][] expected = new LinearAlgebraEngine(executor, pool).run(tree.get()).getMatrix();
+        for (long limit : BUDGETS) {
+            LinearAlgebraEngine lae = new LinearAlgebraEngine(executor, pool);
+            CountingBudget budget = new CountingBudget(limit);
+            lae.setMemoryBudget(budget);
+            double[][] actual = valueOf(lae.run(tree.get()));
+
+            assertTrue(budget.getPeak() <= limit, "budget " + limit + " exceeded");
+            if (limit == 0)
+                assertTrue(budget.files > 0, "nothing was spilled");
+
+            assertEquals(expected.length, actual.length, "budget " + limit);
+            for (int i = 0; i < expected.length; i++)
+                assertArrayEquals(expected[i], actual[i], "budget " + limit + ", row " + i);
+            try (var files = Files.list(dir)) {
+                assertEquals(0, files.count(), "spill files left behind with budget " + limit);
+            }
+        }
+    }
+
+    /** counts the files the run spills to
+     */
+    private class CountingBudget extends MemoryBudget {
+        private int files = 0;
+
+        CountingBudget(long limit) {
+            super(limit, dir, TILE);
+        }
+
+        @Override
+        public synchronized TiledFileMatrix allocate(int rows, int cols) {
+            files++;
+            return super.allocate(rows, cols);
+        }
+
+        @Override
+        public synchronized TiledFileMatrix spill(double[][] matrix) {
+            files++;
+            return super.spill(matrix);
+        }
+    }
+
+    /** the value of a result, read from its file (which is then released) when the run left it spilled
+     */
+    private static double[][] valueOf(ComputationNode resolved) {
+        if (!resolved.isSpilled())
+            return resolved.getMatrix();
+        TiledFileMatrix spilled = resolved.getSpilled();
+        IntFunction<double[]> rows = spilled.rowReader(resolved.isTransposed());
+        double[][] value = new double[resolved.getRows()][];
+        for (int i = 0; i < value.length; i++)
+            value[i] = rows.apply(i).clone();
+        spilled.release();
+        assertTrue(spilled.isReleased());
+        return value;
+    }
+
+    private static ComputationNode leaf(double[][] m) {
+        return new ComputationNode(m);
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static double[][] sample(int rows, int cols, int seed) {
+        // small integers, so every summation order gives the same exact result
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = ((i * 31 + j * 17 + seed * 7) % 13) - 6;
+        return m;
+    }
+
+    private static double[][] identity(int n) {
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++)
+            m[i][i] = 1.0;
+        return m;
+    }
+}
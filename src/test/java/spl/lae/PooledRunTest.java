@@ -0,0 +1,145 @@
+package spl.lae;
+
+import memory.BufferPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs sharing one BufferPool: intermediates are recycled, but never while a later step still reads them,
+ * and neither inputs nor results handed to the caller are ever recycled.
+ */
+class PooledRunTest {
+
+    private static final int N = 80; // rows above BufferPool.MIN_POOLED_LENGTH, so they are pooled
+
+    private final TiredExecutor executor = new TiredExecutor(4, false, false);
+    private final BufferPool pool = new BufferPool();
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Test
+    void sharedIntermediateIsNotRecycledBeforeItsLastRead() {
+        double[][] a = matrix(1.0);
+        double[][] b = matrix(-3.0);
+        double[][] c = matrix(0.5);
+        double[][] product = multiply(a, b);
+        // (A * B) + ((A * B) * C)^T, the equal products are merged into one node read by two steps
+        double[][] expected = add(product, transpose(multiply(product, c)));
+
+        double[][] result = run(node(ComputationNodeType.ADD,
+                node(ComputationNodeType.MULTIPLY, leaf(a), leaf(b)),
+                node(ComputationNodeType.TRANSPOSE,
+                        node(ComputationNodeType.MULTIPLY, node(ComputationNodeType.MULTIPLY, leaf(a), leaf(b)), leaf(c)))));
+
+        assertMatrixEquals(expected, result);
+        assertTrue(pool.getRecycled() > 0);
+    }
+
+    @Test
+    void laterRunsReuseBuffersWithoutTouchingEarlierResultsOrInputs() {
+        double[][] a = matrix(2.0);
+        double[][] b = matrix(-1.0);
+        double[][] inputA = copy(a);
+        double[][] inputB = copy(b);
+        // -((A * B) + A) * B
+        double[][] expected = negate(multiply(add(multiply(a, b), a), b));
+
+        double[][] first = run(chain(inputA, inputB));
+        double[][] kept = copy(first);
+        long hitsBefore = pool.getHits();
+        double[][] second = run(chain(copy(a), copy(b)));
+
+        assertTrue(pool.getHits() > hitsBefore);
+        assertMatrixEquals(expected, first);
+        assertMatrixEquals(expected, second);
+        // the first result and the inputs were not handed out again by the pool
+        assertMatrixEquals(kept, first);
+        assertMatrixEquals(a, inputA);
+        assertMatrixEquals(b, inputB);
+    }
+
+    /// ===== helpers =====
+    private double[][] run(ComputationNode root) {
+        return new LinearAlgebraEngine(executor, pool).run(root).getMatrix();
+    }
+
+    private static ComputationNode chain(double[][] a, double[][] b) {
+        ComputationNode sum = node(ComputationNodeType.ADD, node(ComputationNodeType.MULTIPLY, leaf(a), leaf(b)), leaf(a));
+        return node(ComputationNodeType.NEGATE, node(ComputationNodeType.MULTIPLY, sum, leaf(b)));
+    }
+
+    private static ComputationNode leaf(double[][] m) {
+        return new ComputationNode(m);
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static double[][] matrix(double base) {
+        double[][] m = new double[N][N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                m[i][j] = base + ((i * 7 + j * 3) % 11) - 5;
+        return m;
+    }
+
+    private static double[][] multiply(double[][] a, double[][] b) {
+        double[][] out = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++)
+                    out[i][j] += a[i][k] * b[k][j];
+        return out;
+    }
+
+    private static double[][] add(double[][] a, double[][] b) {
+        double[][] out = new double[a.length][a[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int j = 0; j < a[0].length; j++)
+                out[i][j] = a[i][j] + b[i][j];
+        return out;
+    }
+
+    private static double[][] negate(double[][] a) {
+        double[][] out = new double[a.length][a[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int j = 0; j < a[0].length; j++)
+                out[i][j] = -a[i][j];
+        return out;
+    }
+
+    private static double[][] transpose(double[][] a) {
+        double[][] out = new double[a[0].length][a.length];
+        for (int i = 0; i < a.length; i++)
+            for (int j = 0; j < a[0].length; j++)
+                out[j][i] = a[i][j];
+        return out;
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++)
+            c[i] = m[i].clone();
+        return c;
+    }
+
+    private static void assertMatrixEquals(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], actual[i]);
+    }
+}
@@ -0,0 +1,122 @@
+package spl.lae;
+
+import memory.BufferPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import parser.Collisions;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.SubtreeKey;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A ResultCache shared by several jobs, the way JobServer shares it: a result is only reused for a subtree
+ * with the same elements, never on a hash match alone.
+ */
+class ResultCacheTest {
+
+    private final TiredExecutor executor = new TiredExecutor(2, false, false);
+    private final BufferPool pool = new BufferPool();
+    private final ResultCache cache = new ResultCache();
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Test
+    void laterJobReusesResultOfEqualInputs() {
+        double[][] a = matrix(6, 4, 1.0);
+        double[][] b = matrix(4, 5, -2.0);
+        double[][] first = runJob(product(copy(a), copy(b)));
+        assertEquals(0, cache.getHits());
+
+        double[][] second = runJob(product(copy(a), copy(b)));
+        assertEquals(1, cache.getHits());
+        assertMatrixEquals(naive(a, b), first);
+        assertMatrixEquals(first, second);
+    }
+
+    @Test
+    void laterJobWithOtherInputsComputesItsOwnResult() {
+        double[][] a = matrix(6, 4, 1.0);
+        double[][] b = matrix(4, 5, -2.0);
+        double[][] c = matrix(4, 5, 7.0);
+        runJob(product(copy(a), copy(b)));
+
+        double[][] result = runJob(product(copy(a), copy(c)));
+        assertEquals(0, cache.getHits());
+        assertMatrixEquals(naive(a, c), result);
+    }
+
+    @Test
+    void collidingKeyDoesNotResolveToAnotherJobsResult() {
+        SubtreeKey cached = SubtreeKey.ofMatrix(matrix(2, 2, 1.0), false);
+        assertTrue(cache.put(cached, new ComputationNode(matrix(2, 2, 100.0))));
+
+        // a key from another job, with the same hash but other elements
+        SubtreeKey colliding = Collisions.collide(SubtreeKey.ofMatrix(matrix(2, 2, 5.0), false), cached);
+        assertEquals(cached.hashCode(), colliding.hashCode());
+        ComputationNode node = new ComputationNode(ComputationNodeType.NEGATE,
+                new ArrayList<>(List.of(new ComputationNode(matrix(2, 2, 5.0)))));
+        assertFalse(cache.resolve(colliding, node));
+        assertEquals(ComputationNodeType.NEGATE, node.getNodeType());
+
+        ComputationNode equal = new ComputationNode(ComputationNodeType.NEGATE,
+                new ArrayList<>(List.of(new ComputationNode(matrix(2, 2, 1.0)))));
+        assertTrue(cache.resolve(SubtreeKey.ofMatrix(matrix(2, 2, 1.0), false), equal));
+        assertMatrixEquals(matrix(2, 2, 100.0), equal.getMatrix());
+    }
+
+    /// ===== helpers =====
+    private double[][] runJob(ComputationNode root) {
+        LinearAlgebraEngine lae = new LinearAlgebraEngine(executor, pool);
+        lae.setResultCache(cache);
+        return lae.run(root).getMatrix();
+    }
+
+    private static ComputationNode product(double[][] a, double[][] b) {
+        // -(A * B), so the cached subtree sits under the root
+        ComputationNode multiply = new ComputationNode(ComputationNodeType.MULTIPLY,
+                new ArrayList<>(List.of(new ComputationNode(a), new ComputationNode(b))));
+        return new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>(List.of(multiply)));
+    }
+
+    private static double[][] naive(double[][] a, double[][] b) {
+        double[][] out = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++)
+                    out[i][j] -= a[i][k] * b[k][j];
+        return out;
+    }
+
+    private static double[][] matrix(int rows, int cols, double base) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = base + i * cols + j;
+        return m;
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++)
+            c[i] = m[i].clone();
+        return c;
+    }
+
+    private static void assertMatrixEquals(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], actual[i]);
+    }
+}
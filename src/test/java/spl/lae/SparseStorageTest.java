@@ -0,0 +1,110 @@
+package spl.lae;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sparse storage is picked from the density of a matrix, so it must not show in the output:
+ * every result is compared bit for bit (signed zeros included) with the same tree over dense operands.
+ */
+class SparseStorageTest {
+
+    private static final int N = 40; // 1600 elements, enough to be stored sparse
+
+    private final LinearAlgebraEngine lae = new LinearAlgebraEngine(2);
+
+    @AfterEach
+    void shutDown() {
+        lae.shutdown();
+    }
+
+    @Test
+    void operandIsStoredSparse() {
+        assertTrue(ComputationNode.ofMatrix(sparse()).isSparse());
+    }
+
+    @Test
+    void negationKeepsSignedZeros() {
+        assertSameBits(leaf -> negate(leaf.apply(sparse())));
+        assertSameBits(leaf -> negate(negate(leaf.apply(sparse()))));
+        assertSameBits(leaf -> negate(op(ComputationNodeType.TRANSPOSE, leaf.apply(sparse()))));
+    }
+
+    @Test
+    void elementwiseRegionsKeepSignedZeros() {
+        assertSameBits(leaf -> op(ComputationNodeType.ADD, negate(leaf.apply(sparse())), leaf.apply(dense(3.0))));
+        assertSameBits(leaf -> op(ComputationNodeType.SUBTRACT, leaf.apply(sparse()), negate(leaf.apply(sparse()))));
+    }
+
+    @Test
+    void productsKeepSignedZeros() {
+        assertSameBits(leaf -> op(ComputationNodeType.MULTIPLY, negate(leaf.apply(sparse())), leaf.apply(dense(1.0))));
+        assertSameBits(leaf -> op(ComputationNodeType.MULTIPLY, leaf.apply(dense(2.0)), negate(leaf.apply(sparse()))));
+        assertSameBits(leaf -> negate(op(ComputationNodeType.MULTIPLY, leaf.apply(sparse()), leaf.apply(sparse()))));
+    }
+
+    @Test
+    void sharedTransposedOperandOfSparseProduct() {
+        // D^T is one shared node: read by the sparse product and by the sum, stored lazily transposed
+        assertSameBits(leaf -> {
+            ComputationNode transposed = op(ComputationNodeType.TRANSPOSE, leaf.apply(dense(1.0)));
+            ComputationNode product = op(ComputationNodeType.MULTIPLY, leaf.apply(sparse()), transposed);
+            return op(ComputationNodeType.ADD, product, op(ComputationNodeType.TRANSPOSE, leaf.apply(dense(1.0))));
+        });
+        assertSameBits(leaf -> {
+            ComputationNode transposed = op(ComputationNodeType.TRANSPOSE, leaf.apply(dense(2.0)));
+            ComputationNode product = op(ComputationNodeType.MULTIPLY, transposed, negate(leaf.apply(sparse())));
+            return op(ComputationNodeType.SUBTRACT, product, op(ComputationNodeType.TRANSPOSE, leaf.apply(dense(2.0))));
+        });
+    }
+
+    /// ===== helpers =====
+    /** evaluate the tree built by tree once over sparse-eligible leaves and once over dense ones
+     */
+    private void assertSameBits(Function<Function<double[][], ComputationNode>, ComputationNode> tree) {
+        double[][] sparse = lae.run(tree.apply(ComputationNode::ofMatrix)).getMatrix();
+        double[][] dense = lae.run(tree.apply(ComputationNode::new)).getMatrix();
+        assertEquals(dense.length, sparse.length);
+        for (int i = 0; i < dense.length; i++) {
+            for (int j = 0; j < dense[i].length; j++) {
+                assertEquals(Double.doubleToRawLongBits(dense[i][j]), Double.doubleToRawLongBits(sparse[i][j]),
+                        "element (" + i + ", " + j + "): dense " + dense[i][j] + ", sparse " + sparse[i][j]);
+            }
+        }
+    }
+
+    /** a diagonal with a few -0.0 elements, integers only so that every kernel sums exactly
+     */
+    private static double[][] sparse() {
+        double[][] m = new double[N][N];
+        for (int i = 0; i < N; i++)
+            m[i][i] = (i % 3 == 0) ? -0.0 : i - 20;
+        m[2][17] = 4.0;
+        return m;
+    }
+
+    private static double[][] dense(double base) {
+        double[][] m = new double[N][N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                m[i][j] = ((i * 7 + j * 3) % 5 == 0) ? 0.0 : base + (i + j) % 4;
+        return m;
+    }
+
+    private static ComputationNode negate(ComputationNode operand) {
+        return op(ComputationNodeType.NEGATE, operand);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... operands) {
+        return new ComputationNode(type, new ArrayList<>(List.of(operands)));
+    }
+}